@@ -31,6 +31,7 @@ import java.util.Map;
 import org.eclipse.californium.core.CoapClient;
 import org.eclipse.californium.core.CoapHandler;
 import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.coap.MediaTypeRegistry;
 import org.eclipse.californium.core.coap.MessageObserver;
 import org.eclipse.californium.core.coap.Option;
@@ -56,6 +57,9 @@ public class CoapClientImpl extends AbstractClientImpl {
 	final String SECURITY_BEARER_STRING = "Bearer ";
 	
 	Map<String, ObserveRelation> observes = new HashMap<>();
+
+	// ETag options of the property values read last
+	final ValidatorCache<byte[]> validators = new ValidatorCache<>();
 	
 	public CoapClientImpl(Protocol prot, Metadata metadata, List<PropertyDescription> properties, List<ActionDescription> actions, List<EventDescription> events) {
 		super(prot.getUri(), metadata, properties, actions, events);
@@ -85,6 +89,7 @@ public class CoapClientImpl extends AbstractClientImpl {
 		coap.advanced(new CoapHandler() {
 			@Override
 			public void onLoad(CoapResponse response) {
+				validators.remove(propertyName);
 				Content content = new Content(response.getPayload(), getMediaType(response.getOptions()));
 				callback.onPut(propertyName, content);
 			}
@@ -111,12 +116,22 @@ public class CoapClientImpl extends AbstractClientImpl {
 			Option tokenOption = new Option(SECURITY_TOKEN_NUMBER, (SECURITY_BEARER_STRING + securityAsToken));
 			request.getOptions().addOption(tokenOption);			
 		}
+		ValidatorCache.Cached<byte[]> cached = validators.get(propertyName);
+		if (cached != null) {
+			request.getOptions().addETag(cached.validator);
+		}
 		
 		// asynchronous
 		coap.advanced(new CoapHandler() {
 			@Override
 			public void onLoad(CoapResponse response) {
+				if (cached != null && response.getCode() == ResponseCode.VALID) {
+					callback.onGet(propertyName, cached.content);
+					return;
+				}
 				Content content = new Content(response.getPayload(), getMediaType(response.getOptions()));
+				List<byte[]> etags = response.getOptions().getETags();
+				validators.put(propertyName, etags.isEmpty() ? null : etags.get(0), content);
 				callback.onGet(propertyName, content);
 			}
 
@@ -35,18 +35,22 @@ import de.thingweb.desc.pojo.PropertyDescription;
 import de.thingweb.desc.pojo.Protocol;
 import de.thingweb.thing.Content;
 import de.thingweb.thing.MediaType;
-import org.eclipse.californium.core.CoapObserveRelation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.HashMap;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -57,7 +61,15 @@ public class HttpClientImpl extends AbstractClientImpl {
 	private static final int NTHREDS = 5;
 	private static final ExecutorService executorService = Executors.newFixedThreadPool(NTHREDS);
 
-	Map<String, CoapObserveRelation> observes = new HashMap<>();
+	// event streams send a comment every 15s, longer silence means a broken stream
+	private static final int STREAM_READ_TIMEOUT = 40000;
+	private static final int POLL_TIMEOUT = 30000;
+	private static final int POLL_INTERVAL = 1000;
+
+	Map<String, EventStreamTask> observes = new ConcurrentHashMap<>();
+
+	// entity tags of the property values read last
+	final ValidatorCache<String> validators = new ValidatorCache<>();
 	
 	public HttpClientImpl(Protocol prot, Metadata metadata, List<PropertyDescription> properties, List<ActionDescription> actions,
 			List<EventDescription> events) {
@@ -97,12 +109,22 @@ public class HttpClientImpl extends AbstractClientImpl {
 	}
 	
 	public void observe(String propertyName, Callback callback, String securityAsToken) throws UnsupportedException {
-		callback.onObserveError(propertyName);
-		// throw new UnsupportedException("Not implemented yet");
+		EventStreamTask task = new EventStreamTask(propertyName, callback, securityAsToken);
+		EventStreamTask previous = observes.put(propertyName, task);
+		if (previous != null) {
+			previous.cancel();
+		}
+		// streams last long, keep them out of the request pool
+		Thread thread = new Thread(task, "observe " + propertyName);
+		thread.setDaemon(true);
+		thread.start();
 	}
 
 	public void observeRelease(String propertyName) throws UnsupportedException {
-		throw new UnsupportedException("Not implemented yet");
+		EventStreamTask task = observes.remove(propertyName);
+		if (task != null) {
+			task.cancel();
+		}
 	}
 
 	public void action(String actionName, Content actionValue, Callback callback) throws UnsupportedException {
@@ -142,6 +164,16 @@ public class HttpClientImpl extends AbstractClientImpl {
 				if(securityAsToken != null) {
 					httpCon.setRequestProperty("Authorization", "Bearer " + securityAsToken);
 				}
+				ValidatorCache.Cached<String> cached = validators.get(propertyName);
+				if (cached != null) {
+					httpCon.setRequestProperty("If-None-Match", cached.validator);
+				}
+
+				if (cached != null && httpCon.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					httpCon.disconnect();
+					callback.onGet(propertyName, cached.content);
+					return;
+				}
 
 				InputStream is = httpCon.getInputStream();
 				ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -152,10 +184,12 @@ public class HttpClientImpl extends AbstractClientImpl {
 
 				String contentType = httpCon.getHeaderField("content-type");
 				MediaType mediaType = MediaType.getMediaType(contentType);
+				String etag = httpCon.getHeaderField("ETag");
 				
 				httpCon.disconnect();
 				
 				Content c = new Content(baos.toByteArray(), mediaType);
+				validators.put(propertyName, etag, c);
 
 				callback.onGet(propertyName, c);
 			} catch (Exception e) {
@@ -165,6 +199,167 @@ public class HttpClientImpl extends AbstractClientImpl {
 		}
 	}
 
+	/**
+	 * Reads the Server-Sent Events of a property and reports each as change.
+	 * Where no stream comes through, e.g. behind proxies buffering responses,
+	 * it long polls the property instead.
+	 */
+	class EventStreamTask implements Runnable {
+		private final String propertyName;
+		private final Callback callback;
+		private final String securityAsToken;
+		private volatile HttpURLConnection connection;
+		private volatile boolean cancelled;
+
+		EventStreamTask(String propertyName, Callback callback, String securityAsToken) {
+			this.propertyName = propertyName;
+			this.callback = callback;
+			this.securityAsToken = securityAsToken;
+		}
+
+		public void run() {
+			try {
+				String url = uri + URI_PART_PROPERTIES + propertyName + (useValueStringInGetAndPutUrl ? "" : "/value");
+				if (!stream(url) && !cancelled) {
+					log.info("no event stream for {}, long polling instead", propertyName);
+					poll(url);
+				}
+				if (!cancelled) {
+					callback.onObserveError(propertyName);
+				}
+			} catch (Exception e) {
+				if (!cancelled) {
+					log.warn(e.getMessage());
+					callback.onObserveError(propertyName);
+				}
+			} finally {
+				observes.remove(propertyName, this);
+			}
+		}
+
+		/**
+		 * @return false if no event came through
+		 */
+		private boolean stream(String url) throws IOException {
+			HttpURLConnection httpCon = open(url);
+			httpCon.setRequestProperty("Accept", "text/event-stream");
+			// the server sends a comment at least every 15s
+			httpCon.setReadTimeout(STREAM_READ_TIMEOUT);
+
+			boolean received = false;
+			try {
+				String contentType = httpCon.getContentType();
+				if (contentType == null || !contentType.startsWith("text/event-stream")) {
+					return false;
+				}
+
+				BufferedReader reader = new BufferedReader(new InputStreamReader(httpCon.getInputStream(), StandardCharsets.UTF_8));
+				StringBuilder data = new StringBuilder();
+				String line;
+				while (!cancelled && (line = reader.readLine()) != null) {
+					if (line.isEmpty()) {
+						if (data.length() > 0) {
+							byte[] value = data.toString().getBytes(StandardCharsets.UTF_8);
+							callback.onObserve(propertyName, new Content(value, MediaType.APPLICATION_JSON));
+							data.setLength(0);
+							received = true;
+						}
+					} else if (line.startsWith("data:")) {
+						if (data.length() > 0) {
+							data.append('\n');
+						}
+						data.append(line.substring(line.startsWith("data: ") ? 6 : 5));
+					}
+					// comments and other fields carry nothing to report
+				}
+				return received;
+			} catch (IOException e) {
+				if (received || cancelled) {
+					throw e;
+				}
+				return false;
+			} finally {
+				httpCon.disconnect();
+			}
+		}
+
+		/**
+		 * Reads the property over and over, each read waiting on the server
+		 * until the value differs from the one read before. Servers answering
+		 * long polls with 501 are polled conditionally every POLL_INTERVAL.
+		 */
+		private void poll(String url) throws IOException, InterruptedException {
+			String etag = null;
+			boolean longPoll = true;
+			while (!cancelled) {
+				HttpURLConnection httpCon;
+				if (etag == null) {
+					httpCon = open(url);
+				} else if (longPoll) {
+					httpCon = open(url + "?waitFor=" + URLEncoder.encode(etag, "UTF-8") + "&timeout=" + POLL_TIMEOUT + "ms");
+					httpCon.setRequestProperty("If-None-Match", etag);
+				} else {
+					Thread.sleep(POLL_INTERVAL);
+					httpCon = open(url);
+					httpCon.setRequestProperty("If-None-Match", etag);
+				}
+				httpCon.setReadTimeout(POLL_TIMEOUT + STREAM_READ_TIMEOUT);
+
+				int status = httpCon.getResponseCode();
+				if (status == HttpURLConnection.HTTP_NOT_IMPLEMENTED && etag != null && longPoll) {
+					httpCon.disconnect();
+					log.info("no long polling for {}, polling instead", propertyName);
+					longPoll = false;
+					continue;
+				}
+				if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					httpCon.disconnect();
+					continue;
+				}
+
+				InputStream is = httpCon.getInputStream();
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				byte[] buffer = new byte[1024];
+				int n;
+				while ((n = is.read(buffer)) != -1) {
+					baos.write(buffer, 0, n);
+				}
+				MediaType mediaType = MediaType.getMediaType(httpCon.getHeaderField("content-type"));
+				String next = httpCon.getHeaderField("ETag");
+				httpCon.disconnect();
+
+				if (next == null) {
+					throw new IOException("no entity tag to long poll " + propertyName + " with");
+				}
+				etag = next;
+				if (!cancelled) {
+					callback.onObserve(propertyName, new Content(baos.toByteArray(), mediaType));
+				}
+			}
+		}
+
+		private HttpURLConnection open(String url) throws IOException {
+			HttpURLConnection httpCon = (HttpURLConnection) new URL(url).openConnection();
+			connection = httpCon;
+			if (cancelled) {
+				httpCon.disconnect();
+				throw new IOException("observation cancelled");
+			}
+			if(securityAsToken != null) {
+				httpCon.setRequestProperty("Authorization", "Bearer " + securityAsToken);
+			}
+			return httpCon;
+		}
+
+		void cancel() {
+			cancelled = true;
+			HttpURLConnection httpCon = connection;
+			if (httpCon != null) {
+				httpCon.disconnect();
+			}
+		}
+	}
+
 	class CallbackPutActionTask implements Runnable {
 		private final String name;
 		private final Callback callback;
@@ -222,6 +417,7 @@ public class HttpClientImpl extends AbstractClientImpl {
 				Content c = new Content(baos.toByteArray(), mediaType);
 
 				if(!isAction) {
+					validators.remove(name);
 					callback.onPut(name,  c);
 				} else {
 					callback.onAction(name, c);
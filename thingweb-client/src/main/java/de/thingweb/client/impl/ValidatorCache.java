@@ -0,0 +1,90 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.client.impl;
+
+import de.thingweb.thing.Content;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last content read from a resource together with its
+ * validator, so the next read can be made conditional and an unchanged
+ * resource does not have to be transferred again.
+ * <p>
+ * Holds at most a fixed number of entries, evicting the least recently used.
+ *
+ * @param <V> the type of the validator, e.g. an HTTP entity tag
+ */
+class ValidatorCache<V> {
+
+	static final int DEFAULT_CAPACITY = 64;
+
+	static final class Cached<V> {
+		final V validator;
+		final Content content;
+
+		Cached(V validator, Content content) {
+			this.validator = validator;
+			this.content = content;
+		}
+	}
+
+	private final Map<String, Cached<V>> entries;
+
+	ValidatorCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	ValidatorCache(final int capacity) {
+		this.entries = new LinkedHashMap<String, Cached<V>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Cached<V>> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	synchronized Cached<V> get(String resource) {
+		return entries.get(resource);
+	}
+
+	/**
+	 * @param validator the validator of the content, null forgets the resource
+	 */
+	synchronized void put(String resource, V validator, Content content) {
+		if (validator == null) {
+			entries.remove(resource);
+		} else {
+			entries.put(resource, new Cached<>(validator, content));
+		}
+	}
+
+	synchronized void remove(String resource) {
+		entries.remove(resource);
+	}
+}
@@ -31,20 +31,46 @@ import java.util.Map;
 
 public class Action {
 
+    /**
+     * Value for {@link Builder#setMaxConcurrency(int)} and
+     * {@link Builder#setTimeout(long)} meaning no limit.
+     */
+    public static final int UNLIMITED = 0;
+
     private final Map<String, String> params;
     private final String name;
     private final String inputType;
     private final String outputType;
+    private final int maxConcurrency;
+    private final int queueLength;
+    private final long timeout;
 
     @Deprecated
     protected Action(String name, Map<String, String> params) {
         this(name, params.get("parm"), "");
     }
     protected Action(String name, String inputType, String outputType) {
+        this(name, inputType, outputType, UNLIMITED, 0, UNLIMITED);
+    }
+
+    protected Action(String name, String inputType, String outputType, int maxConcurrency, int queueLength, long timeout) {
+        if (maxConcurrency < 0) {
+            throw new IllegalArgumentException("maxConcurrency must not be negative");
+        }
+        if (queueLength < 0) {
+            throw new IllegalArgumentException("queueLength must not be negative");
+        }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+
         this.params = new HashMap<>();
         this.name = name;
         this.inputType = inputType;
         this.outputType = outputType;
+        this.maxConcurrency = maxConcurrency;
+        this.queueLength = queueLength;
+        this.timeout = timeout;
     }
 
     /**
@@ -73,6 +99,28 @@ public class Action {
         return name;
     }
 
+    /**
+     * @return maximum number of concurrent executions, or {@link #UNLIMITED}
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return number of invocations that may wait for a free execution slot
+     */
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    /**
+     * @return time in milliseconds an invocation may take from submission to
+     * result, or {@link #UNLIMITED}
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
 
     public static class Builder {
         private final Map<String,String> params = new HashMap<>();
@@ -80,6 +128,9 @@ public class Action {
         private final String name;
         private String inputType = "";
         private String outputType = "";
+        private int maxConcurrency = UNLIMITED;
+        private int queueLength = 0;
+        private long timeout = UNLIMITED;
 
         private Builder(String name) {
             this.name = name;
@@ -95,6 +146,37 @@ public class Action {
             return this;
         }
 
+        /**
+         * limits how many invocations of the action may run at the same time
+         * @param maxConcurrency the limit, or {@link Action#UNLIMITED}
+         * @return the Builder (fluent Method call)
+         */
+        public Builder setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * sets how many invocations may wait once the concurrency limit is reached,
+         * further invocations are rejected
+         * @param queueLength the number of waiting invocations
+         * @return the Builder (fluent Method call)
+         */
+        public Builder setQueueLength(int queueLength) {
+            this.queueLength = queueLength;
+            return this;
+        }
+
+        /**
+         * sets how long an invocation may take including the time spent waiting
+         * @param timeout the timeout in milliseconds, or {@link Action#UNLIMITED}
+         * @return the Builder (fluent Method call)
+         */
+        public Builder setTimeout(long timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
         /**
          * add a parameter / input value to the action
          * @param name name of the parameter
@@ -114,9 +196,9 @@ public class Action {
          */
         public Action build() {
             if(params == null)
-                    return new Action(name,inputType,outputType);
+                    return new Action(name,inputType,outputType,maxConcurrency,queueLength,timeout);
                else
-                       return new Action(name,params);
+                       return new Action(name,params.get("parm"),"",maxConcurrency,queueLength,timeout);
         }
     }
 }
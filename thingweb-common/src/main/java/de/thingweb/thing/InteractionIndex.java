@@ -0,0 +1,204 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.thing;
+
+import java.util.*;
+
+/**
+ * Immutable, hash-indexed snapshot of the interactions of a {@link Thing}.
+ * <p>
+ * Every property and action is assigned a dense id in the order it was added
+ * to the thing, starting at zero. Ids are stable for the lifetime of the
+ * thing, so holders of a snapshot can keep per-interaction state in plain
+ * arrays. The ids are specific to one thing: a property shared between things
+ * may have a different id in each of them.
+ */
+public final class InteractionIndex {
+
+    static final InteractionIndex EMPTY = new InteractionIndex(
+            Collections.<Property>emptyList(), Collections.<Action>emptyList());
+
+    private final List<Property> m_properties;
+    private final List<Action> m_actions;
+    private final Map<String, Integer> m_propertiesByName;
+    private final Map<String, Integer> m_actionsByName;
+    private final Map<Property, Integer> m_propertyIds;
+    private final Map<Action, Integer> m_actionIds;
+
+    private InteractionIndex(List<Property> properties, List<Action> actions) {
+        m_properties = Collections.unmodifiableList(properties);
+        m_actions = Collections.unmodifiableList(actions);
+        m_propertiesByName = new HashMap<>(properties.size() * 2);
+        m_actionsByName = new HashMap<>(actions.size() * 2);
+        m_propertyIds = new IdentityHashMap<>(properties.size());
+        m_actionIds = new IdentityHashMap<>(actions.size());
+
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            m_propertiesByName.put(property.getName(), i);
+            m_propertyIds.put(property, i);
+        }
+
+        for (int i = 0; i < actions.size(); i++) {
+            Action action = actions.get(i);
+            m_actionsByName.put(action.getName(), i);
+            m_actionIds.put(action, i);
+        }
+    }
+
+    /**
+     * Indexes the given interactions in one pass, ids follow the order of
+     * the lists.
+     */
+    static InteractionIndex of(List<Property> properties, List<Action> actions) {
+        return new InteractionIndex(new ArrayList<>(properties), new ArrayList<>(actions));
+    }
+
+    InteractionIndex withProperty(Property property) {
+        List<Property> properties = new ArrayList<>(m_properties.size() + 1);
+        properties.addAll(m_properties);
+        properties.add(property);
+        return new InteractionIndex(properties, new ArrayList<>(m_actions));
+    }
+
+    InteractionIndex withAction(Action action) {
+        List<Action> actions = new ArrayList<>(m_actions.size() + 1);
+        actions.addAll(m_actions);
+        actions.add(action);
+        return new InteractionIndex(new ArrayList<>(m_properties), actions);
+    }
+
+    /**
+     * @return the properties, ordered by id
+     */
+    public List<Property> getProperties() {
+        return m_properties;
+    }
+
+    /**
+     * @return the actions, ordered by id
+     */
+    public List<Action> getActions() {
+        return m_actions;
+    }
+
+    public int getPropertyCount() {
+        return m_properties.size();
+    }
+
+    public int getActionCount() {
+        return m_actions.size();
+    }
+
+    /**
+     * @param propertyName the name of the property, must not be null
+     * @return the property, or null if no property with the given name exists
+     */
+    public Property getProperty(String propertyName) {
+        int id = indexOfProperty(propertyName);
+        return id < 0 ? null : m_properties.get(id);
+    }
+
+    /**
+     * @param actionName the name of the action, must not be null
+     * @return the action, or null if no action with the given name exists
+     */
+    public Action getAction(String actionName) {
+        int id = indexOfAction(actionName);
+        return id < 0 ? null : m_actions.get(id);
+    }
+
+    public Property getProperty(int id) {
+        return m_properties.get(id);
+    }
+
+    public Action getAction(int id) {
+        return m_actions.get(id);
+    }
+
+    /**
+     * @param propertyName the name of the property, must not be null
+     * @return the id of the property, or -1 if no property with the given
+     * name exists
+     */
+    public int indexOfProperty(String propertyName) {
+        if (null == propertyName) {
+            throw new IllegalArgumentException("propertyName must not be null");
+        }
+
+        Integer id = m_propertiesByName.get(propertyName);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param actionName the name of the action, must not be null
+     * @return the id of the action, or -1 if no action with the given name
+     * exists
+     */
+    public int indexOfAction(String actionName) {
+        if (null == actionName) {
+            throw new IllegalArgumentException("actionName must not be null");
+        }
+
+        Integer id = m_actionsByName.get(actionName);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param property the property, must not be null
+     * @return the id of the property, or -1 if it is not part of this index
+     */
+    public int indexOf(Property property) {
+        if (null == property) {
+            throw new IllegalArgumentException("property must not be null");
+        }
+
+        Integer id = m_propertyIds.get(property);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param action the action, must not be null
+     * @return the id of the action, or -1 if it is not part of this index
+     */
+    public int indexOf(Action action) {
+        if (null == action) {
+            throw new IllegalArgumentException("action must not be null");
+        }
+
+        Integer id = m_actionIds.get(action);
+        return id == null ? -1 : id;
+    }
+
+    public boolean contains(Property property) {
+        return indexOf(property) >= 0;
+    }
+
+    public boolean contains(Action action) {
+        return indexOf(action) >= 0;
+    }
+}
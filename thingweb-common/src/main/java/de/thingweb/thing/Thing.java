@@ -41,8 +41,9 @@ public final class Thing {
 	 * Implementation Note:
 	 * This implementation is based on the assumption that change is rare, i.e.,
 	 * interactions with the model heavily outweigh modifications of the model.
-	 * If this is no longer the case, the type of concurrent collection used
-	 * should be changed or other means of synchronization should be used.
+	 * Interactions are published as an immutable InteractionIndex which is
+	 * rebuilt on every modification, so lookups never lock or scan. If change
+	 * is no longer rare, the index should be updated incrementally instead.
 	 * 
 	 * This class is final to ensure the synchronization guarantees are not
 	 * broken by subclasses. 
@@ -78,6 +79,8 @@ public final class Thing {
         this(desc.getMetadata().getName());
         m_td = desc;
         // TODO check support for HTTP and/or CoAP
+        List<Property> properties = new ArrayList<>();
+        List<Action> actions = new ArrayList<>();
         for (InteractionDescription i : desc.getInteractions()) {
             if (i instanceof PropertyDescription) {
                 PropertyDescription pd = (PropertyDescription) i;
@@ -86,16 +89,18 @@ public final class Thing {
                         .setWriteable(pd.isWritable())
                         .setXsdType(pd.getOutputType())
                         .build();
-                m_properties.add(p);
+                properties.add(p);
             } else if (i instanceof ActionDescription) {
                 ActionDescription ad = (ActionDescription) i;
                 Action a = Action.getBuilder(i.getName())
                         .setInputType(ad.getInputType())
                         .setOutputType(ad.getOutputType())
                         .build();
-                m_actions.add(a);
+                actions.add(a);
             }
         }
+        // indexed once, adding one by one would copy the index every time
+        m_index = InteractionIndex.of(properties, actions);
     }
 
     public String getName() {
@@ -107,13 +112,34 @@ public final class Thing {
     }
 
 
+    /**
+     * @return the properties as of now, interactions added later are not
+     *         reflected, see {@link #getIndex()}
+     */
     public Collection<Property> getProperties() {
-        return m_propertiesView;
+        return m_index.getProperties();
     }
 
 
+    /**
+     * @return the actions as of now, interactions added later are not
+     *         reflected, see {@link #getIndex()}
+     */
     public Collection<Action> getActions() {
-        return m_actionsView;
+        return m_index.getActions();
+    }
+
+
+    /**
+     * Returns the current snapshot of the interactions of this thing.
+     * <p>
+     * The snapshot is immutable; adding a property or action publishes a new
+     * one. Ids in a snapshot remain valid in all later snapshots.
+     *
+     * @return the interaction index
+     */
+    public InteractionIndex getIndex() {
+        return m_index;
     }
 
 
@@ -128,13 +154,7 @@ public final class Thing {
             throw new IllegalArgumentException("propertyName must not be null");
         }
 
-        for (Property property : m_properties) {
-            if (property.getName().equals(propertyName)) {
-                return property;
-            }
-        }
-
-        return null;
+        return m_index.getProperty(propertyName);
     }
 
 
@@ -165,13 +185,7 @@ public final class Thing {
             throw new IllegalArgumentException("property must not be null");
         }
 
-        for (Property p : m_properties) {
-            if (p == property) {
-                return true;
-            }
-        }
-
-        return false;
+        return m_index.contains(property);
     }
 
 
@@ -184,7 +198,7 @@ public final class Thing {
     }
 
 
-    public void addProperty(Property property) {
+    public synchronized void addProperty(Property property) {
         if (null == property) {
             throw new IllegalArgumentException("property must not be null");
         }
@@ -194,7 +208,7 @@ public final class Thing {
                     property.getName());
         }
 
-        m_properties.add(property);
+        m_index = m_index.withProperty(property);
 
         PropertyDescription pdesc = new PropertyDescription(
                 property.getName()
@@ -205,7 +219,7 @@ public final class Thing {
         notifyListeners();
     }
 
-    public void addAction(Action action) {
+    public synchronized void addAction(Action action) {
         if (null == action) {
             throw new IllegalArgumentException("action must not be null");
         }
@@ -215,7 +229,7 @@ public final class Thing {
                     action.getName());
         }
 
-        m_actions.add(action);
+        m_index = m_index.withAction(action);
 
         ActionDescription adesc = new ActionDescription(
                 action.getName(),
@@ -250,20 +264,7 @@ public final class Thing {
 
     private boolean protection = false;
 
-    private final Collection<Property> m_properties =
-            new CopyOnWriteArrayList<>();
-
-
-    private final Collection<Property> m_propertiesView =
-            Collections.unmodifiableCollection(m_properties);
-
-
-    private final Collection<Action> m_actions =
-            new CopyOnWriteArrayList<>();
-
-
-    private final Collection<Action> m_actionsView =
-            Collections.unmodifiableCollection(m_actions);
+    private volatile InteractionIndex m_index = InteractionIndex.EMPTY;
 
 
     private final Collection<ModelListener> m_listeners =
@@ -274,11 +275,6 @@ public final class Thing {
             throw new IllegalArgumentException("actionName must not be null");
         }
 
-        for (Action action : m_actions) {
-            if (action.getName().equals(actionName))
-                return action;
-        }
-
-        return null;
+        return m_index.getAction(actionName);
     }
 }
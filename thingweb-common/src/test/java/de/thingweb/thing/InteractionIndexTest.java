@@ -0,0 +1,126 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.thing;
+
+import de.thingweb.desc.pojo.ActionDescription;
+import de.thingweb.desc.pojo.InteractionDescription;
+import de.thingweb.desc.pojo.Metadata;
+import de.thingweb.desc.pojo.Protocol;
+import de.thingweb.desc.pojo.PropertyDescription;
+import de.thingweb.desc.pojo.ThingDescription;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class InteractionIndexTest {
+
+    @Test
+    public void idsAreDenseInOrderOfAddition() {
+        Thing thing = new Thing("lamp");
+        Property on = Property.getBuilder("on").build();
+        Property level = Property.getBuilder("level").build();
+        Action toggle = Action.getBuilder("toggle").build();
+        thing.addProperty(on);
+        thing.addAction(toggle);
+        thing.addProperty(level);
+
+        InteractionIndex index = thing.getIndex();
+        assertThat(index.getPropertyCount(), is(2));
+        assertThat(index.getActionCount(), is(1));
+        assertThat(index.indexOf(on), is(0));
+        assertThat(index.indexOf(level), is(1));
+        assertThat(index.indexOf(toggle), is(0));
+        assertThat(index.getProperty(1), sameInstance(level));
+        assertThat(index.getAction(0), sameInstance(toggle));
+    }
+
+    @Test
+    public void looksUpByNameAndIdentity() {
+        Thing thing = new Thing("lamp");
+        Property on = Property.getBuilder("on").build();
+        thing.addProperty(on);
+        InteractionIndex index = thing.getIndex();
+
+        assertThat(index.getProperty("on"), sameInstance(on));
+        assertThat(index.indexOfProperty("on"), is(0));
+        assertThat(index.getProperty("off"), nullValue());
+        assertThat(index.indexOfAction("on"), is(-1));
+
+        // an equally named property of another thing is not part of the index
+        Property other = Property.getBuilder("on").build();
+        assertThat(index.contains(on), is(true));
+        assertThat(index.indexOf(other), is(-1));
+    }
+
+    @Test
+    public void addingRebuildsAndKeepsIds() {
+        Thing thing = new Thing("lamp");
+        Property on = Property.getBuilder("on").build();
+        thing.addProperty(on);
+        InteractionIndex before = thing.getIndex();
+        Collection<Property> properties = thing.getProperties();
+
+        Property level = Property.getBuilder("level").build();
+        thing.addProperty(level);
+        InteractionIndex after = thing.getIndex();
+
+        assertThat(after, not(sameInstance(before)));
+        assertThat(after.indexOf(on), is(before.indexOf(on)));
+        assertThat(after.indexOf(level), is(1));
+        // snapshots do not change
+        assertThat(before.getPropertyCount(), is(1));
+        assertThat(before.contains(level), is(false));
+        assertThat(properties.size(), is(1));
+        assertThat(thing.getProperties().size(), is(2));
+    }
+
+    @Test
+    public void descriptionIsIndexedInOrder() {
+        List<InteractionDescription> interactions = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            interactions.add(new PropertyDescription("p" + i, i % 2 == 0, "xsd:int"));
+            interactions.add(new ActionDescription("a" + i, "xsd:int", "xsd:int"));
+        }
+        Thing thing = new Thing(new ThingDescription(
+                new Metadata("big", Collections.<String, Protocol>emptyMap(), Collections.singletonList("JSON")),
+                interactions));
+
+        InteractionIndex index = thing.getIndex();
+        assertThat(index.getPropertyCount(), is(500));
+        assertThat(index.getActionCount(), is(500));
+        assertThat(index.indexOfProperty("p499"), is(499));
+        assertThat(index.indexOfAction("a7"), is(7));
+        assertThat(index.getProperty("p2").isWriteable(), is(true));
+        assertThat(index.getProperty("p3").isWriteable(), is(false));
+    }
+}
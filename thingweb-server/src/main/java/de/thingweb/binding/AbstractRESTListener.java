@@ -32,6 +32,7 @@ import de.thingweb.security.TokenRequirements;
 import de.thingweb.security.UnauthorizedException;
 import de.thingweb.thing.Content;
 
+import java.util.Map;
 import java.util.Observable;
 
 public class AbstractRESTListener extends Observable implements RESTListener {
@@ -65,6 +66,16 @@ public class AbstractRESTListener extends Observable implements RESTListener {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public Content onGet(Map<String, String> parameters) {
+		return onGet();
+	}
+
+	@Override
+	public AsyncResponse onGetAsync(Map<String, String> parameters) {
+		return AsyncResponse.completed(onGet(parameters));
+	}
+
 	@Override
 	public void onPut(Content data) throws UnsupportedOperationException, IllegalArgumentException, RuntimeException {
 		throw new UnsupportedOperationException();
@@ -75,6 +86,11 @@ public class AbstractRESTListener extends Observable implements RESTListener {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public AsyncResponse onPostAsync(Content data) throws UnsupportedOperationException, IllegalArgumentException, RuntimeException {
+		return AsyncResponse.completed(onPost(data));
+	}
+
 	@Override
 	public void onDelete() {
 		throw new UnsupportedOperationException();
@@ -0,0 +1,103 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding;
+
+import de.thingweb.thing.Content;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Result of a request that may complete after the listener returned.
+ * <p>
+ * Bindings suspend the exchange until the result completes. If a binding does
+ * not want to wait that long, it may instead point the client to the optional
+ * location, a resource that can be polled for the outcome. A location may be
+ * created on demand, so bindings only ask for it when they answer with it.
+ */
+public class AsyncResponse {
+
+    private final CompletionStage<Content> result;
+    private Supplier<String> tracker;
+    private String location;
+
+    public AsyncResponse(CompletionStage<Content> result) {
+        this(result, (String) null);
+    }
+
+    public AsyncResponse(CompletionStage<Content> result, String location) {
+        if (null == result) {
+            throw new IllegalArgumentException("result must not be null");
+        }
+        this.result = result;
+        this.location = location;
+    }
+
+    private AsyncResponse(CompletionStage<Content> result, Supplier<String> tracker) {
+        this(result, (String) null);
+        if (null == tracker) {
+            throw new IllegalArgumentException("tracker must not be null");
+        }
+        this.tracker = tracker;
+    }
+
+    public static AsyncResponse completed(Content content) {
+        return new AsyncResponse(CompletableFuture.completedFuture(content));
+    }
+
+    /**
+     * @param tracker creates the resource tracking the result and returns its
+     *                path, called at most once on the first
+     *                {@link #getLocation()}
+     */
+    public static AsyncResponse tracked(CompletionStage<Content> result, Supplier<String> tracker) {
+        return new AsyncResponse(result, tracker);
+    }
+
+    public CompletionStage<Content> getResult() {
+        return result;
+    }
+
+    /**
+     * @return whether {@link #getLocation()} offers a resource to poll
+     */
+    public synchronized boolean hasLocation() {
+        return location != null || tracker != null;
+    }
+
+    /**
+     * @return path of a resource tracking the result, or null if there is none
+     */
+    public synchronized String getLocation() {
+        if (tracker != null) {
+            location = tracker.get();
+            tracker = null;
+        }
+        return location;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding;
+
+import de.thingweb.thing.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content that is rendered once and served many times, e.g. thing
+ * descriptions and hypermedia indexes.
+ * <p>
+ * Keeps the gzip and deflate encodings of the content next to it, together
+ * with an entity tag and the time it was rendered, so bindings can serve the
+ * stored bytes and answer conditional requests without touching the
+ * listener's model.
+ */
+public final class CachedContent extends TaggedContent {
+
+    private final byte[] gzip;
+    private final byte[] deflate;
+    private final long lastModified;
+
+    public CachedContent(byte[] content, MediaType mediaType) {
+        super(content, mediaType, digest(content));
+        this.gzip = smallerOrNull(content, compress(content, true));
+        this.deflate = smallerOrNull(content, compress(content, false));
+        // HTTP dates have a resolution of seconds
+        this.lastModified = System.currentTimeMillis() / 1000 * 1000;
+    }
+
+    /**
+     * @return the gzip encoded content, or null if it is not smaller than the
+     *         content itself
+     */
+    public byte[] getGzip() {
+        return gzip;
+    }
+
+    /**
+     * @return the deflate (zlib) encoded content, or null if it is not smaller
+     *         than the content itself
+     */
+    public byte[] getDeflate() {
+        return deflate;
+    }
+
+    /**
+     * @return when the content was rendered, in milliseconds since the epoch
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    private static byte[] compress(byte[] content, boolean gzip) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 32);
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes)) {
+            out.write(content);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] smallerOrNull(byte[] content, byte[] encoded) {
+        return (encoded.length < content.length) ? encoded : null;
+    }
+
+    private static byte[] digest(byte[] content) {
+        if (content == null) {
+            throw new IllegalArgumentException("content must not be null");
+        }
+        try {
+            return Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(content), 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
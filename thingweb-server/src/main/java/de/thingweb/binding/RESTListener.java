@@ -31,6 +31,7 @@ import de.thingweb.security.TokenExpiredException;
 import de.thingweb.security.UnauthorizedException;
 import de.thingweb.thing.Content;
 
+import java.util.Map;
 import java.util.Observer;
 
 public interface RESTListener {
@@ -43,12 +44,44 @@ public interface RESTListener {
 
 	Content onGet() throws UnsupportedOperationException, RuntimeException;
 
+	/**
+	 * Variant of {@link #onGet()} for resources that take query parameters,
+	 * e.g. <code>?since=...&amp;limit=...</code>.
+	 *
+	 * @param parameters the query parameters of the request, never null
+	 */
+	Content onGet(Map<String, String> parameters) throws UnsupportedOperationException, IllegalArgumentException, RuntimeException;
+
+	/**
+	 * Query parameter of reads that wait for the resource to change, holding
+	 * the entity tag of the content the client has.
+	 */
+	String WAIT_FOR = "waitFor";
+
+	/**
+	 * Asynchronous variant of {@link #onGet(Map)} for reads that may wait for
+	 * the resource to change, e.g. long polls with {@link #WAIT_FOR}. Errors
+	 * may be thrown directly or complete the result exceptionally.
+	 *
+	 * @param parameters the query parameters of the request, never null
+	 */
+	AsyncResponse onGetAsync(Map<String, String> parameters) throws UnsupportedOperationException, IllegalArgumentException, RuntimeException;
+
 	void onPut(Content data) throws UnsupportedOperationException, IllegalArgumentException, RuntimeException;
 	
 	Content onPost(Content data) throws SecurityException,UnsupportedOperationException, IllegalArgumentException, RuntimeException;
+
+	/**
+	 * Asynchronous variant of {@link #onPost(Content)} for bindings that can
+	 * answer a request after the handling thread returned. Errors may be thrown
+	 * directly or complete the result exceptionally.
+	 */
+	AsyncResponse onPostAsync(Content data) throws SecurityException,UnsupportedOperationException, IllegalArgumentException, RuntimeException;
 	
 	void onDelete() throws SecurityException ,UnsupportedOperationException,  RuntimeException;
 
 	void addObserver(Observer o);
 
+	void deleteObserver(Observer o);
+
 }
@@ -30,6 +30,24 @@ public interface ResourceBuilder {
 
 	void newResource(String url, RESTListener restListener);
 
+	/**
+	 * Removes the resource registered for the given url. Resources below the
+	 * url are not affected. Does nothing if no such resource exists.
+	 */
+	void removeResource(String url);
+
+	/**
+	 * Resolves requests for urls below the given one that have no registered
+	 * resource through the resolver. Bindings may keep resolved resources
+	 * until they are removed.
+	 *
+	 * @param url      the url prefix, e.g. <code>/things/</code>
+	 * @param resolver the resolver, or null to stop resolving
+	 */
+	default void newResolver(String url, ResourceResolver resolver) {
+		throw new UnsupportedOperationException(getIdentifier() + " does not support resolvers");
+	}
+
 	String getBase();
 
 	String getIdentifier();
@@ -0,0 +1,436 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps paths onto values with a trie of path segments.
+ * <p>
+ * Segments are matched case-insensitively and empty segments are ignored,
+ * so <code>/things/Lamp/</code> finds <code>/things/lamp</code>. A segment
+ * written as <code>{name}</code> is a path parameter that matches any single
+ * segment, literal segments take precedence over parameters. Besides exact
+ * routes, values can be registered for a prefix with
+ * {@link #addPrefix(String, Object)} and looked up by the longest matching
+ * prefix.
+ * <p>
+ * Lookups take time proportional to the length of the path, do not lock
+ * and do not allocate unless path parameters are captured. Modifications
+ * are serialized.
+ *
+ * @param <T> the type of the routed values
+ */
+public final class ResourceRouter<T> {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private static final class Node<T> {
+        final String segment;
+        final int hash;
+        /** the parameter name if this is a <code>{name}</code> node */
+        final String param;
+
+        volatile T value;
+        volatile T prefixValue;
+        volatile Node<T> paramChild;
+        volatile Node<T>[] children;
+        int size;
+
+        Node(String segment, int hash, String param) {
+            this.segment = segment;
+            this.hash = hash;
+            this.param = param;
+        }
+    }
+
+    private final Node<T> root = new Node<>("", 0, null);
+
+    /**
+     * Adds or replaces the value for a path or path template, e.g.
+     * <code>/things/{thing}/{property}</code>.
+     *
+     * @return the previous value or null
+     */
+    public synchronized T add(String path, T value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+        Node<T> node = createNode(path);
+        T previous = node.value;
+        node.value = value;
+        return previous;
+    }
+
+    /**
+     * Adds or replaces the value found for the paths starting with a prefix.
+     *
+     * @return the previous value or null
+     */
+    public synchronized T addPrefix(String prefix, T value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+        Node<T> node = createNode(prefix);
+        T previous = node.prefixValue;
+        node.prefixValue = value;
+        return previous;
+    }
+
+    /**
+     * Removes the value of a path or path template, prefix values are kept.
+     *
+     * @return the removed value or null
+     */
+    public synchronized T remove(String path) {
+        List<Node<T>> nodes = findNodes(path);
+        if (nodes == null) {
+            return null;
+        }
+        Node<T> node = nodes.get(nodes.size() - 1);
+        T previous = node.value;
+        node.value = null;
+        prune(nodes);
+        return previous;
+    }
+
+    /**
+     * Removes the value registered for a prefix.
+     *
+     * @return the removed value or null
+     */
+    public synchronized T removePrefix(String prefix) {
+        List<Node<T>> nodes = findNodes(prefix);
+        if (nodes == null) {
+            return null;
+        }
+        Node<T> node = nodes.get(nodes.size() - 1);
+        T previous = node.prefixValue;
+        node.prefixValue = null;
+        prune(nodes);
+        return previous;
+    }
+
+    /**
+     * @return the number of nodes below the root, for tests
+     */
+    synchronized int nodeCount() {
+        return count(root) - 1;
+    }
+
+    private static <T> int count(Node<T> node) {
+        int count = 1;
+        Node<T>[] table = node.children;
+        if (table != null) {
+            for (Node<T> child : table) {
+                if (child != null) {
+                    count += count(child);
+                }
+            }
+        }
+        if (node.paramChild != null) {
+            count += count(node.paramChild);
+        }
+        return count;
+    }
+
+    /**
+     * @return the value of the path, or null if there is none
+     */
+    public T find(String path) {
+        return find(path, null);
+    }
+
+    /**
+     * @param params receives the values of the path parameters if the path
+     *               matched a template, may be null
+     * @return the value of the path, or null if there is none
+     */
+    public T find(String path, Map<String, String> params) {
+        Node<T> node = match(root, path, skip(path, 0), params);
+        return (node == null) ? null : node.value;
+    }
+
+    /**
+     * @param segments the path segments, e.g. the Uri-Path options of a CoAP
+     *                 request
+     * @return the value of the path, or null if there is none
+     */
+    public T find(List<String> segments) {
+        Node<T> node = match(root, segments, 0);
+        return (node == null) ? null : node.value;
+    }
+
+    /**
+     * @return the value of the longest prefix of the path that has one, or
+     *         null if there is none. Path parameters are not considered.
+     */
+    public T findPrefix(String path) {
+        Node<T> node = root;
+        T found = node.prefixValue;
+        int start = skip(path, 0);
+        while (start < path.length()) {
+            int end = segmentEnd(path, start);
+            node = child(node, path, start, end);
+            if (node == null) {
+                break;
+            }
+            T value = node.prefixValue;
+            if (value != null) {
+                found = value;
+            }
+            start = skip(path, end);
+        }
+        return found;
+    }
+
+    private Node<T> match(Node<T> node, String path, int start, Map<String, String> params) {
+        if (start >= path.length()) {
+            return (node.value != null) ? node : null;
+        }
+        int end = segmentEnd(path, start);
+        int next = skip(path, end);
+
+        Node<T> literal = child(node, path, start, end);
+        if (literal != null) {
+            Node<T> found = match(literal, path, next, params);
+            if (found != null) {
+                return found;
+            }
+        }
+        Node<T> param = node.paramChild;
+        if (param != null) {
+            Node<T> found = match(param, path, next, params);
+            if (found != null) {
+                if (params != null) {
+                    params.put(param.param, path.substring(start, end));
+                }
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private Node<T> match(Node<T> node, List<String> segments, int index) {
+        while (index < segments.size() && segments.get(index).isEmpty()) {
+            index++;
+        }
+        if (index >= segments.size()) {
+            return (node.value != null) ? node : null;
+        }
+        String segment = segments.get(index);
+
+        Node<T> literal = child(node, segment, 0, segment.length());
+        if (literal != null) {
+            Node<T> found = match(literal, segments, index + 1);
+            if (found != null) {
+                return found;
+            }
+        }
+        Node<T> param = node.paramChild;
+        return (param != null) ? match(param, segments, index + 1) : null;
+    }
+
+    /**
+     * @return the nodes from the root to the node of the path, or null if
+     *         the path has no node
+     */
+    private List<Node<T>> findNodes(String path) {
+        List<Node<T>> nodes = new ArrayList<>();
+        Node<T> node = root;
+        nodes.add(node);
+        int start = skip(path, 0);
+        while (start < path.length()) {
+            int end = segmentEnd(path, start);
+            String param = paramName(path, start, end);
+            node = (param != null) ? node.paramChild : child(node, path, start, end);
+            if (node == null) {
+                return null;
+            }
+            nodes.add(node);
+            start = skip(path, end);
+        }
+        return nodes;
+    }
+
+    /**
+     * Unlinks the nodes at the end of the path that route nothing anymore,
+     * so removed routes do not keep their segments around.
+     */
+    private static <T> void prune(List<Node<T>> nodes) {
+        for (int i = nodes.size() - 1; i > 0; i--) {
+            Node<T> node = nodes.get(i);
+            if (node.value != null || node.prefixValue != null
+                    || node.size > 0 || node.paramChild != null) {
+                return;
+            }
+            Node<T> parent = nodes.get(i - 1);
+            if (node.param != null) {
+                parent.paramChild = null;
+            } else {
+                unlink(parent, node);
+            }
+        }
+    }
+
+    private Node<T> createNode(String path) {
+        Node<T> node = root;
+        int start = skip(path, 0);
+        while (start < path.length()) {
+            int end = segmentEnd(path, start);
+            String param = paramName(path, start, end);
+            if (param != null) {
+                Node<T> child = node.paramChild;
+                if (child == null) {
+                    child = new Node<>(path.substring(start, end), 0, param);
+                    node.paramChild = child;
+                } else if (!child.param.equals(param)) {
+                    throw new IllegalArgumentException("conflicting path parameter {" + param
+                            + "}, already routed as {" + child.param + "}: " + path);
+                }
+                node = child;
+            } else {
+                Node<T> child = child(node, path, start, end);
+                if (child == null) {
+                    child = new Node<>(path.substring(start, end), hash(path, start, end), null);
+                    insert(node, child);
+                }
+                node = child;
+            }
+            start = skip(path, end);
+        }
+        return node;
+    }
+
+    private static <T> Node<T> child(Node<T> node, String path, int start, int end) {
+        Node<T>[] table = node.children;
+        if (table == null) {
+            return null;
+        }
+        int length = end - start;
+        int mask = table.length - 1;
+        int hash = hash(path, start, end);
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Node<T> child = table[i];
+            if (child == null) {
+                return null;
+            }
+            if (child.hash == hash && child.segment.length() == length
+                    && child.segment.regionMatches(true, 0, path, start, length)) {
+                return child;
+            }
+        }
+    }
+
+    private static <T> void insert(Node<T> node, Node<T> child) {
+        Node<T>[] table = node.children;
+        if (table == null) {
+            table = newTable(INITIAL_CAPACITY);
+        } else if ((node.size + 1) * 4 > table.length * 3) {
+            table = rehash(table, table.length * 2);
+        }
+        put(table, child);
+        node.size++;
+        // publish after the slot is written, readers see either table
+        node.children = table;
+    }
+
+    private static <T> void unlink(Node<T> node, Node<T> child) {
+        Node<T>[] table = node.children;
+        node.size--;
+        if (node.size == 0) {
+            node.children = null;
+            return;
+        }
+        // open addressing cannot clear a slot in place, readers get a new table
+        int capacity = table.length;
+        while (capacity > INITIAL_CAPACITY && node.size * 4 <= capacity) {
+            capacity /= 2;
+        }
+        Node<T>[] rebuilt = newTable(capacity);
+        for (Node<T> other : table) {
+            if (other != null && other != child) {
+                put(rebuilt, other);
+            }
+        }
+        node.children = rebuilt;
+    }
+
+    private static <T> Node<T>[] rehash(Node<T>[] table, int capacity) {
+        Node<T>[] grown = newTable(capacity);
+        for (Node<T> child : table) {
+            if (child != null) {
+                put(grown, child);
+            }
+        }
+        return grown;
+    }
+
+    private static <T> void put(Node<T>[] table, Node<T> child) {
+        int mask = table.length - 1;
+        int i = child.hash & mask;
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = child;
+    }
+
+    private static <T> Node<T>[] newTable(int capacity) {
+        @SuppressWarnings("unchecked")
+        Node<T>[] table = (Node<T>[]) new Node<?>[capacity];
+        return table;
+    }
+
+    private static String paramName(String path, int start, int end) {
+        if (end - start > 2 && path.charAt(start) == '{' && path.charAt(end - 1) == '}') {
+            return path.substring(start + 1, end - 1);
+        }
+        return null;
+    }
+
+    private static int hash(String path, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(path.charAt(i)));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int skip(String path, int i) {
+        while (i < path.length() && path.charAt(i) == '/') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int segmentEnd(String path, int start) {
+        int end = path.indexOf('/', start);
+        return (end < 0) ? path.length() : end;
+    }
+}
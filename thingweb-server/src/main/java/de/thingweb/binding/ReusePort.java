@@ -0,0 +1,83 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding;
+
+import java.io.IOException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.NetworkChannel;
+
+/**
+ * Access to <code>SO_REUSEPORT</code>, which lets several sockets bind the
+ * same port and has the kernel spread connections and datagrams across
+ * them. The option is looked up reflectively since it only exists from
+ * Java 9 on.
+ */
+public final class ReusePort {
+
+    private static final SocketOption<Boolean> SO_REUSEPORT = lookup();
+
+    private ReusePort() {
+        /* pure static class */
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> lookup() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether this JVM and platform support <code>SO_REUSEPORT</code>
+     */
+    public static boolean isSupported() {
+        if (SO_REUSEPORT == null) {
+            return false;
+        }
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            return channel.supportedOptions().contains(SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Enables <code>SO_REUSEPORT</code> on an unbound channel.
+     *
+     * @throws IOException if the option is not supported
+     */
+    public static void enable(NetworkChannel channel) throws IOException {
+        if (SO_REUSEPORT == null || !channel.supportedOptions().contains(SO_REUSEPORT)) {
+            throw new IOException("SO_REUSEPORT is not supported on this platform");
+        }
+        channel.setOption(SO_REUSEPORT, true);
+    }
+}
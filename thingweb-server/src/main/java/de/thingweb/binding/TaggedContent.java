@@ -0,0 +1,115 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding;
+
+import de.thingweb.thing.Content;
+import de.thingweb.thing.MediaType;
+
+import java.util.Arrays;
+
+/**
+ * Content carrying an entity tag that changes whenever the content does.
+ * <p>
+ * Bindings send the tag with the content, HTTP as <code>ETag</code> header
+ * and CoAP as ETag option, and answer requests presenting it with 304 Not
+ * Modified respectively 2.03 Valid instead of the content.
+ */
+public class TaggedContent extends Content {
+
+    private final byte[] etag;
+    private final String entityTag;
+
+    /**
+     * @param etag 1 to 8 bytes identifying the content
+     */
+    public TaggedContent(byte[] content, MediaType mediaType, byte[] etag) {
+        super(content, mediaType);
+        if (etag == null || etag.length == 0 || etag.length > 8) {
+            throw new IllegalArgumentException("etag must have 1 to 8 bytes");
+        }
+        this.etag = etag.clone();
+        this.entityTag = toHex(etag);
+    }
+
+    /**
+     * @return the tag, usable as CoAP ETag option
+     */
+    public byte[] getETag() {
+        return etag.clone();
+    }
+
+    /**
+     * @return whether the tag identifies this content
+     */
+    public boolean hasETag(byte[] tag) {
+        return Arrays.equals(etag, tag);
+    }
+
+    /**
+     * @param coding the content coding, e.g. <code>gzip</code>, or null for
+     *               the content itself
+     * @return the quoted HTTP entity tag of the content in that coding
+     */
+    public String getEntityTag(String coding) {
+        return (coding == null) ? '"' + entityTag + '"' : '"' + entityTag + '-' + coding + '"';
+    }
+
+    /**
+     * Reverses {@link #getEntityTag(String)} for the content itself, the
+     * quotes are optional.
+     *
+     * @return the tag, or null if the entity tag is not one of ours
+     */
+    public static byte[] parseEntityTag(String entityTag) {
+        String hex = entityTag;
+        if (hex.length() >= 2 && hex.startsWith("\"") && hex.endsWith("\"")) {
+            hex = hex.substring(1, hex.length() - 1);
+        }
+        if (hex.isEmpty() || hex.length() > 16 || hex.length() % 2 != 0) {
+            return null;
+        }
+
+        byte[] tag = new byte[hex.length() / 2];
+        for (int i = 0; i < tag.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            tag[i] = (byte) ((high << 4) | low);
+        }
+        return tag;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
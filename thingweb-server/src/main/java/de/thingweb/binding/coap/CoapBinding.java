@@ -29,16 +29,26 @@ package de.thingweb.binding.coap;
 import de.thingweb.binding.Binding;
 import de.thingweb.binding.RESTListener;
 import de.thingweb.binding.ResourceBuilder;
+import de.thingweb.binding.ResourceResolver;
+import de.thingweb.binding.ResourceRouter;
+import de.thingweb.binding.ReusePort;
 import org.eclipse.californium.core.CoapResource;
 import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.network.CoAPEndpoint;
+import org.eclipse.californium.core.network.config.NetworkConfig;
 import org.eclipse.californium.core.server.resources.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 
 public class CoapBinding implements Binding {
@@ -46,22 +56,101 @@ public class CoapBinding implements Binding {
     private static final Logger log = LoggerFactory.getLogger(CoapBinding.class);
 	private CoapServer m_coapServer;
     private final String baseuri;
+    private final int port;
+    private final boolean reusePort;
+    private final ResourceRouter<Resource> routes = new ResourceRouter<>();
+    private final Notifications notifications = new Notifications();
 
     public CoapBinding() {
+        this(CoAP.DEFAULT_COAP_PORT);
+    }
+
+    /**
+     * @param port the udp port to listen on
+     */
+    public CoapBinding(int port) {
+        this(port, false);
+    }
+
+    /**
+     * @param port      the udp port to listen on
+     * @param reusePort whether to share the port with other bindings in this
+     *                  process, see {@link ReusePort}
+     */
+    public CoapBinding(int port, boolean reusePort) {
         String hostname = null;
         try {
             hostname = InetAddress.getLocalHost().getHostName();
         } catch (UnknownHostException e) {
             hostname = "localhost";
         }
-        baseuri = String.format("coap://%s",hostname);;
+        this.port = port;
+        this.reusePort = reusePort;
+        baseuri = (port == CoAP.DEFAULT_COAP_PORT)
+                ? String.format("coap://%s",hostname)
+                : String.format("coap://%s:%s",hostname,port);
     }
 
     @Override
 	public void initialize() {
-		m_coapServer = new CoapServer();
+		if (reusePort) {
+			m_coapServer = new CoapServer();
+			m_coapServer.addEndpoint(new CoAPEndpoint(
+					new ReusePortConnector(new InetSocketAddress(port)), NetworkConfig.getStandard()));
+		} else {
+			m_coapServer = new CoapServer(port);
+		}
+		m_coapServer.setMessageDeliverer(new RoutingMessageDeliverer(m_coapServer.getRoot(), routes));
 	}
 
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Sets the policy for notifying the observers of the resources without
+     * a policy of their own. Defaults to {@link NotificationPolicy#EVERY_CHANGE}.
+     *
+     * @param policy the policy, must not be null
+     */
+    public void setDefaultNotificationPolicy(NotificationPolicy policy) {
+        if (null == policy) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+        notifications.setDefaultPolicy(policy);
+    }
+
+    /**
+     * Sets the policy for notifying the observers of a resource, e.g. of
+     * <code>/things/sensor/temperature</code>. Templates like
+     * <code>/things/{thing}/temperature</code> set it for several resources.
+     *
+     * @param url    the url or url template of the resources
+     * @param policy the policy, or null to use the default again
+     */
+    public void setNotificationPolicy(String url, NotificationPolicy policy) {
+        if (null == url) {
+            throw new IllegalArgumentException("url must not be null");
+        }
+        notifications.setPolicy(url, policy);
+    }
+
+    /**
+     * @return the number of notifications sent to observers, counting each
+     *         observer
+     */
+    public long getNotificationsSent() {
+        return notifications.getSent();
+    }
+
+    /**
+     * @return the number of notifications to observers left out by the
+     *         notification policies, counting each observer
+     */
+    public long getNotificationsSuppressed() {
+        return notifications.getSuppressed();
+    }
+
 	@Override
 	public ResourceBuilder getResourceBuilder() {
 		return new ResourceBuilder() {
@@ -89,7 +178,14 @@ public class CoapBinding implements Binding {
 
                 String lastPart = parts[parts.length - 1];
                 Resource existing = current.getChild(lastPart);
+                if (existing instanceof WotCoapResource) {
+                    // swap in place to keep children and observe relations
+                    ((WotCoapResource) existing).setRestListener(restListener);
+                    return;
+                }
+
                 WotCoapResource newRes = new WotCoapResource(lastPart, restListener);
+                newRes.setNotifications(notifications);
 
                 if(existing != null) {
                     Collection<Resource> children = existing.getChildren();
@@ -97,6 +193,71 @@ public class CoapBinding implements Binding {
                 }
 
                 current.add(newRes);
+                routes.add(url, newRes);
+            }
+
+            @Override
+            public void removeResource(String url) {
+                routes.remove(url);
+                // resolved resources may exist in several spellings of the same url
+                List<Resource> matches = Collections.singletonList(m_coapServer.getRoot());
+                for (String part : url.split("/")) {
+                    if (part.isEmpty()) {
+                        continue;
+                    }
+                    List<Resource> next = new ArrayList<>();
+                    for (Resource resource : matches) {
+                        resource.getChildren().stream()
+                                .filter(child -> child.getName().equalsIgnoreCase(part))
+                                .forEach(next::add);
+                    }
+                    if (next.isEmpty()) {
+                        return;
+                    }
+                    matches = next;
+                }
+                matches.forEach(this::remove);
+            }
+
+            @Override
+            public void newResolver(String url, ResourceResolver resolver) {
+                Resource current = m_coapServer.getRoot();
+                for (String part : url.split("/")) {
+                    if (part.isEmpty()) {
+                        continue;
+                    }
+                    Resource child = current instanceof WotCoapResource
+                            ? ((WotCoapResource) current).getExistingChild(part)
+                            : current.getChild(part);
+                    if (child == null) {
+                        child = new CoapResource(part);
+                        current.add(child);
+                    }
+                    current = child;
+                }
+
+                if (!(current instanceof WotCoapResource)) {
+                    throw new UnsupportedOperationException("resolvers need a resource at " + url);
+                }
+                ((WotCoapResource) current).setResolver(resolver);
+            }
+
+            private void remove(Resource current) {
+                Resource parent = current.getParent();
+                if (parent == null) {
+                    return;
+                }
+
+                parent.remove(current);
+                if (current instanceof CoapResource) {
+                    ((CoapResource) current).clearAndNotifyObserveRelations(CoAP.ResponseCode.NOT_FOUND);
+                }
+                if (!current.getChildren().isEmpty()) {
+                    // keep the resources below the removed one reachable
+                    CoapResource placeholder = new CoapResource(current.getName());
+                    current.getChildren().forEach(placeholder::add);
+                    parent.add(placeholder);
+                }
             }
 
             @Override
@@ -121,4 +282,11 @@ public class CoapBinding implements Binding {
         m_coapServer.stop();
     }
 
+    /**
+     * Stops the server for good and releases its endpoint and threads.
+     */
+    public void destroy() {
+        m_coapServer.destroy();
+    }
+
 }
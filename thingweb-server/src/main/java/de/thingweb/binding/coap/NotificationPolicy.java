@@ -0,0 +1,149 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.coap;
+
+/**
+ * Decides how often the observers of a CoAP resource are notified of its
+ * changes.
+ * <p>
+ * Notifications are at least {@link #getMinInterval()} apart, changes in
+ * between coalesce into one notification carrying the latest value. Numeric
+ * values that moved less than {@link #getThreshold()} since the last
+ * notification are not sent at all. If {@link #getMaxInterval()} is set,
+ * observers are notified at least that often, changed or not.
+ * <p>
+ * The {@link #EVERY_CHANGE default} notifies every change immediately.
+ */
+public final class NotificationPolicy {
+
+    /** Notifies every change immediately. */
+    public static final NotificationPolicy EVERY_CHANGE = getBuilder().build();
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final double threshold;
+
+    private NotificationPolicy(Builder builder) {
+        this.minInterval = builder.minInterval;
+        this.maxInterval = builder.maxInterval;
+        this.threshold = builder.threshold;
+    }
+
+    public static NotificationPolicy.Builder getBuilder() {
+        return new NotificationPolicy.Builder();
+    }
+
+    /**
+     * @return the least time between two notifications in milliseconds, 0
+     *         if notifications are not delayed
+     */
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    /**
+     * @return the most time between two notifications in milliseconds, 0 if
+     *         notifications are only sent on changes
+     */
+    public long getMaxInterval() {
+        return maxInterval;
+    }
+
+    /**
+     * @return the change a numeric value needs to be notified, 0 if every
+     *         change is notified
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return whether a change from the last notified value to a new one
+     *         is notified
+     */
+    boolean exceedsThreshold(Object notified, Object value) {
+        if (threshold <= 0 || !(notified instanceof Number) || !(value instanceof Number)) {
+            return true;
+        }
+        double delta = ((Number) value).doubleValue() - ((Number) notified).doubleValue();
+        return Math.abs(delta) >= threshold;
+    }
+
+    @Override
+    public String toString() {
+        return "NotificationPolicy[min=" + minInterval + "ms, max=" + maxInterval + "ms, threshold=" + threshold + "]";
+    }
+
+    public static class Builder {
+        private long minInterval = 0;
+        private long maxInterval = 0;
+        private double threshold = 0;
+
+        /**
+         * Sets the least time between two notifications in milliseconds.
+         * Defaults to 0.
+         */
+        public Builder setMinInterval(long minInterval) {
+            if (minInterval < 0) {
+                throw new IllegalArgumentException("minInterval must not be negative");
+            }
+            this.minInterval = minInterval;
+            return this;
+        }
+
+        /**
+         * Sets the most time between two notifications in milliseconds, 0
+         * to only notify on changes. Defaults to 0.
+         */
+        public Builder setMaxInterval(long maxInterval) {
+            if (maxInterval < 0) {
+                throw new IllegalArgumentException("maxInterval must not be negative");
+            }
+            this.maxInterval = maxInterval;
+            return this;
+        }
+
+        /**
+         * Sets the change a numeric value needs to be notified. Defaults to
+         * 0, notifying every change.
+         */
+        public Builder setThreshold(double threshold) {
+            if (!(threshold >= 0)) {
+                throw new IllegalArgumentException("threshold must not be negative");
+            }
+            this.threshold = threshold;
+            return this;
+        }
+
+        public NotificationPolicy build() {
+            if (maxInterval > 0 && maxInterval < minInterval) {
+                throw new IllegalArgumentException("maxInterval must not be less than minInterval");
+            }
+            return new NotificationPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.coap;
+
+import de.thingweb.binding.ResourceRouter;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The notification policies of a {@link CoapBinding} and the counts of the
+ * notifications its resources sent and suppressed.
+ */
+final class Notifications {
+
+    private static final ScheduledThreadPoolExecutor timer = newTimer();
+
+    private final ResourceRouter<NotificationPolicy> policies = new ResourceRouter<>();
+    private volatile NotificationPolicy defaultPolicy = NotificationPolicy.EVERY_CHANGE;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+
+    private static ScheduledThreadPoolExecutor newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "coap-notification-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // heartbeats are rescheduled on every notification
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    NotificationPolicy getPolicy(String path) {
+        NotificationPolicy policy = policies.find(path);
+        return (policy != null) ? policy : defaultPolicy;
+    }
+
+    void setPolicy(String url, NotificationPolicy policy) {
+        if (policy == null) {
+            policies.remove(url);
+        } else {
+            policies.add(url, policy);
+        }
+    }
+
+    void setDefaultPolicy(NotificationPolicy policy) {
+        defaultPolicy = policy;
+    }
+
+    ScheduledFuture<?> schedule(Runnable task, long delay) {
+        return timer.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    void sent(int observers) {
+        sent.add(observers);
+    }
+
+    void suppressed(int observers) {
+        suppressed.add(observers);
+    }
+
+    long getSent() {
+        return sent.sum();
+    }
+
+    long getSuppressed() {
+        return suppressed.sum();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.coap;
+
+import de.thingweb.binding.ReusePort;
+import org.eclipse.californium.elements.Connector;
+import org.eclipse.californium.elements.RawData;
+import org.eclipse.californium.elements.RawDataChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * UDP connector binding its port with <code>SO_REUSEPORT</code>, so that
+ * several CoAP servers in one process can share a port.
+ */
+class ReusePortConnector implements Connector {
+
+    private static final Logger log = LoggerFactory.getLogger(ReusePortConnector.class);
+
+    // same as the default packet size of the UDPConnector
+    private static final int PACKET_SIZE = 2048;
+
+    private final InetSocketAddress localAddr;
+    private volatile RawDataChannel receiver;
+    private volatile DatagramChannel channel;
+    private Thread receiverThread;
+
+    ReusePortConnector(InetSocketAddress localAddr) {
+        this.localAddr = localAddr;
+    }
+
+    @Override
+    public synchronized void start() throws IOException {
+        if (channel != null) {
+            return;
+        }
+
+        DatagramChannel opened = DatagramChannel.open();
+        try {
+            ReusePort.enable(opened);
+            opened.bind(localAddr);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+
+        channel = opened;
+        receiverThread = new Thread(() -> receive(opened), "coap-receiver-" + localAddr.getPort());
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    private void receive(DatagramChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocate(PACKET_SIZE);
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                InetSocketAddress source = (InetSocketAddress) channel.receive(buffer);
+                buffer.flip();
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+
+                RawDataChannel receiver = this.receiver;
+                if (receiver != null) {
+                    receiver.receiveData(new RawData(bytes, source.getAddress(), source.getPort()));
+                }
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("receiving on {} failed", localAddr, e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+            receiverThread.join();
+        } catch (IOException e) {
+            log.warn("closing {} failed", localAddr, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel = null;
+        receiverThread = null;
+    }
+
+    @Override
+    public void destroy() {
+        stop();
+    }
+
+    @Override
+    public void send(RawData msg) {
+        DatagramChannel channel = this.channel;
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.send(ByteBuffer.wrap(msg.getBytes()), msg.getInetSocketAddress());
+        } catch (IOException e) {
+            log.warn("sending to {} failed", msg.getInetSocketAddress(), e);
+        }
+    }
+
+    @Override
+    public void setRawDataReceiver(RawDataChannel receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        return localAddr;
+    }
+}
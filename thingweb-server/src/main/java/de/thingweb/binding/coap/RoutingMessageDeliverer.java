@@ -0,0 +1,113 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.coap;
+
+import de.thingweb.binding.ResourceRouter;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.observe.ObserveManager;
+import org.eclipse.californium.core.observe.ObserveRelation;
+import org.eclipse.californium.core.observe.ObservingEndpoint;
+import org.eclipse.californium.core.server.ServerMessageDeliverer;
+import org.eclipse.californium.core.server.resources.Resource;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers requests to the resource {@link ResourceRouter routed} for their
+ * path, and walks the resource tree for everything else, e.g.
+ * <code>/.well-known/core</code> and lazily resolved resources.
+ */
+class RoutingMessageDeliverer extends ServerMessageDeliverer {
+
+    private final Resource root;
+    private final ResourceRouter<Resource> routes;
+    private final ObserveManager observeManager = new ObserveManager();
+
+    RoutingMessageDeliverer(Resource root, ResourceRouter<Resource> routes) {
+        super(root);
+        this.root = root;
+        this.routes = routes;
+    }
+
+    @Override
+    public void deliverRequest(Exchange exchange) {
+        List<String> path = exchange.getRequest().getOptions().getUriPath();
+        Resource resource = routes.find(path);
+        if (resource == null) {
+            resource = walk(path);
+        }
+
+        if (resource == null) {
+            exchange.sendResponse(new Response(CoAP.ResponseCode.NOT_FOUND));
+            return;
+        }
+
+        checkForObserveOption(exchange, resource);
+        Executor executor = resource.getExecutor();
+        if (executor != null) {
+            final Resource target = resource;
+            executor.execute(() -> target.handleRequest(exchange));
+        } else {
+            resource.handleRequest(exchange);
+        }
+    }
+
+    private Resource walk(List<String> path) {
+        Resource current = root;
+        for (int i = 0; i < path.size() && current != null; i++) {
+            current = current.getChild(path.get(i));
+        }
+        return current;
+    }
+
+    private void checkForObserveOption(Exchange exchange, Resource resource) {
+        Request request = exchange.getRequest();
+        if (request.getCode() != CoAP.Code.GET
+                || !request.getOptions().hasObserve() || !resource.isObservable()) {
+            return;
+        }
+
+        InetSocketAddress source = new InetSocketAddress(request.getSource(), request.getSourcePort());
+        int observe = request.getOptions().getObserve();
+        if (observe == 0) {
+            ObservingEndpoint endpoint = observeManager.findObservingEndpoint(source);
+            ObserveRelation relation = new ObserveRelation(endpoint, resource, exchange);
+            endpoint.addObserveRelation(relation);
+            exchange.setRelation(relation);
+        } else if (observe == 1) {
+            ObserveRelation relation = observeManager.getRelation(source, request.getToken());
+            if (relation != null) {
+                relation.cancel();
+            }
+        }
+    }
+}
@@ -26,7 +26,10 @@
 
 package de.thingweb.binding.coap;
 
+import de.thingweb.binding.AsyncResponse;
 import de.thingweb.binding.RESTListener;
+import de.thingweb.binding.ResourceResolver;
+import de.thingweb.binding.TaggedContent;
 import de.thingweb.security.TokenExpiredException;
 import de.thingweb.security.UnauthorizedException;
 import de.thingweb.thing.Content;
@@ -37,17 +40,37 @@ import org.eclipse.californium.core.coap.MediaTypeRegistry;
 import org.eclipse.californium.core.coap.Option;
 import org.eclipse.californium.core.coap.OptionSet;
 import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.observe.ObserveRelation;
 import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.eclipse.californium.core.server.resources.Resource;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Created by Johannes on 05.10.2015.
  */
 public class WotCoapResource extends CoapResource implements  Observer{
-    private final RESTListener m_restListener;
+    private volatile RESTListener m_restListener;
+    private volatile ResourceResolver m_resolver;
+    private volatile Notifications m_notifications;
+
+    // notification state, guarded by m_notifyLock
+    private final Object m_notifyLock = new Object();
+    private Object m_latestValue;
+    private Object m_notifiedValue;
+    private long m_lastNotified;
+    private ScheduledFuture<?> m_pending;
+    private ScheduledFuture<?> m_heartbeat;
 
     public WotCoapResource(String name, RESTListener restListener) {
         super(name);
@@ -57,6 +80,86 @@ public class WotCoapResource extends CoapResource implements  Observer{
         this.setObservable(true);
     }
 
+    /**
+     * Replaces the listener serving this resource. Observe relations are kept
+     * and notified, requests already being handled finish with the previous
+     * listener.
+     *
+     * @param restListener the new listener
+     */
+    public void setRestListener(RESTListener restListener) {
+        RESTListener previous = m_restListener;
+        restListener.addObserver(this);
+        m_restListener = restListener;
+        previous.deleteObserver(this);
+        changed();
+    }
+
+    public RESTListener getRestListener() {
+        return m_restListener;
+    }
+
+    /**
+     * Lets this resource create missing children on first use by asking the
+     * resolver for their listener. Created children resolve their own
+     * children the same way.
+     *
+     * @param resolver the resolver, or null to only serve existing children
+     */
+    public void setResolver(ResourceResolver resolver) {
+        m_resolver = resolver;
+    }
+
+    /**
+     * Lets the policies of the binding decide when observers are notified,
+     * see {@link NotificationPolicy}. Without, every change is notified.
+     */
+    void setNotifications(Notifications notifications) {
+        m_notifications = notifications;
+    }
+
+    /**
+     * Returns an existing child without consulting the resolver.
+     */
+    public Resource getExistingChild(String name) {
+        return super.getChild(name);
+    }
+
+    @Override
+    public Resource getChild(String name) {
+        Resource child = super.getChild(name);
+        ResourceResolver resolver = m_resolver;
+        if (child != null || resolver == null) {
+            return child;
+        }
+
+        synchronized (this) {
+            child = super.getChild(name);
+            if (child == null) {
+                RESTListener listener = resolver.resolve(getURI() + "/" + name);
+                child = (listener != null) ? childServing(listener) : null;
+                if (listener != null && child == null) {
+                    WotCoapResource resolved = new WotCoapResource(name, listener);
+                    resolved.setResolver(resolver);
+                    resolved.setNotifications(m_notifications);
+                    add(resolved);
+                    child = resolved;
+                }
+            }
+        }
+        return child;
+    }
+
+    // other spellings of a case insensitive url resolve to the same listener
+    private Resource childServing(RESTListener listener) {
+        for (Resource child : getChildren()) {
+            if (child instanceof WotCoapResource && ((WotCoapResource) child).getRestListener() == listener) {
+                return child;
+            }
+        }
+        return null;
+    }
+
     //TODO pull up into coap-spefic helper
     public static int getCoapContentFormat(MediaType mediaType) {
     	int contentFormat;
@@ -92,6 +195,19 @@ public class WotCoapResource extends CoapResource implements  Observer{
         return mt;
     }
 
+    public static Map<String, String> getQueryParameters(OptionSet os) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String query : os.getUriQuery()) {
+            int eq = query.indexOf('=');
+            if (eq < 0) {
+                parameters.put(query, "");
+            } else {
+                parameters.put(query.substring(0, eq), query.substring(eq + 1));
+            }
+        }
+        return parameters;
+    }
+
     @Override
     public void handleRequest(Exchange exchange) {
         final CoapExchange coapExchange = new CoapExchange(exchange, this);
@@ -128,11 +244,23 @@ public class WotCoapResource extends CoapResource implements  Observer{
     @Override
     public void handleGET(CoapExchange exchange) {
         try {
-            Content response = m_restListener.onGet();
+            Content response = m_restListener.onGet(getQueryParameters(exchange.getRequestOptions()));
+            if (response instanceof TaggedContent) {
+                TaggedContent tagged = (TaggedContent) response;
+                exchange.setETag(tagged.getETag());
+                for (byte[] etag : exchange.getRequestOptions().getETags()) {
+                    if (tagged.hasETag(etag)) {
+                        exchange.respond(CoAP.ResponseCode.VALID);
+                        return;
+                    }
+                }
+            }
         	int contentFormat = getCoapContentFormat(response.getMediaType());
         	exchange.respond(CoAP.ResponseCode.CONTENT, response.getContent(), contentFormat);
         } catch (UnsupportedOperationException e) {
             exchange.respond(CoAP.ResponseCode.METHOD_NOT_ALLOWED);
+        } catch (IllegalArgumentException e) {
+            exchange.respond(CoAP.ResponseCode.BAD_REQUEST, e.getMessage());
         } catch (Exception e) {
             exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR, e.getMessage());
         }
@@ -145,12 +273,8 @@ public class WotCoapResource extends CoapResource implements  Observer{
             MediaType mt = getMediaType(exchange.getRequestOptions());
             m_restListener.onPut(new Content(exchange.getRequestPayload(), mt));
             exchange.respond(CoAP.ResponseCode.CHANGED);
-        } catch (UnsupportedOperationException e) {
-            exchange.respond(CoAP.ResponseCode.METHOD_NOT_ALLOWED);
-        } catch (IllegalArgumentException e) {
-            exchange.respond(CoAP.ResponseCode.BAD_REQUEST, e.getMessage());
         } catch (Exception e) {
-            exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR, e.getMessage());
+            respondError(exchange, e);
         }
     }
 
@@ -160,17 +284,42 @@ public class WotCoapResource extends CoapResource implements  Observer{
             byte[] reqPayload = exchange.getRequestPayload();
             MediaType mt = getMediaType(exchange.getRequestOptions());
             Content request = new Content(reqPayload, mt);
-        	Content response = m_restListener.onPost(request);
-        	int contentFormat = getCoapContentFormat(response.getMediaType());
+            AsyncResponse async = m_restListener.onPostAsync(request);
+            CompletableFuture<Content> result = async.getResult().toCompletableFuture();
 
-            //TODO: add Location Option to response
-        	exchange.respond(CoAP.ResponseCode.CREATED, response.getContent(), contentFormat);
-        } catch (UnsupportedOperationException e) {
-            exchange.respond(CoAP.ResponseCode.METHOD_NOT_ALLOWED);
-        } catch (IllegalArgumentException e) {
-            exchange.respond(CoAP.ResponseCode.BAD_REQUEST, e.getMessage());
+            if (!result.isDone()) {
+                // acknowledge now, the outcome follows as a separate response
+                // and needs no execution resource to poll
+                exchange.accept();
+            }
+
+            result.whenComplete((response, error) -> {
+                if (error != null) {
+                    respondError(exchange, error);
+                    return;
+                }
+                int contentFormat = getCoapContentFormat(response.getMediaType());
+                exchange.respond(CoAP.ResponseCode.CREATED, response.getContent(), contentFormat);
+            });
         } catch (Exception e) {
-            exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR, e.getMessage());
+            respondError(exchange, e);
+        }
+    }
+
+    private static void respondError(CoapExchange exchange, Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof UnsupportedOperationException) {
+            exchange.respond(CoAP.ResponseCode.METHOD_NOT_ALLOWED);
+        } else if (error instanceof IllegalArgumentException) {
+            exchange.respond(CoAP.ResponseCode.BAD_REQUEST, error.getMessage());
+        } else if (error instanceof RejectedExecutionException || error instanceof CancellationException) {
+            exchange.respond(CoAP.ResponseCode.SERVICE_UNAVAILABLE, error.getMessage());
+        } else if (error instanceof TimeoutException) {
+            exchange.respond(CoAP.ResponseCode.GATEWAY_TIMEOUT, error.getMessage());
+        } else {
+            exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR, error.getMessage());
         }
     }
 
@@ -185,9 +334,100 @@ public class WotCoapResource extends CoapResource implements  Observer{
             exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR, e.getMessage());
         }    }
 
+    @Override
+    public void addObserveRelation(ObserveRelation relation) {
+        super.addObserveRelation(relation);
+        Notifications notifications = m_notifications;
+        if (notifications == null) {
+            return;
+        }
+        synchronized (m_notifyLock) {
+            if (m_heartbeat == null) {
+                scheduleHeartbeat(notifications);
+            }
+        }
+    }
+
     @Override
     public void update(Observable o, Object arg) {
-        LOGGER.info("change detected: " + o + " to " + arg);
+        LOGGER.fine("change detected: " + o + " to " + arg);
+        Notifications notifications = m_notifications;
+        if (notifications == null) {
+            this.changed();
+            return;
+        }
+
+        NotificationPolicy policy = notifications.getPolicy(getURI());
+        synchronized (m_notifyLock) {
+            m_latestValue = arg;
+            int observers = getObserverCount();
+            if (observers == 0) {
+                // new observers get the current value anyway
+                m_notifiedValue = arg;
+                return;
+            }
+            if (m_pending != null || !policy.exceedsThreshold(m_notifiedValue, arg)) {
+                // the pending notification carries the latest value
+                notifications.suppressed(observers);
+                return;
+            }
+            long wait = (m_lastNotified == 0) ? 0
+                    : policy.getMinInterval() - (System.nanoTime() - m_lastNotified) / 1000000;
+            if (wait > 0) {
+                m_pending = notifications.schedule(this::notifyPending, wait);
+                return;
+            }
+            notified(notifications);
+        }
+        notifyObservers(notifications);
+    }
+
+    private void notifyPending() {
+        Notifications notifications = m_notifications;
+        NotificationPolicy policy = notifications.getPolicy(getURI());
+        synchronized (m_notifyLock) {
+            m_pending = null;
+            if (!policy.exceedsThreshold(m_notifiedValue, m_latestValue)) {
+                notifications.suppressed(getObserverCount());
+                return;
+            }
+            notified(notifications);
+        }
+        notifyObservers(notifications);
+    }
+
+    private void heartbeat() {
+        Notifications notifications = m_notifications;
+        synchronized (m_notifyLock) {
+            m_heartbeat = null;
+            if (getObserverCount() == 0 || m_pending != null) {
+                // restarted by the next observer or the pending notification
+                return;
+            }
+            notified(notifications);
+        }
+        notifyObservers(notifications);
+    }
+
+    private void notified(Notifications notifications) {
+        m_notifiedValue = m_latestValue;
+        m_lastNotified = System.nanoTime();
+        if (m_heartbeat != null) {
+            m_heartbeat.cancel(false);
+            m_heartbeat = null;
+        }
+        scheduleHeartbeat(notifications);
+    }
+
+    private void scheduleHeartbeat(Notifications notifications) {
+        long maxInterval = notifications.getPolicy(getURI()).getMaxInterval();
+        if (maxInterval > 0) {
+            m_heartbeat = notifications.schedule(this::heartbeat, maxInterval);
+        }
+    }
+
+    private void notifyObservers(Notifications notifications) {
+        notifications.sent(getObserverCount());
         this.changed();
     }
 }
@@ -0,0 +1,248 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.http;
+
+import de.thingweb.binding.RESTListener;
+import de.thingweb.binding.TaggedContent;
+import de.thingweb.thing.Content;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Server-Sent Events of one resource.
+ * <p>
+ * Observes the {@link RESTListener} of the resource and renders each change
+ * into one event frame, which is handed to all subscribers. Subscribers
+ * buffer a bounded amount of frames and drop the oldest ones if their client
+ * does not keep up, since the following events carry newer values anyway.
+ */
+final class EventStream implements Observer {
+
+    private static final Logger log = LoggerFactory.getLogger(EventStream.class);
+
+    static final String MIME_TYPE = "text/event-stream";
+
+    /**
+     * Time after which an idle stream sends a comment, which keeps proxies
+     * from closing it and lets the server notice clients that went away.
+     */
+    static final long KEEP_ALIVE_INTERVAL = 15000;
+    static final byte[] KEEP_ALIVE = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Bytes of frames a subscriber holds back for a slow client.
+     */
+    static final int MAX_PENDING_BYTES = 64 * 1024;
+
+    private final RESTListener listener;
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+
+    EventStream(RESTListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the current state of the resource as event frame
+     * @throws Exception if the listener cannot be read
+     */
+    static byte[] render(RESTListener listener) throws Exception {
+        Content content = listener.onGet(Collections.emptyMap());
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(content.getContent().length + 32);
+        if (content instanceof TaggedContent) {
+            String etag = ((TaggedContent) content).getEntityTag(null);
+            write(frame, "id: " + etag.substring(1, etag.length() - 1) + "\n");
+        }
+        // every line of the payload becomes a data line
+        byte[] data = content.getContent();
+        int start = 0;
+        for (int i = 0; i <= data.length; i++) {
+            if (i == data.length || data[i] == '\n') {
+                int end = (i > start && data[i - 1] == '\r') ? i - 1 : i;
+                write(frame, "data: ");
+                frame.write(data, start, end - start);
+                write(frame, "\n");
+                start = i + 1;
+            }
+        }
+        write(frame, "\n");
+        return frame.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream frame, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        frame.write(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        byte[] frame;
+        try {
+            frame = render(listener);
+        } catch (Exception e) {
+            log.warn("rendering event of {} failed", listener, e);
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(frame);
+        }
+    }
+
+    RESTListener getListener() {
+        return listener;
+    }
+
+    void add(Subscriber subscriber) {
+        subscriber.stream = this;
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * @return whether the stream has no subscribers left
+     */
+    boolean remove(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        return subscribers.isEmpty();
+    }
+
+    Set<Subscriber> getSubscribers() {
+        return subscribers;
+    }
+
+    /**
+     * The frames waiting to be sent to one client.
+     */
+    static final class Subscriber {
+        private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+        private final Consumer<Subscriber> onClose;
+        private volatile Runnable onOffer;
+        volatile EventStream stream;
+        private int pendingBytes;
+        private boolean closed;
+        private long dropped;
+
+        /**
+         * @param onClose unsubscribes, called once
+         */
+        Subscriber(Consumer<Subscriber> onClose) {
+            this.onClose = onClose;
+        }
+
+        /**
+         * @param onOffer called after a frame was queued, e.g. to wake up the
+         *                thread writing to the client
+         */
+        void setOnOffer(Runnable onOffer) {
+            this.onOffer = onOffer;
+        }
+
+        void offer(byte[] frame) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                while (!pending.isEmpty() && pendingBytes + frame.length > MAX_PENDING_BYTES) {
+                    pendingBytes -= pending.poll().length;
+                    dropped++;
+                }
+                pending.add(frame);
+                pendingBytes += frame.length;
+                notifyAll();
+            }
+            Runnable callback = onOffer;
+            if (callback != null) {
+                callback.run();
+            }
+        }
+
+        /**
+         * @return the next frame, or null if there is none
+         */
+        synchronized byte[] poll() {
+            byte[] frame = pending.poll();
+            if (frame != null) {
+                pendingBytes -= frame.length;
+            }
+            return frame;
+        }
+
+        /**
+         * Waits for the next frame.
+         *
+         * @return the next frame, {@link #KEEP_ALIVE} if none arrived in time,
+         *         or null if the subscriber was closed
+         */
+        synchronized byte[] take(long timeout) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (pending.isEmpty() && !closed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return KEEP_ALIVE;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return closed ? null : poll();
+        }
+
+        /**
+         * @return the number of frames dropped because the client was slow
+         */
+        synchronized long getDropped() {
+            return dropped;
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pending.clear();
+                pendingBytes = 0;
+                notifyAll();
+            }
+            onClose.accept(this);
+        }
+    }
+}
@@ -32,9 +32,77 @@ import java.io.IOException;
 
 public class HttpBinding implements Binding {
 
+	/**
+	 * The server implementation behind the binding.
+	 */
+	public enum Engine {
+		/**
+		 * {@link NanoHttpServer}, a thread per connection with blocking
+		 * sockets. Long polls are answered with 501, they would hold the
+		 * thread for the whole wait.
+		 */
+		NANO,
+		/** {@link NioHttpServer}, a selector thread with keep-alive and pipelining */
+		NIO
+	}
+
+	private final int port;
+	private final boolean reusePort;
+	private final Engine engine;
+
+	public HttpBinding() {
+		this(NanoHttpServer.PORT);
+	}
+
+	/**
+	 * @param port the tcp port to listen on
+	 */
+	public HttpBinding(int port) {
+		this(port, false);
+	}
+
+	/**
+	 * @param port      the tcp port to listen on
+	 * @param reusePort whether to share the port with other bindings in this
+	 *                  process, see {@link de.thingweb.binding.ReusePort}
+	 */
+	public HttpBinding(int port, boolean reusePort) {
+		this(port, reusePort, Engine.NANO);
+	}
+
+	/**
+	 * @param port      the tcp port to listen on
+	 * @param reusePort whether to share the port with other bindings in this
+	 *                  process, see {@link de.thingweb.binding.ReusePort}
+	 * @param engine    the server implementation
+	 */
+	public HttpBinding(int port, boolean reusePort, Engine engine) {
+		if (null == engine) {
+			throw new IllegalArgumentException("engine must not be null");
+		}
+		this.port = port;
+		this.reusePort = reusePort;
+		this.engine = engine;
+	}
+
 	@Override
 	public void initialize() throws IOException {
-			m_server = new NanoHttpServer();
+		if (engine == Engine.NIO) {
+			m_server = new NioHttpServer(port, reusePort);
+		} else {
+			m_server = new NanoHttpServer(port, reusePort);
+		}
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * @return the server, null before {@link #initialize()}
+	 */
+	public HttpServer getServer() {
+		return m_server;
 	}
 	
 	@Override
@@ -53,5 +121,5 @@ public class HttpBinding implements Binding {
 	}
 
 
-	private NanoHttpServer m_server;
+	private HttpServer m_server;
 }
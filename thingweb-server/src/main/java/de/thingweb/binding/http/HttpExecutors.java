@@ -0,0 +1,125 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.http;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for {@link NanoHttpServer#setExecutor}.
+ */
+public final class HttpExecutors {
+
+    private HttpExecutors() {
+        /* pure static class */
+    }
+
+    /**
+     * Creates a pool serving at most <code>threads</code> connections at a
+     * time. Further connections wait in a queue of the given capacity, those
+     * that do not fit are rejected immediately. Idle threads end after a
+     * minute.
+     *
+     * @param threads       the maximum number of threads, must be positive
+     * @param queueCapacity the number of waiting connections, 0 for none
+     * @return the pool
+     */
+    public static ExecutorService bounded(int threads, int queueCapacity) {
+        return bounded(threads, queueCapacity, "NanoHttpd Request Processor");
+    }
+
+    /**
+     * Like {@link #bounded(int, int)}, for pools serving other work than
+     * connections.
+     *
+     * @param threadName the name of the threads, followed by their number
+     */
+    public static ExecutorService bounded(int threads, int queueCapacity, String threadName) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("queueCapacity must not be negative");
+        }
+
+        BlockingQueue<Runnable> queue = (queueCapacity > 0)
+                ? new ArrayBlockingQueue<>(queueCapacity)
+                : new SynchronousQueue<>();
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue,
+                runnable -> {
+                    Thread thread = new Thread(runnable, threadName + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * @return whether this JVM offers virtual threads
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return virtualThreadFactory() != null;
+    }
+
+    /**
+     * Creates an executor running every connection on a new virtual thread.
+     * Looked up reflectively, since virtual threads only exist from Java 21
+     * on.
+     *
+     * @return the executor
+     * @throws UnsupportedOperationException if the JVM has no virtual threads
+     */
+    public static ExecutorService virtualThreads() {
+        Method factory = virtualThreadFactory();
+        if (factory == null) {
+            throw new UnsupportedOperationException("virtual threads are not supported by this JVM");
+        }
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads are not supported by this JVM", e);
+        }
+    }
+
+    private static Method virtualThreadFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.http;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoHTTPD.Response.IStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A response of {@link HttpResources}, independent of the server writing it.
+ */
+final class HttpReply {
+
+    static final byte[] NO_BODY = new byte[0];
+
+    final IStatus status;
+    final String mimeType;
+    final byte[] body;
+    final Map<String, String> headers = new LinkedHashMap<>();
+    /**
+     * Set for event streams, the server keeps writing its frames after the
+     * headers until either side closes.
+     */
+    EventStream.Subscriber events;
+    /**
+     * Set for replies that are not known yet, the server writes the reply the
+     * stage completes with instead.
+     */
+    CompletionStage<HttpReply> deferred;
+
+    HttpReply(IStatus status, String mimeType, byte[] body) {
+        this.status = status;
+        this.mimeType = mimeType;
+        this.body = (body != null) ? body : NO_BODY;
+    }
+
+    HttpReply(IStatus status, String mimeType, String body) {
+        this(status, mimeType, (body != null) ? body.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    static HttpReply deferred(CompletionStage<HttpReply> reply) {
+        HttpReply deferred = new HttpReply(NanoHTTPD.Response.Status.OK, null, NO_BODY);
+        deferred.deferred = reply;
+        return deferred;
+    }
+
+    HttpReply addHeader(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.http;
+
+import de.thingweb.binding.AsyncResponse;
+import de.thingweb.binding.CachedContent;
+import de.thingweb.binding.RESTListener;
+import de.thingweb.binding.ResourceResolver;
+import de.thingweb.binding.ResourceRouter;
+import de.thingweb.binding.TaggedContent;
+import de.thingweb.security.TokenExpiredException;
+import de.thingweb.security.UnauthorizedException;
+import de.thingweb.thing.Content;
+import de.thingweb.thing.MediaType;
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoHTTPD.Response.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The resources of an HTTP server and how requests are mapped onto their
+ * {@link RESTListener}s, shared by the HTTP server implementations.
+ */
+final class HttpResources {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpResources.class);
+
+    private static final String MIME_PLAINTEXT = NanoHTTPD.MIME_PLAINTEXT;
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    private static final byte[] NOT_FOUND = "Resource not found".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Reads the request body, only called for methods that have one.
+     */
+    interface PayloadReader {
+        Content read() throws IOException;
+    }
+
+    private final ResourceRouter<RESTListener> routes = new ResourceRouter<>();
+    private final ResourceRouter<ResourceResolver> resolvers = new ResourceRouter<>();
+    private final Map<RESTListener, EventStream> streams = new ConcurrentHashMap<>();
+    private volatile long asyncResponseTimeout = NanoHttpServer.DEFAULT_ASYNC_RESPONSE_TIMEOUT;
+    private volatile boolean deferredReplies;
+
+    void newResource(String url, RESTListener restListener) {
+        routes.add(url, restListener);
+    }
+
+    void removeResource(String url) {
+        routes.remove(url);
+    }
+
+    void newResolver(String url, ResourceResolver resolver) {
+        if (resolver == null) {
+            resolvers.removePrefix(url);
+        } else {
+            resolvers.addPrefix(url, resolver);
+        }
+    }
+
+    void setAsyncResponseTimeout(long millis) {
+        this.asyncResponseTimeout = millis;
+    }
+
+    /**
+     * Tells whether the server writes {@link HttpReply#deferred deferred}
+     * replies without holding a thread. Otherwise long polls are
+     * rejected. Defaults to false.
+     */
+    void setDeferredReplies(boolean deferredReplies) {
+        this.deferredReplies = deferredReplies;
+    }
+
+    /**
+     * Ends all event streams, e.g. when the server stops.
+     */
+    void closeStreams() {
+        for (EventStream stream : streams.values()) {
+            stream.getSubscribers().forEach(EventStream.Subscriber::close);
+        }
+    }
+
+    private RESTListener find(String uri, Map<String, String> params) {
+        RESTListener listener = routes.find(uri, params);
+        if (listener == null) {
+            ResourceResolver resolver = resolvers.findPrefix(uri);
+            if (resolver != null) {
+                return resolver.resolve(uri);
+            }
+        }
+        return listener;
+    }
+
+    /**
+     * @param method  the request method, e.g. <code>GET</code>
+     * @param uri     the decoded path
+     * @param params  the query parameters, receives the path parameters of
+     *                templated resources
+     * @param headers the request headers with lower case names
+     * @param payload reads the body of PUT and POST requests
+     */
+    HttpReply handle(String method, String uri, Map<String, String> params, Map<String, String> headers,
+                     PayloadReader payload) {
+        //compare uri against resmap
+        RESTListener listener = find(uri, params);
+
+        //if not found return 404
+        if(listener== null) {
+            return new HttpReply(Status.NOT_FOUND, MIME_PLAINTEXT, NOT_FOUND);
+        }
+
+        //validate token
+        if(listener.hasProtection()) {
+            try {
+                String jwt = null;
+                String auth = headers.get("authorization");
+                if (auth != null) {
+                    if (auth.startsWith("Bearer ")) {
+                        jwt = auth.substring("Bearer ".length());
+                    }
+                }
+                listener.validate(method, uri, jwt);
+            } catch (TokenExpiredException e) {
+                return new HttpReply(Status.UNAUTHORIZED, MIME_PLAINTEXT, "Your token has expired");
+            } catch (UnauthorizedException e) {
+                return new HttpReply(Status.UNAUTHORIZED, MIME_PLAINTEXT, "Unauthorized: " + e.getMessage());
+            }
+        }
+
+        //get result
+        try {
+            switch (method) {
+                case "GET":
+                    String accept = headers.get("accept");
+                    if (accept != null && accept.contains(EventStream.MIME_TYPE)) {
+                        return replyEvents(listener);
+                    }
+                    if (!deferredReplies && params.containsKey(RESTListener.WAIT_FOR)) {
+                        return new HttpReply(HttpStatus.NOT_IMPLEMENTED, MIME_PLAINTEXT,
+                                "long polling is not supported by this server");
+                    }
+                    CompletableFuture<Content> read = listener.onGetAsync(params).getResult().toCompletableFuture();
+                    if (read.isDone()) {
+                        return replyContent(read.join(), headers);
+                    }
+                    // a long poll, the server writes the reply once the read completes
+                    return HttpReply.deferred(read.handle((resp, e) -> (e == null)
+                            ? replyContent(resp, headers)
+                            : replyError(unwrap(e))));
+                case "PUT":
+                    listener.onPut(payload.read());
+                    return new HttpReply(Status.OK, NanoHTTPD.MIME_HTML, HttpReply.NO_BODY);
+                case "POST":
+                    return respondAsync(listener.onPostAsync(payload.read()));
+                case "DELETE":
+                    listener.onDelete();
+                    return new HttpReply(Status.OK, NanoHTTPD.MIME_HTML, HttpReply.NO_BODY);
+                default:
+                    return new HttpReply(Status.METHOD_NOT_ALLOWED,MIME_PLAINTEXT,"Method not allowed");
+            }
+        } catch (CompletionException e) {
+            return replyError(unwrap(e));
+        } catch (Exception e) {
+            return replyError(e);
+        }
+    }
+
+    private static HttpReply replyError(Exception e) {
+        if (e instanceof UnsupportedOperationException) {
+            return new HttpReply(Status.METHOD_NOT_ALLOWED, MIME_PLAINTEXT, e.toString());
+        } else if (e instanceof IllegalArgumentException) {
+            return new HttpReply(Status.BAD_REQUEST, MIME_PLAINTEXT, e.toString());
+        } else if (e instanceof RejectedExecutionException) {
+            return new HttpReply(HttpStatus.SERVICE_UNAVAILABLE, MIME_PLAINTEXT, e.getMessage());
+        } else if (e instanceof CancellationException) {
+            return new HttpReply(HttpStatus.SERVICE_UNAVAILABLE, MIME_PLAINTEXT, "cancelled");
+        } else if (e instanceof TimeoutException) {
+            return new HttpReply(HttpStatus.GATEWAY_TIMEOUT, MIME_PLAINTEXT, e.getMessage());
+        }
+        log.error("callback raised error", e);
+        return new HttpReply(Status.INTERNAL_ERROR, MIME_PLAINTEXT, e.toString());
+    }
+
+    private static HttpReply replyContent(Content resp, Map<String, String> headers) {
+        if (resp instanceof TaggedContent) {
+            return replyTagged((TaggedContent) resp, headers);
+        }
+        // TODO how to handle accepted mimeTypes
+        // e.g., accept=text/html,application/xhtml+xml,application/xml;
+        return new HttpReply(Status.OK, resp.getMediaType().mediaType, resp.getContent());
+    }
+
+    /**
+     * Subscribes to the changes of the resource, starting with its current
+     * state.
+     */
+    private HttpReply replyEvents(RESTListener listener) throws Exception {
+        // fails like a plain GET if the resource cannot be read
+        byte[] current = EventStream.render(listener);
+
+        EventStream.Subscriber subscriber = new EventStream.Subscriber(this::unsubscribe);
+        streams.compute(listener, (key, stream) -> {
+            if (stream == null) {
+                stream = new EventStream(listener);
+                listener.addObserver(stream);
+            }
+            stream.add(subscriber);
+            return stream;
+        });
+        subscriber.offer(current);
+
+        HttpReply reply = new HttpReply(Status.OK, EventStream.MIME_TYPE, HttpReply.NO_BODY)
+                .addHeader("Cache-Control", "no-cache");
+        reply.events = subscriber;
+        return reply;
+    }
+
+    private void unsubscribe(EventStream.Subscriber subscriber) {
+        EventStream stream = subscriber.stream;
+        streams.computeIfPresent(stream.getListener(), (listener, current) -> {
+            if (current != stream || !stream.remove(subscriber)) {
+                return current;
+            }
+            listener.deleteObserver(stream);
+            return null;
+        });
+    }
+
+    /**
+     * Serves tagged content, or 304 if the client already has it. Cached
+     * content is served in the stored encoding the client accepts.
+     */
+    private static HttpReply replyTagged(TaggedContent content, Map<String, String> headers) {
+        CachedContent cached = (content instanceof CachedContent) ? (CachedContent) content : null;
+        String coding = null;
+        byte[] body = content.getContent();
+        if (cached != null) {
+            String acceptEncoding = headers.get("accept-encoding");
+            if (cached.getGzip() != null && accepts(acceptEncoding, "gzip")) {
+                coding = "gzip";
+                body = cached.getGzip();
+            } else if (cached.getDeflate() != null && accepts(acceptEncoding, "deflate")) {
+                coding = "deflate";
+                body = cached.getDeflate();
+            }
+        }
+
+        String etag = content.getEntityTag(coding);
+        boolean notModified;
+        String ifNoneMatch = headers.get("if-none-match");
+        if (ifNoneMatch != null) {
+            notModified = matches(ifNoneMatch, etag);
+        } else {
+            notModified = cached != null
+                    && notModifiedSince(headers.get("if-modified-since"), cached.getLastModified());
+        }
+
+        HttpReply reply = notModified
+                ? new HttpReply(Status.NOT_MODIFIED, content.getMediaType().mediaType, HttpReply.NO_BODY)
+                : new HttpReply(Status.OK, content.getMediaType().mediaType, body);
+        reply.addHeader("ETag", etag);
+        if (cached != null) {
+            if (coding != null && !notModified) {
+                reply.addHeader("Content-Encoding", coding);
+            }
+            reply.addHeader("Last-Modified", HTTP_DATE.format(Instant.ofEpochMilli(cached.getLastModified())))
+                    .addHeader("Vary", "Accept-Encoding");
+        }
+        return reply;
+    }
+
+    private static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String element : acceptEncoding.split(",")) {
+            int semicolon = element.indexOf(';');
+            String name = (semicolon < 0 ? element : element.substring(0, semicolon)).trim();
+            if (name.equalsIgnoreCase(coding) || name.equals("*")) {
+                return semicolon < 0 || !element.substring(semicolon + 1).replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean notModifiedSince(String ifModifiedSince, long lastModified) {
+        if (ifModifiedSince == null) {
+            return false;
+        }
+        try {
+            return lastModified <= Instant.from(HTTP_DATE.parse(ifModifiedSince)).toEpochMilli();
+        } catch (DateTimeException e) {
+            return false;
+        }
+    }
+
+    private HttpReply respondAsync(AsyncResponse async) throws Exception {
+        CompletableFuture<Content> result = async.getResult().toCompletableFuture();
+        Content resp;
+        try {
+            resp = result.get(asyncResponseTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (!async.hasLocation()) {
+                throw new TimeoutException("no result within " + asyncResponseTimeout + "ms");
+            }
+            // still running, the client can poll the location instead
+            String location = async.getLocation();
+            return new HttpReply(Status.ACCEPTED, MediaType.APPLICATION_JSON.mediaType,
+                    "{ \"href\" : \"" + location + "\" }")
+                    .addHeader("Location", location);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+        return new HttpReply(Status.OK, MIME_PLAINTEXT, resp.getContent());
+    }
+
+    private static Exception unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return (t instanceof Exception) ? (Exception) t : new RuntimeException(t);
+    }
+
+    /**
+     * @param contentType the content-type header, e.g.
+     *                    <code>text/plain; charset=UTF-8</code>, may be null
+     */
+    static Content toContent(byte[] body, String contentType) {
+        MediaType mt = MediaType.UNDEFINED; // unknown type
+        if(!(contentType == null || contentType.length() == 0)) {
+            StringTokenizer st = new StringTokenizer(contentType, "; \n\r");
+            String t = st.nextToken();
+            mt = MediaType.getMediaType(t); // may throw exception if content-type is unknown
+        }
+        return new Content(body, mt);
+    }
+}
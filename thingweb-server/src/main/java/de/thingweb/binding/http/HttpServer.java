@@ -0,0 +1,77 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.http;
+
+import de.thingweb.binding.ResourceBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * An HTTP server serving the resources registered with it, see
+ * {@link HttpBinding.Engine} for the implementations.
+ */
+public interface HttpServer extends ResourceBuilder {
+
+    void start() throws IOException;
+
+    void stop();
+
+    /**
+     * Sets the executor serving requests. What a task covers depends on the
+     * implementation, rejected tasks are answered with 503.
+     *
+     * @param executor the executor, must not be null
+     */
+    void setExecutor(Executor executor);
+
+    /**
+     * Sets how long an asynchronous POST is waited for before answering with
+     * 202 Accepted. Only applies to listeners that offer a location to poll.
+     *
+     * @param millis the timeout in milliseconds
+     */
+    void setAsyncResponseTimeout(long millis);
+
+    /**
+     * @return the number of open connections being served
+     */
+    int getActiveConnections();
+
+    /**
+     * @return the number of tasks waiting for the executor
+     */
+    int getQueuedConnections();
+
+    long getAcceptedCount();
+
+    /**
+     * @return the number of requests answered with 503 because the executor
+     * rejected them
+     */
+    long getRejectedCount();
+}
@@ -27,114 +27,348 @@
 package de.thingweb.binding.http;
 
 import de.thingweb.binding.RESTListener;
-import de.thingweb.binding.ResourceBuilder;
-import de.thingweb.security.TokenExpiredException;
-import de.thingweb.security.UnauthorizedException;
+import de.thingweb.binding.ResourceResolver;
+import de.thingweb.binding.ReusePort;
 import de.thingweb.thing.Content;
-import de.thingweb.thing.MediaType;
 import fi.iki.elonen.NanoHTTPD;
-import fi.iki.elonen.NanoHTTPD.Response.Status;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.StringTokenizer;
-import java.util.stream.Collectors;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 
-public class NanoHttpServer extends NanoHTTPD  implements ResourceBuilder {
+public class NanoHttpServer extends NanoHTTPD  implements HttpServer {
 
 	public static final int PORT = 8080;
-	private final Map<String,RESTListener> resmap = new LinkedHashMap<>();
+
+	/**
+	 * Time an asynchronous POST may take before the client is answered with
+	 * 202 Accepted and the location of the pending result.
+	 */
+	public static final long DEFAULT_ASYNC_RESPONSE_TIMEOUT = 500;
+
+	private final HttpResources resources = new HttpResources();
 	private Logger log = LoggerFactory.getLogger(NanoHttpServer.class);
 	private final String baseuri;
+	private final int port;
+	private final boolean reusePort;
+	private volatile Executor executor = NanoHttpServer::newConnectionThread;
+	private final AtomicInteger activeConnections = new AtomicInteger();
+	private final AtomicInteger queuedConnections = new AtomicInteger();
+	private final LongAdder acceptedConnections = new LongAdder();
+	private final LongAdder rejectedConnections = new LongAdder();
+	private ServerSocket serverSocket;
+	private Thread listener;
+	// event streams opened on the connection served by the current thread
+	private final ThreadLocal<List<EventStream.Subscriber>> connectionStreams = new ThreadLocal<>();
 
 	public NanoHttpServer() throws IOException {
-        super(PORT);
+		this(PORT);
+	}
+
+	public NanoHttpServer(int port) throws IOException {
+		this(port, false);
+	}
+
+	/**
+	 * @param port      the tcp port to listen on
+	 * @param reusePort whether to bind the port with
+	 *                  <code>SO_REUSEPORT</code>, so that several servers in
+	 *                  this process can share it
+	 */
+	public NanoHttpServer(int port, boolean reusePort) throws IOException {
+        super(port);
 		String hostname = InetAddress.getLocalHost().getHostName();
-		baseuri = String.format("http://%s:%s",hostname,PORT);
+		baseuri = String.format("http://%s:%s",hostname,port);
+		this.port = port;
+		this.reusePort = reusePort;
     }
 
-    @Override
-    public Response serve(IHTTPSession session) {
-         String uri = session.getUri();
+	/**
+	 * Sets the executor serving accepted connections, each task runs one
+	 * connection until it is closed or idle for
+	 * {@link #SOCKET_READ_TIMEOUT} ms. Connections the executor rejects are
+	 * answered with 503 right away. Defaults to a new thread per connection,
+	 * see {@link HttpExecutors} for bounded alternatives.
+	 *
+	 * @param executor the executor, must not be null
+	 */
+	@Override
+	public void setExecutor(Executor executor) {
+		if (null == executor) {
+			throw new IllegalArgumentException("executor must not be null");
+		}
+		this.executor = executor;
+	}
 
-        //compare uri against resmap
-        RESTListener listener = resmap.get(uri.toLowerCase());
+	@Override
+	public void setAsyncRunner(AsyncRunner asyncRunner) {
+		setExecutor(asyncRunner::exec);
+	}
+
+	private static void newConnectionThread(Runnable connection) {
+		Thread thread = new Thread(connection, "NanoHttpd Request Processor");
+		thread.setDaemon(true);
+		thread.start();
+	}
 
-        //if not found return 404
-        if(listener== null) {
-            String msg = String.format("Resource %s not found, availiable resources:\n",uri);
-			msg += resmap.keySet().stream().collect(Collectors.joining("\n"));
+	@Override
+	public synchronized void start() throws IOException {
+		if (serverSocket != null) {
+			return;
+		}
 
-			return new Response(Response.Status.NOT_FOUND,MIME_PLAINTEXT,msg);
-        }
+		// accept ourselves instead of in NanoHTTPD, to control socket options
+		// and what happens to connections that cannot be served
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		try {
+			if (reusePort) {
+				ReusePort.enable(channel);
+			}
+			channel.bind(new InetSocketAddress(port));
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		serverSocket = channel.socket();
+		listener = new Thread(() -> accept(channel.socket()), "NanoHttpd Listener " + port);
+		listener.setDaemon(true);
+		listener.start();
+	}
 
-		//validate token
-		if(listener.hasProtection()) {
+	@Override
+	public synchronized void stop() {
+		if (serverSocket == null) {
+			return;
+		}
+
+		try {
+			serverSocket.close();
+			resources.closeStreams();
+			closeAllConnections();
+			listener.join();
+		} catch (IOException e) {
+			log.warn("closing port {} failed", port, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		serverSocket = null;
+		listener = null;
+	}
+
+	private void accept(ServerSocket serverSocket) {
+		while (!serverSocket.isClosed()) {
 			try {
-				String jwt = null;
-				String auth = session.getHeaders().get("authorization");
-				if (auth != null) {
-					if (auth.startsWith("Bearer ")) {
-						jwt = auth.substring("Bearer ".length());
-					}
+				final Socket socket = serverSocket.accept();
+				acceptedConnections.increment();
+				socket.setSoTimeout(SOCKET_READ_TIMEOUT);
+				// responses are written in several chunks, don't wait for acks in between
+				socket.setTcpNoDelay(true);
+				registerConnection(socket);
+				execute(socket);
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					log.warn("accepting on port {} failed", port, e);
 				}
-				listener.validate(session.getMethod().name(), uri, jwt);
-			} catch (TokenExpiredException e) {
-				return new Response(Response.Status.UNAUTHORIZED, MIME_PLAINTEXT, "Your token has expired");
-			} catch (UnauthorizedException e) {
-				return new Response(Response.Status.UNAUTHORIZED, MIME_PLAINTEXT, "Unauthorized: " + e.getMessage());
 			}
 		}
+	}
 
-		//get result
-        try {
-			switch (session.getMethod()) {
-			    case GET:
-			    	Content resp = listener.onGet();
-			    	// TODO how to handle accepted mimeTypes
-			    	// e.g., accept=text/html,application/xhtml+xml,application/xml;
-			    	return new Response(Status.OK, resp.getMediaType().mediaType,  new ByteArrayInputStream(resp.getContent()));
-			    case PUT:
-			        listener.onPut(getPayload(session));
-			        return new Response(null);
-			    case POST:
-			    	resp = listener.onPost(getPayload(session));
-			    	return new Response(Status.OK, MIME_PLAINTEXT, new String(resp.getContent()));
-			    case DELETE:
-			        listener.onDelete();
-			        return new Response(null);
-			    default:
-			        return new Response(Response.Status.METHOD_NOT_ALLOWED,MIME_PLAINTEXT,"Method not allowed");
+	private void execute(Socket socket) {
+		queuedConnections.incrementAndGet();
+		try {
+			executor.execute(() -> {
+				queuedConnections.decrementAndGet();
+				activeConnections.incrementAndGet();
+				try {
+					handle(socket);
+				} finally {
+					activeConnections.decrementAndGet();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			queuedConnections.decrementAndGet();
+			rejectedConnections.increment();
+			reject(socket);
+		}
+	}
+
+	// what NanoHTTPD does for the connections it accepts itself
+	private void handle(Socket socket) {
+		TempFileManager tempFileManager = new DefaultTempFileManager();
+		List<EventStream.Subscriber> streams = new ArrayList<>();
+		connectionStreams.set(streams);
+		try (InputStream inputStream = socket.getInputStream();
+			 OutputStream outputStream = socket.getOutputStream()) {
+			HTTPSession session = new HTTPSession(tempFileManager, inputStream, outputStream, socket.getInetAddress());
+			while (!socket.isClosed()) {
+				session.execute();
 			}
-		} catch (UnsupportedOperationException e) {
-			return new Response(Status.METHOD_NOT_ALLOWED, MIME_PLAINTEXT, e.toString());
-		} catch (IllegalArgumentException e) {
-			return new Response(Status.BAD_REQUEST, MIME_PLAINTEXT, e.toString());
+		} catch (SocketException | SocketTimeoutException e) {
+			// connection closed by either side or idle
 		} catch (Exception e) {
-			log.error("callback raised error", e);
-			return new Response(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, e.toString());
+			log.debug("connection from {} failed", socket.getInetAddress(), e);
+		} finally {
+			// NanoHTTPD does not close the response data if writing fails
+			connectionStreams.remove();
+			streams.forEach(EventStream.Subscriber::close);
+			close(socket);
+			tempFileManager.clear();
 		}
+	}
 
+	private void reject(Socket socket) {
+		String body = "too many connections";
+		String response = "HTTP/1.1 " + HttpStatus.SERVICE_UNAVAILABLE.getDescription() + "\r\n"
+				+ "Content-Type: " + MIME_PLAINTEXT + "\r\n"
+				+ "Content-Length: " + body.length() + "\r\n"
+				+ "Retry-After: 1\r\n"
+				+ "Connection: close\r\n\r\n"
+				+ body;
+		try {
+			socket.getOutputStream().write(response.getBytes(StandardCharsets.US_ASCII));
+			socket.shutdownOutput();
+			// read what was sent already, so that closing does not reset the connection
+			InputStream inputStream = socket.getInputStream();
+			inputStream.skip(inputStream.available());
+		} catch (IOException e) {
+			log.debug("rejecting connection from {} failed", socket.getInetAddress(), e);
+		} finally {
+			close(socket);
+		}
 	}
 
-    private boolean authorize(String M) {
-		//to be replaced once tokenverifier is in place
-		return true;
+	private void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// already closed
+		}
+		unRegisterConnection(socket);
+	}
 
-		//String jwt = null;
-        //String auth = session.getHeaders().get("Authorization");
-        //if(auth != null) {
-        //    if(auth.startsWith("Bearer ")) {
-        //        jwt = auth.substring("Bearer ".length());
-        //    }
-        //return tokenVerifier.isAuthorized(jwt);
-    }
+	/**
+	 * @return the number of connections being served
+	 */
+	@Override
+	public int getActiveConnections() {
+		return activeConnections.get();
+	}
+
+	/**
+	 * @return the number of accepted connections waiting for the executor
+	 */
+	@Override
+	public int getQueuedConnections() {
+		return queuedConnections.get();
+	}
+
+	@Override
+	public long getAcceptedCount() {
+		return acceptedConnections.sum();
+	}
+
+	/**
+	 * @return the number of connections answered with 503 because the
+	 * executor rejected them
+	 */
+	@Override
+	public long getRejectedCount() {
+		return rejectedConnections.sum();
+	}
+
+    @Override
+    public Response serve(IHTTPSession session) {
+		HttpReply reply = resources.handle(session.getMethod().name(), session.getUri(),
+				session.getParms(), session.getHeaders(), () -> getPayload(session));
+		if (reply.deferred != null) {
+			// long polls are rejected, other reads complete soon
+			reply = reply.deferred.toCompletableFuture().join();
+		}
+
+		Response response;
+		if (reply.events != null) {
+			List<EventStream.Subscriber> streams = connectionStreams.get();
+			if (streams != null) {
+				streams.add(reply.events);
+			}
+			response = new Response(reply.status, reply.mimeType, new EventInputStream(reply.events));
+			response.setChunkedTransfer(true);
+		} else if (reply.body.length > 0) {
+			response = new Response(reply.status, reply.mimeType, new ByteArrayInputStream(reply.body));
+		} else {
+			response = new Response(reply.status, reply.mimeType, (String) null);
+		}
+		reply.headers.forEach(response::addHeader);
+		return response;
+	}
+
+	/**
+	 * The frames of an event stream, each read blocks until the next frame.
+	 */
+	private static final class EventInputStream extends InputStream {
+		private final EventStream.Subscriber subscriber;
+		private byte[] frame = HttpReply.NO_BODY;
+		private int position;
+
+		EventInputStream(EventStream.Subscriber subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return (read(single, 0, 1) < 0) ? -1 : single[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (position == frame.length) {
+				try {
+					frame = subscriber.take(EventStream.KEEP_ALIVE_INTERVAL);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					frame = null;
+				}
+				if (frame == null) {
+					frame = HttpReply.NO_BODY;
+					return -1;
+				}
+				position = 0;
+			}
+			int count = Math.min(length, frame.length - position);
+			System.arraycopy(frame, position, buffer, offset, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public void close() {
+			subscriber.close();
+		}
+	}
+
+	@Override
+	public void setAsyncResponseTimeout(long millis) {
+		resources.setAsyncResponseTimeout(millis);
+	}
 
     private static Content getPayload(IHTTPSession session) throws IOException {
     	// Daniel: to get rid of socket timeout 
@@ -146,20 +380,22 @@ public class NanoHttpServer extends NanoHTTPD  implements ResourceBuilder {
     		len += session.getInputStream().read(buffer, len, (contentLength-len));
     	} while(len < contentLength);
     	
-    	String contentType = session.getHeaders().get("content-type"); // e.g., content-type=text/plain; charset=UTF-8
-    	MediaType mt = MediaType.UNDEFINED; // unknown type
-    	if(!(contentType == null || contentType.length() == 0)) {
-    		StringTokenizer st = new StringTokenizer(contentType, "; \n\r");
-    		String t = st.nextToken();
-    		mt = MediaType.getMediaType(t); // may throw exception if content-type is unknown
-    	}
-    	Content c = new Content(buffer, mt);
-    	return c;
+    	return HttpResources.toContent(buffer, session.getHeaders().get("content-type"));
     }
 
     @Override
     public void newResource(String url, RESTListener restListener) {
-        resmap.put(url.toLowerCase(),restListener);
+        resources.newResource(url, restListener);
+    }
+
+    @Override
+    public void removeResource(String url) {
+        resources.removeResource(url);
+    }
+
+    @Override
+    public void newResolver(String url, ResourceResolver resolver) {
+        resources.newResolver(url, resolver);
     }
 
 	@Override
@@ -0,0 +1,796 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.http;
+
+import de.thingweb.binding.RESTListener;
+import de.thingweb.binding.ResourceResolver;
+import de.thingweb.binding.ReusePort;
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoHTTPD.Response.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Non-blocking HTTP/1.1 server on a single selector thread.
+ * <p>
+ * Connections are kept alive and may pipeline requests. The requests of a
+ * connection are handed to the executor one after the other and answered in
+ * order. Responses are copied from the {@link de.thingweb.thing.Content}
+ * byte arrays straight into a direct buffer for writing. Request bodies must
+ * come with a content-length, chunked requests are answered with 501.
+ * <p>
+ * Event streams are written as frames arrive, a slow client holds back at
+ * most the frames its subscriber buffers. Long polls release their worker
+ * while they wait.
+ */
+public class NioHttpServer implements HttpServer {
+
+    private static final Logger log = LoggerFactory.getLogger(NioHttpServer.class);
+
+    /**
+     * Time after which idle connections are closed.
+     */
+    public static final int IDLE_TIMEOUT = NanoHTTPD.SOCKET_READ_TIMEOUT;
+
+    static final int MAX_HEADER_SIZE = 16 * 1024;
+    static final int MAX_BODY_SIZE = 1024 * 1024;
+    static final int MAX_PIPELINED = 64;
+    // connections with more unsent output take no further requests
+    static final int MAX_PENDING_OUTPUT = 256 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+
+    private final HttpResources resources = new HttpResources();
+    private final String baseuri;
+    private final int port;
+    private final boolean reusePort;
+    private volatile Executor executor = HttpExecutors.bounded(
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), 1024);
+
+    // only used on the selector thread
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicInteger queuedRequests = new AtomicInteger();
+    private final AtomicLong pendingOutput = new AtomicLong();
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    private Selector selector;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    public NioHttpServer(int port) throws IOException {
+        this(port, false);
+    }
+
+    /**
+     * @param port      the tcp port to listen on
+     * @param reusePort whether to bind the port with
+     *                  <code>SO_REUSEPORT</code>, so that several servers in
+     *                  this process can share it
+     */
+    public NioHttpServer(int port, boolean reusePort) throws IOException {
+        String hostname = InetAddress.getLocalHost().getHostName();
+        this.baseuri = String.format("http://%s:%s", hostname, port);
+        this.port = port;
+        this.reusePort = reusePort;
+        // deferred replies are written from the selector thread
+        resources.setDeferredReplies(true);
+    }
+
+    /**
+     * Sets the executor running the listeners, each task serves one request.
+     * Defaults to a bounded pool of two threads per core.
+     */
+    @Override
+    public void setExecutor(Executor executor) {
+        if (null == executor) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        this.executor = executor;
+    }
+
+    @Override
+    public void setAsyncResponseTimeout(long millis) {
+        resources.setAsyncResponseTimeout(millis);
+    }
+
+    @Override
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+
+        Selector selector = Selector.open();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try {
+            if (reusePort) {
+                ReusePort.enable(serverChannel);
+            }
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+
+        this.selector = selector;
+        running = true;
+        selectorThread = new Thread(this::select, "nio-http-" + port);
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        resources.closeStreams();
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        selectorThread = null;
+    }
+
+    private void select() {
+        long lastIdleCheck = System.currentTimeMillis();
+        try {
+            while (running) {
+                selector.select(1000);
+
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                        continue;
+                    }
+
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.writable();
+                        }
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= 1000) {
+                    closeIdle(now);
+                    lastIdleCheck = now;
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            log.error("selector of port {} failed", port, e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                } else {
+                    closeQuietly(key);
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.warn("closing selector of port {} failed", port, e);
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            acceptedConnections.increment();
+            activeConnections.incrementAndGet();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        }
+    }
+
+    private void closeIdle(long now) {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                Connection connection = (Connection) attachment;
+                if (connection.isIdle(now)) {
+                    connection.close();
+                } else {
+                    connection.keepAlive(now);
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    // runs a task on the selector thread
+    private void post(Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    private static final class Request {
+        final String method;
+        final String uri;
+        final Map<String, String> params;
+        final Map<String, String> headers;
+        final byte[] body;
+        final boolean keepAlive;
+        // answer for requests that could not be parsed
+        final HttpReply error;
+
+        Request(String method, String uri, Map<String, String> params, Map<String, String> headers,
+                byte[] body, boolean keepAlive) {
+            this.method = method;
+            this.uri = uri;
+            this.params = params;
+            this.headers = headers;
+            this.body = body;
+            this.keepAlive = keepAlive;
+            this.error = null;
+        }
+
+        Request(HttpReply error) {
+            this.method = null;
+            this.uri = null;
+            this.params = null;
+            this.headers = null;
+            this.body = null;
+            this.keepAlive = false;
+            this.error = error;
+        }
+    }
+
+    /**
+     * State of one connection, only touched on the selector thread.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ArrayDeque<Request> requests = new ArrayDeque<>();
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        private byte[] input = new byte[1024];
+        private int inputLength;
+        private boolean busy;
+        private boolean broken;
+        private boolean closeAfterWrite;
+        private boolean closed;
+        private int pendingOutput;
+        // stopped reading and dispatching until the client took its answers
+        private boolean throttled;
+        private long lastActive = System.currentTimeMillis();
+        // set once the connection carries an event stream
+        private EventStream.Subscriber events;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            readBuffer.clear();
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+
+            readBuffer.flip();
+            if (inputLength + read > input.length) {
+                input = Arrays.copyOf(input, Math.max(input.length * 2, inputLength + read));
+            }
+            if (events != null) {
+                // nothing is answered on an event stream anymore
+                return;
+            }
+            readBuffer.get(input, inputLength, read);
+            inputLength += read;
+            process();
+        }
+
+        private void process() {
+            parse();
+            dispatchNext();
+            updateInterest();
+        }
+
+        private void parse() {
+            while (!broken && requests.size() < MAX_PIPELINED) {
+                int headerEnd = indexOf(input, inputLength, HEADER_END);
+                if (headerEnd < 0) {
+                    if (inputLength > MAX_HEADER_SIZE) {
+                        fail(HttpStatus.REQUEST_HEADER_FIELDS_TOO_LARGE, "request header too large");
+                    }
+                    return;
+                }
+
+                String[] lines = new String(input, 0, headerEnd, StandardCharsets.ISO_8859_1).split("\r\n");
+                String[] requestLine = lines[0].split(" ");
+                if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                    fail(Status.BAD_REQUEST, "malformed request line");
+                    return;
+                }
+
+                Map<String, String> headers = new HashMap<>();
+                for (int i = 1; i < lines.length; i++) {
+                    int colon = lines[i].indexOf(':');
+                    if (colon > 0) {
+                        headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+                    }
+                }
+                if (headers.containsKey("transfer-encoding")) {
+                    fail(HttpStatus.NOT_IMPLEMENTED, "request bodies need a content-length");
+                    return;
+                }
+
+                int contentLength;
+                try {
+                    contentLength = headers.containsKey("content-length") ? Integer.parseInt(headers.get("content-length")) : 0;
+                } catch (NumberFormatException e) {
+                    fail(Status.BAD_REQUEST, "malformed content-length");
+                    return;
+                }
+                if (contentLength < 0 || contentLength > MAX_BODY_SIZE) {
+                    fail(HttpStatus.PAYLOAD_TOO_LARGE, "request body too large");
+                    return;
+                }
+
+                int length = headerEnd + HEADER_END.length + contentLength;
+                if (inputLength < length) {
+                    if (length > input.length) {
+                        input = Arrays.copyOf(input, length);
+                    }
+                    return;
+                }
+
+                byte[] body = Arrays.copyOfRange(input, headerEnd + HEADER_END.length, length);
+                System.arraycopy(input, length, input, 0, inputLength - length);
+                inputLength -= length;
+
+                String connection = headers.getOrDefault("connection", "");
+                boolean keepAlive = requestLine[2].equals("HTTP/1.0")
+                        ? connection.equalsIgnoreCase("keep-alive")
+                        : !connection.equalsIgnoreCase("close");
+
+                String target = requestLine[1];
+                int query = target.indexOf('?');
+                try {
+                    String uri = decode(query < 0 ? target : target.substring(0, query));
+                    Map<String, String> params = decodeParams(query < 0 ? null : target.substring(query + 1));
+                    requests.add(new Request(requestLine[0], uri, params, headers, body, keepAlive));
+                } catch (IllegalArgumentException e) {
+                    fail(Status.BAD_REQUEST, "malformed uri");
+                    return;
+                }
+            }
+        }
+
+        // answers after the requests before it and closes the connection
+        private void fail(NanoHTTPD.Response.IStatus status, String message) {
+            broken = true;
+            inputLength = 0;
+            requests.add(new Request(new HttpReply(status, NanoHTTPD.MIME_PLAINTEXT, message)));
+        }
+
+        private void dispatchNext() {
+            if (busy || closed || requests.isEmpty()) {
+                return;
+            }
+            if (isBacklogged()) {
+                // the rest waits until the client read its answers
+                throttled = true;
+                return;
+            }
+
+            Request request = requests.poll();
+            busy = true;
+            if (request.error != null) {
+                complete(request, request.error);
+                return;
+            }
+
+            queuedRequests.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    queuedRequests.decrementAndGet();
+                    HttpReply reply;
+                    try {
+                        reply = resources.handle(request.method, request.uri, request.params, request.headers,
+                                () -> HttpResources.toContent(request.body, request.headers.get("content-type")));
+                    } catch (RuntimeException | Error e) {
+                        log.error("handling {} {} failed", request.method, request.uri, e);
+                        reply = new HttpReply(Status.INTERNAL_ERROR, NanoHTTPD.MIME_PLAINTEXT, e.toString());
+                    }
+                    final HttpReply result = reply;
+                    if (result.deferred != null) {
+                        // parked without a worker, the connection stays busy until it completes
+                        result.deferred.whenComplete((deferred, e) -> post(() -> complete(request, (e == null)
+                                ? deferred
+                                : new HttpReply(Status.INTERNAL_ERROR, NanoHTTPD.MIME_PLAINTEXT, e.toString()))));
+                    } else {
+                        post(() -> complete(request, result));
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                queuedRequests.decrementAndGet();
+                rejectedRequests.increment();
+                complete(request, new HttpReply(HttpStatus.SERVICE_UNAVAILABLE, NanoHTTPD.MIME_PLAINTEXT,
+                        "too many requests").addHeader("Retry-After", "1"));
+            }
+        }
+
+        private void complete(Request request, HttpReply reply) {
+            busy = false;
+            if (closed) {
+                return;
+            }
+
+            StringBuilder header = new StringBuilder(128)
+                    .append("HTTP/1.1 ").append(reply.status.getDescription()).append("\r\n")
+                    .append("Content-Type: ").append(reply.mimeType).append("\r\n");
+            if (reply.events == null) {
+                header.append("Content-Length: ").append(reply.body.length).append("\r\n");
+            }
+            reply.headers.forEach((name, value) -> header.append(name).append(": ").append(value).append("\r\n"));
+            if (reply.events != null) {
+                // the stream lasts until either side closes the connection
+                header.append("Connection: close\r\n\r\n");
+                send(ByteBuffer.wrap(header.toString().getBytes(StandardCharsets.ISO_8859_1)));
+                requests.clear();
+                inputLength = 0;
+                events = reply.events;
+                events.setOnOffer(() -> post(this::drainEvents));
+                drainEvents();
+                return;
+            }
+            if (!request.keepAlive) {
+                header.append("Connection: close\r\n");
+                closeAfterWrite = true;
+            }
+            header.append("\r\n");
+
+            send(ByteBuffer.wrap(header.toString().getBytes(StandardCharsets.ISO_8859_1)));
+            if (reply.body.length > 0) {
+                send(ByteBuffer.wrap(reply.body));
+            }
+
+            try {
+                flush();
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (!closeAfterWrite) {
+                process();
+            }
+        }
+
+        void writable() throws IOException {
+            if (events != null) {
+                drainEvents();
+            } else {
+                flush();
+            }
+        }
+
+        /**
+         * Writes the pending frames of the event stream, once the frames
+         * written before have left.
+         */
+        private void drainEvents() {
+            try {
+                flush();
+                while (!closed && output.isEmpty()) {
+                    byte[] frame = events.poll();
+                    if (frame == null) {
+                        break;
+                    }
+                    do {
+                        send(ByteBuffer.wrap(frame));
+                    } while ((frame = events.poll()) != null);
+                    flush();
+                }
+                if (!closed && output.isEmpty() && events.isClosed()) {
+                    close();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void keepAlive(long now) {
+            if (events != null && output.isEmpty() && now - lastActive > EventStream.KEEP_ALIVE_INTERVAL) {
+                send(ByteBuffer.wrap(EventStream.KEEP_ALIVE));
+                try {
+                    flush();
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        }
+
+        // queues data without writing it, see flush()
+        private void send(ByteBuffer data) {
+            output.add(data);
+            pendingOutput += data.remaining();
+            NioHttpServer.this.pendingOutput.addAndGet(data.remaining());
+        }
+
+        void flush() throws IOException {
+            while (!output.isEmpty()) {
+                writeBuffer.clear();
+                for (ByteBuffer segment : output) {
+                    if (!writeBuffer.hasRemaining()) {
+                        break;
+                    }
+                    ByteBuffer chunk = segment.duplicate();
+                    if (chunk.remaining() > writeBuffer.remaining()) {
+                        chunk.limit(chunk.position() + writeBuffer.remaining());
+                    }
+                    writeBuffer.put(chunk);
+                }
+                writeBuffer.flip();
+
+                int written = channel.write(writeBuffer);
+                if (written > 0) {
+                    // the client takes its answers, even if it sends nothing
+                    lastActive = System.currentTimeMillis();
+                    pendingOutput -= written;
+                    NioHttpServer.this.pendingOutput.addAndGet(-written);
+                }
+                while (written > 0) {
+                    ByteBuffer head = output.peek();
+                    int consumed = Math.min(written, head.remaining());
+                    head.position(head.position() + consumed);
+                    written -= consumed;
+                    if (!head.hasRemaining()) {
+                        output.poll();
+                    }
+                }
+                if (writeBuffer.hasRemaining()) {
+                    // socket buffer full, continue when writable
+                    break;
+                }
+            }
+
+            if (output.isEmpty() && closeAfterWrite) {
+                close();
+            } else {
+                updateInterest();
+                if (throttled && !isBacklogged()) {
+                    // not from here, flush may run within complete()
+                    post(this::resume);
+                }
+            }
+        }
+
+        private boolean isBacklogged() {
+            return pendingOutput > MAX_PENDING_OUTPUT;
+        }
+
+        /**
+         * Takes the requests held back while throttled, once the backlog
+         * cleared.
+         */
+        private void resume() {
+            if (closed || !throttled || isBacklogged()) {
+                return;
+            }
+            throttled = false;
+            process();
+        }
+
+        private void updateInterest() {
+            if (closed) {
+                return;
+            }
+            int ops = 0;
+            if (events != null || (!closeAfterWrite && !broken && !isBacklogged() && requests.size() < MAX_PIPELINED)) {
+                // event streams keep reading to notice the client closing
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!output.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        // includes clients that stopped taking their answers
+        boolean isIdle(long now) {
+            return events == null && !busy && now - lastActive > IDLE_TIMEOUT;
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            activeConnections.decrementAndGet();
+            NioHttpServer.this.pendingOutput.addAndGet(-pendingOutput);
+            pendingOutput = 0;
+            output.clear();
+            closeQuietly(key);
+            if (events != null) {
+                events.close();
+            }
+        }
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, String> decodeParams(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) {
+                params.put(decode(pair).trim(), "");
+            } else {
+                params.put(decode(pair.substring(0, eq)).trim(), decode(pair.substring(eq + 1)));
+            }
+        }
+        return params;
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * @return the number of bytes queued for all connections but not yet
+     *         written to their sockets
+     */
+    public long getPendingOutput() {
+        return pendingOutput.get();
+    }
+
+    /**
+     * @return the number of requests waiting for the executor
+     */
+    @Override
+    public int getQueuedConnections() {
+        return queuedRequests.get();
+    }
+
+    @Override
+    public long getAcceptedCount() {
+        return acceptedConnections.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedRequests.sum();
+    }
+
+    @Override
+    public void newResource(String url, RESTListener restListener) {
+        resources.newResource(url, restListener);
+    }
+
+    @Override
+    public void removeResource(String url) {
+        resources.removeResource(url);
+    }
+
+    @Override
+    public void newResolver(String url, ResourceResolver resolver) {
+        resources.newResolver(url, resolver);
+    }
+
+    @Override
+    public String getBase() {
+        return baseuri;
+    }
+
+    @Override
+    public String getIdentifier() {
+        return "HTTP";
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.mqtt;
+
+import de.thingweb.binding.Binding;
+import de.thingweb.binding.RESTListener;
+import de.thingweb.binding.ResourceBuilder;
+import de.thingweb.binding.ResourceResolver;
+import de.thingweb.binding.ResourceRouter;
+import de.thingweb.binding.http.HttpExecutors;
+import de.thingweb.security.TokenExpiredException;
+import de.thingweb.security.UnauthorizedException;
+import de.thingweb.thing.Content;
+import de.thingweb.thing.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.UUID;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mirrors the interactions of the things to an MQTT broker.
+ * <p>
+ * The value of a resource <code>/things/{thing}/{interaction}</code> is
+ * published retained to the topic <code>things/{thing}/{interaction}</code>,
+ * initially and after every change. Messages to
+ * <code>things/{thing}/{interaction}/set</code> write the resource, messages
+ * to <code>.../invoke</code> invoke it and publish the outcome to
+ * <code>.../result</code>. Payloads are those of the HTTP binding.
+ * <p>
+ * Changes are published by a single thread. Under load the changes that
+ * queue up while it writes are sent in one batch, a topic changed several
+ * times in the meantime is published once with its latest value. Resources
+ * protected by tokens are not mirrored.
+ * <p>
+ * Only registered resources are mirrored, so the binding does not support
+ * lazy routing, see
+ * {@link de.thingweb.servient.impl.MultiBindingThingServer.RoutingMode#LAZY}.
+ */
+public class MqttBinding implements Binding {
+
+	private static final Logger log = LoggerFactory.getLogger(MqttBinding.class);
+
+	public static final int DEFAULT_PORT = 1883;
+	public static final int KEEP_ALIVE = 60;
+
+	static final int MAX_BATCH = 1024;
+	private static final long MAX_RECONNECT_DELAY = 30000;
+
+	private final String host;
+	private final int port;
+	private final String clientId;
+	private final ResourceRouter<RESTListener> routes = new ResourceRouter<>();
+	private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+	private final BlockingDeque<Publication> publications = new LinkedBlockingDeque<>();
+	private volatile Executor executor = HttpExecutors.bounded(
+			Math.max(2, Runtime.getRuntime().availableProcessors()), 1024, "mqtt-worker");
+
+	private volatile MqttConnection connection;
+	private volatile boolean running;
+	private Thread publisher;
+	private ResourceBuilder m_resourceBuilder;
+
+	/**
+	 * @param host the host of the broker
+	 * @param port the port of the broker
+	 */
+	public MqttBinding(String host, int port) {
+		this(host, port, "thingweb-" + UUID.randomUUID());
+	}
+
+	/**
+	 * @param host     the host of the broker
+	 * @param port     the port of the broker
+	 * @param clientId the client identifier, unique per broker
+	 */
+	public MqttBinding(String host, int port, String clientId) {
+		if (null == host) {
+			throw new IllegalArgumentException("host must not be null");
+		}
+		if (null == clientId) {
+			throw new IllegalArgumentException("clientId must not be null");
+		}
+		this.host = host;
+		this.port = port;
+		this.clientId = clientId;
+	}
+
+	/**
+	 * Sets the executor running writes and invocations received from the
+	 * broker. Defaults to a bounded pool of one thread per core.
+	 */
+	public void setExecutor(Executor executor) {
+		if (null == executor) {
+			throw new IllegalArgumentException("executor must not be null");
+		}
+		this.executor = executor;
+	}
+
+	@Override
+	public void initialize() throws IOException {
+		m_resourceBuilder = new ResourceBuilder() {
+			@Override
+			public void newResource(String url, RESTListener restListener) {
+				routes.add(url, restListener);
+				String topic = topicOf(url);
+				if (topic == null || !isOpen(restListener, "GET", url)) {
+					return;
+				}
+				Topic mirrored = new Topic(topic, restListener);
+				Topic previous = topics.put(topic, mirrored);
+				if (previous != null) {
+					previous.listener.deleteObserver(previous);
+				}
+				restListener.addObserver(mirrored);
+				mirrored.changed();
+			}
+
+			@Override
+			public void removeResource(String url) {
+				routes.remove(url);
+				String topic = topicOf(url);
+				Topic mirrored = (topic != null) ? topics.remove(topic) : null;
+				if (mirrored != null) {
+					mirrored.listener.deleteObserver(mirrored);
+					// an empty retained message clears the value
+					publications.add(target -> target.publish(topic, new byte[0], true));
+				}
+			}
+
+			@Override
+			public void newResolver(String url, ResourceResolver resolver) {
+				if (resolver != null) {
+					// resolved resources exist on demand, there is nothing to publish
+					throw new UnsupportedOperationException("MQTT mirrors registered resources only, "
+							+ "lazily resolved ones would never be published");
+				}
+			}
+
+			@Override
+			public String getBase() {
+				return "mqtt://" + host + ":" + port;
+			}
+
+			@Override
+			public String getIdentifier() {
+				return "MQTT";
+			}
+		};
+	}
+
+	@Override
+	public ResourceBuilder getResourceBuilder() {
+		return m_resourceBuilder;
+	}
+
+	/**
+	 * Connects to the broker and starts publishing.
+	 *
+	 * @throws IOException if the broker cannot be reached
+	 */
+	@Override
+	public synchronized void start() throws IOException {
+		if (running) {
+			return;
+		}
+		connection = connect();
+		running = true;
+		publisher = new Thread(this::publish, "mqtt-publisher-" + clientId);
+		publisher.setDaemon(true);
+		publisher.start();
+	}
+
+	@Override
+	public synchronized void stop() throws IOException {
+		if (!running) {
+			return;
+		}
+		running = false;
+		publisher.interrupt();
+		try {
+			publisher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		publisher = null;
+		connection.close();
+	}
+
+	private MqttConnection connect() throws IOException {
+		MqttConnection connection = new MqttConnection(host, port, clientId, KEEP_ALIVE, this::received);
+		connection.subscribe("things/+/+/set", "things/+/+/invoke");
+		// a new session starts without our retained values being current
+		topics.values().forEach(Topic::changed);
+		return connection;
+	}
+
+	private void publish() {
+		List<Publication> batch = new ArrayList<>();
+		long reconnectDelay = 1000;
+		while (running) {
+			try {
+				if (connection.isClosed()) {
+					connection = connect();
+					reconnectDelay = 1000;
+				}
+
+				Publication first = publications.poll(KEEP_ALIVE / 2, TimeUnit.SECONDS);
+				if (first == null) {
+					connection.ping();
+					continue;
+				}
+				batch.add(first);
+				publications.drainTo(batch, MAX_BATCH - 1);
+				for (Publication publication : batch) {
+					publication.publishTo(connection);
+				}
+				connection.flush();
+				batch.clear();
+			} catch (InterruptedException e) {
+				break;
+			} catch (IOException e) {
+				log.warn("publishing to {}:{} failed, reconnecting in {}ms", host, port, reconnectDelay, e);
+				connection.close();
+				// retained values are published again after the reconnect, other
+				// messages are not and go back to the head of the queue in order
+				for (int i = batch.size() - 1; i >= 0; i--) {
+					Publication publication = batch.get(i);
+					if (publication instanceof Topic) {
+						// let connect() queue it again
+						((Topic) publication).queued.set(false);
+					} else {
+						publications.addFirst(publication);
+					}
+				}
+				batch.clear();
+				try {
+					Thread.sleep(reconnectDelay);
+				} catch (InterruptedException interrupted) {
+					break;
+				}
+				reconnectDelay = Math.min(2 * reconnectDelay, MAX_RECONNECT_DELAY);
+			}
+		}
+	}
+
+	// called on the reading thread of the connection
+	private void received(String topic, byte[] payload) {
+		boolean invoke = topic.endsWith("/invoke");
+		String resource = topic.substring(0, topic.lastIndexOf('/'));
+		RESTListener listener = routes.find("/" + resource);
+		if (listener == null || !isOpen(listener, invoke ? "POST" : "PUT", "/" + resource)) {
+			log.debug("no resource for message to {}", topic);
+			return;
+		}
+
+		Content content = new Content(payload, MediaType.APPLICATION_JSON);
+		try {
+			executor.execute(() -> {
+				try {
+					if (invoke) {
+						listener.onPostAsync(content).getResult().whenComplete((result, e) -> {
+							if (e != null) {
+								log.warn("invoking {} failed", resource, e);
+							} else if (result != null) {
+								publications.add(target -> target.publish(resource + "/result", result.getContent(), false));
+							}
+						});
+					} else {
+						listener.onPut(content);
+					}
+				} catch (RuntimeException e) {
+					log.warn("handling message to {} failed", topic, e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			log.warn("dropped message to {}, too many pending", topic);
+		}
+	}
+
+	/**
+	 * @return whether the resource may be used without a token, MQTT
+	 * messages carry none
+	 */
+	private static boolean isOpen(RESTListener listener, String method, String url) {
+		if (!listener.hasProtection()) {
+			return true;
+		}
+		try {
+			listener.validate(method, url, null);
+			return true;
+		} catch (UnauthorizedException | TokenExpiredException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the topic of an interaction resource, null for other resources
+	 */
+	static String topicOf(String url) {
+		if (!url.startsWith("/things/")) {
+			return null;
+		}
+		String topic = url.substring(1);
+		String[] segments = topic.split("/");
+		if (segments.length != 3 || segments[2].startsWith(".") || topic.contains("+") || topic.contains("#")) {
+			return null;
+		}
+		return topic;
+	}
+
+	private interface Publication {
+		void publishTo(MqttConnection connection) throws IOException;
+	}
+
+	/**
+	 * The retained value of a resource, queued at most once until it is
+	 * published.
+	 */
+	private final class Topic implements Observer, Publication {
+		final String topic;
+		final RESTListener listener;
+		private final AtomicBoolean queued = new AtomicBoolean();
+
+		Topic(String topic, RESTListener listener) {
+			this.topic = topic;
+			this.listener = listener;
+		}
+
+		void changed() {
+			if (queued.compareAndSet(false, true)) {
+				publications.add(this);
+			}
+		}
+
+		@Override
+		public void update(Observable o, Object arg) {
+			changed();
+		}
+
+		@Override
+		public void publishTo(MqttConnection connection) throws IOException {
+			queued.set(false);
+			if (topics.get(topic) != this) {
+				return;
+			}
+			Content value;
+			try {
+				value = listener.onGet();
+			} catch (RuntimeException e) {
+				// e.g. actions, which have no value to publish
+				log.debug("{} has no value to publish", topic, e);
+				return;
+			}
+			connection.publish(topic, value.getContent(), true);
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.mqtt;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A connection to an MQTT 3.1.1 broker with a clean session, publishing and
+ * subscribing at QoS 0.
+ * <p>
+ * Publishes are buffered until {@link #flush()}, so that a batch of them
+ * leaves in as few segments as possible. Received messages are passed to
+ * the handler on the reading thread of the connection.
+ */
+final class MqttConnection implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(MqttConnection.class);
+
+    static final int CONNECT = 1;
+    static final int CONNACK = 2;
+    static final int PUBLISH = 3;
+    static final int PUBACK = 4;
+    static final int SUBSCRIBE = 8;
+    static final int SUBACK = 9;
+    static final int PINGREQ = 12;
+    static final int PINGRESP = 13;
+    static final int DISCONNECT = 14;
+
+    interface MessageHandler {
+        void message(String topic, byte[] payload);
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final MessageHandler handler;
+    private final int keepAlive;
+    private int packetId;
+    private volatile long lastWrite = System.currentTimeMillis();
+    private volatile boolean closed;
+
+    /**
+     * Connects and waits for the broker to accept the connection.
+     *
+     * @param keepAlive seconds the broker waits for a packet before it drops
+     *                  the connection, see {@link #ping()}
+     */
+    MqttConnection(String host, int port, String clientId, int keepAlive, MessageHandler handler) throws IOException {
+        this.handler = handler;
+        this.keepAlive = keepAlive;
+        this.socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), 10000);
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+
+            ByteArrayOutputStream connect = new ByteArrayOutputStream();
+            writeString(connect, "MQTT");
+            connect.write(4); // protocol level 3.1.1
+            connect.write(0x02); // clean session
+            connect.write(keepAlive >>> 8);
+            connect.write(keepAlive);
+            writeString(connect, clientId);
+            writePacket(CONNECT << 4, connect.toByteArray());
+            flush();
+
+            socket.setSoTimeout(10000);
+            int header = in.readUnsignedByte();
+            int length = readLength();
+            byte[] ack = new byte[length];
+            in.readFully(ack);
+            if (header >>> 4 != CONNACK || length != 2) {
+                throw new IOException("broker did not acknowledge the connection");
+            }
+            if (ack[1] != 0) {
+                throw new IOException("broker refused the connection with code " + ack[1]);
+            }
+            socket.setSoTimeout(0);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        Thread reader = new Thread(this::read, "mqtt-" + clientId);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Queues a message until the next {@link #flush()}.
+     */
+    synchronized void publish(String topic, byte[] payload, boolean retain) throws IOException {
+        ByteArrayOutputStream packet = new ByteArrayOutputStream(topic.length() + payload.length + 2);
+        writeString(packet, topic);
+        packet.write(payload);
+        writePacket((PUBLISH << 4) | (retain ? 1 : 0), packet.toByteArray());
+    }
+
+    synchronized void subscribe(String... filters) throws IOException {
+        ByteArrayOutputStream packet = new ByteArrayOutputStream();
+        packetId = (packetId % 0xffff) + 1;
+        packet.write(packetId >>> 8);
+        packet.write(packetId);
+        for (String filter : filters) {
+            writeString(packet, filter);
+            packet.write(0); // QoS 0
+        }
+        writePacket((SUBSCRIBE << 4) | 0x02, packet.toByteArray());
+        flush();
+    }
+
+    synchronized void flush() throws IOException {
+        out.flush();
+        lastWrite = System.currentTimeMillis();
+    }
+
+    /**
+     * Pings the broker if nothing was written for half the keep alive.
+     */
+    void ping() throws IOException {
+        if (keepAlive > 0 && System.currentTimeMillis() - lastWrite > keepAlive * 500L) {
+            synchronized (this) {
+                writePacket(PINGREQ << 4, new byte[0]);
+                flush();
+            }
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            synchronized (this) {
+                writePacket(DISCONNECT << 4, new byte[0]);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // closing anyway
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    private void read() {
+        try {
+            while (!closed) {
+                int header = in.readUnsignedByte();
+                byte[] packet = new byte[readLength()];
+                in.readFully(packet);
+                if (header >>> 4 == PUBLISH) {
+                    received(header, packet);
+                }
+                // acknowledgements of our QoS 0 traffic carry nothing to act on
+            }
+        } catch (EOFException e) {
+            log.debug("broker closed the connection");
+        } catch (IOException e) {
+            if (!closed) {
+                log.warn("reading from broker failed", e);
+            }
+        } finally {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    private void received(int header, byte[] packet) throws IOException {
+        int topicLength = ((packet[0] & 0xff) << 8) | (packet[1] & 0xff);
+        String topic = new String(packet, 2, topicLength, StandardCharsets.UTF_8);
+        int offset = 2 + topicLength;
+        int qos = (header >>> 1) & 0x03;
+        if (qos > 0) {
+            // brokers may not exceed the QoS 0 we subscribed with, answer anyway
+            int id = ((packet[offset] & 0xff) << 8) | (packet[offset + 1] & 0xff);
+            offset += 2;
+            synchronized (this) {
+                writePacket(PUBACK << 4, new byte[]{(byte) (id >>> 8), (byte) id});
+                flush();
+            }
+        }
+
+        byte[] payload = new byte[packet.length - offset];
+        System.arraycopy(packet, offset, payload, 0, payload.length);
+        try {
+            handler.message(topic, payload);
+        } catch (RuntimeException e) {
+            log.warn("handling message of {} failed", topic, e);
+        }
+    }
+
+    private int readLength() throws IOException {
+        int length = 0;
+        int shift = 0;
+        int digit;
+        do {
+            digit = in.readUnsignedByte();
+            length |= (digit & 0x7f) << shift;
+            shift += 7;
+            if (shift > 21 && (digit & 0x80) != 0) {
+                throw new IOException("malformed remaining length");
+            }
+        } while ((digit & 0x80) != 0);
+        return length;
+    }
+
+    private void writePacket(int header, byte[] body) throws IOException {
+        out.write(header);
+        int length = body.length;
+        do {
+            int digit = length & 0x7f;
+            length >>>= 7;
+            out.write((length > 0) ? digit | 0x80 : digit);
+        } while (length > 0);
+        out.write(body);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes.length >>> 8);
+        out.write(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+}
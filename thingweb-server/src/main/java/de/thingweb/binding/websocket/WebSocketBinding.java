@@ -0,0 +1,97 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.websocket;
+
+import de.thingweb.binding.Binding;
+import de.thingweb.binding.ResourceBuilder;
+
+import java.io.IOException;
+
+/**
+ * Serves the things over WebSocket, see {@link WebSocketServer} for the
+ * messages.
+ */
+public class WebSocketBinding implements Binding {
+
+	public static final int DEFAULT_PORT = 8081;
+
+	private final int port;
+	private final boolean reusePort;
+	private WebSocketServer m_server;
+
+	public WebSocketBinding() {
+		this(DEFAULT_PORT);
+	}
+
+	/**
+	 * @param port the tcp port to listen on
+	 */
+	public WebSocketBinding(int port) {
+		this(port, false);
+	}
+
+	/**
+	 * @param port      the tcp port to listen on
+	 * @param reusePort whether to share the port with other bindings in this
+	 *                  process, see {@link de.thingweb.binding.ReusePort}
+	 */
+	public WebSocketBinding(int port, boolean reusePort) {
+		this.port = port;
+		this.reusePort = reusePort;
+	}
+
+	@Override
+	public void initialize() throws IOException {
+		m_server = new WebSocketServer(port, reusePort);
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * @return the server, null before {@link #initialize()}
+	 */
+	public WebSocketServer getServer() {
+		return m_server;
+	}
+
+	@Override
+	public ResourceBuilder getResourceBuilder() {
+		return m_server;
+	}
+
+	@Override
+	public void start() throws IOException {
+		m_server.start();
+	}
+
+	@Override
+	public void stop() throws IOException {
+		m_server.stop();
+	}
+}
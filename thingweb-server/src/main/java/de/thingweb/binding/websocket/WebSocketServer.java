@@ -0,0 +1,1072 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.websocket;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.thingweb.binding.RESTListener;
+import de.thingweb.binding.ResourceBuilder;
+import de.thingweb.binding.ResourceResolver;
+import de.thingweb.binding.ResourceRouter;
+import de.thingweb.binding.ReusePort;
+import de.thingweb.binding.http.HttpExecutors;
+import de.thingweb.security.TokenExpiredException;
+import de.thingweb.security.UnauthorizedException;
+import de.thingweb.thing.Content;
+import de.thingweb.thing.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves resources over WebSocket connections, each carrying any number of
+ * requests and subscriptions as JSON text messages.
+ * <p>
+ * Requests name an operation and a resource, the answer repeats their
+ * optional correlation id:
+ * <pre>
+ * {"id": 1, "op": "get", "href": "/things/lamp/brightness"}
+ * {"id": 2, "op": "put", "href": "/things/lamp/brightness", "value": {"value": 42}}
+ * {"id": 3, "op": "invoke", "href": "/things/lamp/actions/toggle", "value": {"value": true}}
+ * {"id": 4, "op": "subscribe", "href": "/things/lamp/brightness"}
+ * {"id": 5, "op": "unsubscribe", "href": "/things/lamp/brightness"}
+ *
+ * {"id": 1, "status": 200, "value": {"value": 10}}
+ * </pre>
+ * Status codes are those of the HTTP binding, failed requests carry an
+ * <code>error</code> instead of a value. Protected resources take the token
+ * of the request or the bearer token of the handshake.
+ * <p>
+ * Changes of subscribed resources are collected per connection and sent once
+ * per tick in a single message, with the latest value of each resource:
+ * <pre>
+ * {"events": [{"href": "/things/lamp/brightness", "value": {"value": 42}}]}
+ * </pre>
+ * A resource is read once per tick, however many connections subscribed to
+ * it. Connections that do not keep up skip ticks, their changes stay pending
+ * and hold no more than one value per subscription. Neither are their
+ * requests read until they caught up with the answers.
+ */
+public class WebSocketServer implements ResourceBuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(WebSocketServer.class);
+
+    /**
+     * Milliseconds between two messages of changes on a connection.
+     */
+    public static final int DEFAULT_TICK = 50;
+
+    static final int MAX_HEADER_SIZE = 16 * 1024;
+    static final int MAX_MESSAGE_SIZE = 1024 * 1024;
+    // connections with more unsent output skip ticks and take no requests
+    static final int MAX_PENDING_OUTPUT = 256 * 1024;
+    // requests of a connection being handled at once
+    static final int MAX_IN_FLIGHT = 64;
+    // silent peers are pinged, and closed after twice as long
+    static final int PING_INTERVAL = 30000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final ResourceRouter<RESTListener> routes = new ResourceRouter<>();
+    private final ResourceRouter<ResourceResolver> resolvers = new ResourceRouter<>();
+    private final Map<RESTListener, Fanout> fanouts = new ConcurrentHashMap<>();
+    private final String baseuri;
+    private final int port;
+    private final boolean reusePort;
+    private volatile Executor executor = HttpExecutors.bounded(
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), 1024);
+    private volatile int tick = DEFAULT_TICK;
+
+    // only used on the selector thread
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+
+    private final Queue<Connection> changedConnections = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean tickPending = new AtomicBoolean();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicLong pendingOutput = new AtomicLong();
+
+    private Selector selector;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    public WebSocketServer(int port) throws IOException {
+        this(port, false);
+    }
+
+    /**
+     * @param port      the tcp port to listen on
+     * @param reusePort whether to bind the port with
+     *                  <code>SO_REUSEPORT</code>, so that several servers in
+     *                  this process can share it
+     */
+    public WebSocketServer(int port, boolean reusePort) throws IOException {
+        String hostname = InetAddress.getLocalHost().getHostName();
+        this.baseuri = String.format("ws://%s:%s", hostname, port);
+        this.port = port;
+        this.reusePort = reusePort;
+    }
+
+    /**
+     * Sets the executor running gets, puts and invocations. Defaults to a
+     * bounded pool of two threads per core.
+     */
+    public void setExecutor(Executor executor) {
+        if (null == executor) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the milliseconds between two messages of changes on a connection,
+     * defaults to {@link #DEFAULT_TICK}.
+     */
+    public void setTick(int millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("tick must be positive");
+        }
+        this.tick = millis;
+    }
+
+    /**
+     * @return the number of open connections
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * @return the number of bytes queued for all connections but not yet
+     *         written to their sockets
+     */
+    public long getPendingOutput() {
+        return pendingOutput.get();
+    }
+
+    @Override
+    public void newResource(String url, RESTListener restListener) {
+        routes.add(url, restListener);
+    }
+
+    @Override
+    public void removeResource(String url) {
+        routes.remove(url);
+    }
+
+    @Override
+    public void newResolver(String url, ResourceResolver resolver) {
+        if (resolver == null) {
+            resolvers.removePrefix(url);
+        } else {
+            resolvers.addPrefix(url, resolver);
+        }
+    }
+
+    @Override
+    public String getBase() {
+        return baseuri;
+    }
+
+    @Override
+    public String getIdentifier() {
+        return "WebSocket";
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+
+        Selector selector = Selector.open();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try {
+            if (reusePort) {
+                ReusePort.enable(serverChannel);
+            }
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+
+        this.selector = selector;
+        running = true;
+        selectorThread = new Thread(this::select, "websocket-" + port);
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        selectorThread = null;
+    }
+
+    private void select() {
+        long lastTick = 0;
+        long lastPing = System.currentTimeMillis();
+        try {
+            while (running) {
+                long timeout = 1000;
+                if (tickPending.get()) {
+                    timeout = Math.max(1, lastTick + tick - System.currentTimeMillis());
+                }
+                selector.select(timeout);
+
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                        continue;
+                    }
+
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (tickPending.get() && now - lastTick >= tick) {
+                    lastTick = now;
+                    sendChanges();
+                }
+                if (now - lastPing >= 1000) {
+                    ping(now);
+                    lastPing = now;
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            log.error("selector of port {} failed", port, e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                } else {
+                    closeQuietly(key);
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.warn("closing selector of port {} failed", port, e);
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            activeConnections.incrementAndGet();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        }
+    }
+
+    /**
+     * Sends the pending changes of every connection that has some, reading
+     * each changed resource once.
+     */
+    private void sendChanges() {
+        tickPending.set(false);
+        Map<RESTListener, Content> values = new HashMap<>();
+        List<Connection> backlogged = new ArrayList<>();
+        Connection connection;
+        while ((connection = changedConnections.poll()) != null) {
+            if (connection.closed) {
+                continue;
+            }
+            if (connection.pendingOutput > MAX_PENDING_OUTPUT) {
+                backlogged.add(connection);
+                continue;
+            }
+            connection.sendChanges(values);
+        }
+
+        if (!backlogged.isEmpty()) {
+            changedConnections.addAll(backlogged);
+            tickPending.set(true);
+        }
+    }
+
+    private void ping(long now) {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                ((Connection) attachment).ping(now);
+            }
+        }
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    // runs a task on the selector thread
+    private void post(Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    private RESTListener find(String uri, Map<String, String> params) {
+        RESTListener listener = routes.find(uri, params);
+        if (listener == null) {
+            ResourceResolver resolver = resolvers.findPrefix(uri);
+            if (resolver != null) {
+                return resolver.resolve(uri);
+            }
+        }
+        return listener;
+    }
+
+    private void subscribe(Subscription subscription) {
+        fanouts.compute(subscription.listener, (listener, fanout) -> {
+            if (fanout == null) {
+                fanout = new Fanout();
+                listener.addObserver(fanout);
+            }
+            fanout.subscriptions.add(subscription);
+            return fanout;
+        });
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        fanouts.computeIfPresent(subscription.listener, (listener, fanout) -> {
+            fanout.subscriptions.remove(subscription);
+            if (!fanout.subscriptions.isEmpty()) {
+                return fanout;
+            }
+            listener.deleteObserver(fanout);
+            return null;
+        });
+    }
+
+    /**
+     * Passes the changes of one resource on to the connections subscribed to
+     * it.
+     */
+    private static final class Fanout implements Observer {
+        final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void update(Observable o, Object arg) {
+            for (Subscription subscription : subscriptions) {
+                subscription.connection.changed(subscription);
+            }
+        }
+    }
+
+    private static final class Subscription {
+        final Connection connection;
+        final String href;
+        final RESTListener listener;
+
+        Subscription(Connection connection, String href, RESTListener listener) {
+            this.connection = connection;
+            this.href = href;
+            this.listener = listener;
+        }
+    }
+
+    private static final class Reply {
+        final int status;
+        final Content value;
+        final String error;
+
+        Reply(int status, Content value, String error) {
+            this.status = status;
+            this.value = value;
+            this.error = error;
+        }
+
+        static Reply ok(Content value) {
+            return new Reply(200, value, null);
+        }
+
+        static Reply error(int status, String error) {
+            return new Reply(status, null, error);
+        }
+
+        static Reply error(Throwable t) {
+            Throwable e = t;
+            while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+                e = e.getCause();
+            }
+            if (e instanceof UnsupportedOperationException) {
+                return error(405, e.toString());
+            } else if (e instanceof IllegalArgumentException) {
+                return error(400, e.toString());
+            } else if (e instanceof RejectedExecutionException) {
+                return error(503, e.getMessage());
+            } else if (e instanceof TimeoutException) {
+                return error(504, e.getMessage());
+            }
+            log.error("callback raised error", e);
+            return error(500, e.toString());
+        }
+    }
+
+    /**
+     * State of one connection, touched on the selector thread apart from
+     * the changes of its subscriptions.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        private final Map<String, Subscription> subscriptions = new HashMap<>();
+        private byte[] input = new byte[1024];
+        private int inputLength;
+        private boolean open;
+        // the opcode of the message being received, -1 between messages
+        private int messageOpcode = -1;
+        private final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        private String token;
+        private boolean closeAfterWrite;
+        private boolean closed;
+        private int pendingOutput;
+        private int inFlight;
+        // stopped reading until output and requests in flight drop
+        private boolean throttled;
+        private long lastActive = System.currentTimeMillis();
+        private long lastPing;
+
+        // changed subscriptions, filled by the writing threads of the resources
+        private final Set<Subscription> changes = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean changesQueued = new AtomicBoolean();
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            readBuffer.clear();
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            if (closeAfterWrite) {
+                // nothing is answered after a close
+                return;
+            }
+
+            readBuffer.flip();
+            if (inputLength + read > input.length) {
+                input = Arrays.copyOf(input, Math.max(input.length * 2, inputLength + read));
+            }
+            readBuffer.get(input, inputLength, read);
+            inputLength += read;
+
+            if (!open) {
+                handshake();
+            }
+            if (open) {
+                frames();
+            }
+        }
+
+        private void handshake() {
+            int headerEnd = indexOf(input, inputLength, HEADER_END);
+            if (headerEnd < 0) {
+                if (inputLength > MAX_HEADER_SIZE) {
+                    reject("431 Request Header Fields Too Large");
+                }
+                return;
+            }
+
+            String[] lines = new String(input, 0, headerEnd, StandardCharsets.ISO_8859_1).split("\r\n");
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+                }
+            }
+            String challenge = headers.get("sec-websocket-key");
+            if (!lines[0].startsWith("GET ") || challenge == null
+                    || !headers.getOrDefault("upgrade", "").equalsIgnoreCase("websocket")) {
+                reject("400 Bad Request");
+                return;
+            }
+            if (!"13".equals(headers.get("sec-websocket-version"))) {
+                reject("426 Upgrade Required\r\nSec-WebSocket-Version: 13");
+                return;
+            }
+
+            String auth = headers.get("authorization");
+            if (auth != null && auth.startsWith("Bearer ")) {
+                token = auth.substring("Bearer ".length());
+            }
+
+            int length = headerEnd + HEADER_END.length;
+            System.arraycopy(input, length, input, 0, inputLength - length);
+            inputLength -= length;
+            open = true;
+            send(ByteBuffer.wrap(("HTTP/1.1 101 Switching Protocols\r\n"
+                    + "Upgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + WebSocketFrames.acceptKey(challenge) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1)));
+        }
+
+        private void reject(String status) {
+            closeAfterWrite = true;
+            send(ByteBuffer.wrap(("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1)));
+        }
+
+        private void frames() {
+            int position = 0;
+            while (!closeAfterWrite) {
+                if (isBacklogged()) {
+                    // the rest waits until the client read its answers
+                    throttled = true;
+                    updateInterest();
+                    break;
+                }
+                int available = inputLength - position;
+                if (available < 2) {
+                    break;
+                }
+                int b0 = input[position] & 0xff;
+                int b1 = input[position + 1] & 0xff;
+                if ((b0 & 0x70) != 0 || (b1 & 0x80) == 0) {
+                    // extensions were not negotiated, clients must mask
+                    fail(WebSocketFrames.CLOSE_PROTOCOL_ERROR);
+                    break;
+                }
+
+                long length = b1 & 0x7f;
+                int header = 2;
+                if (length == 126) {
+                    if (available < 4) {
+                        break;
+                    }
+                    length = ((input[position + 2] & 0xff) << 8) | (input[position + 3] & 0xff);
+                    header = 4;
+                } else if (length == 127) {
+                    if (available < 10) {
+                        break;
+                    }
+                    length = ByteBuffer.wrap(input, position + 2, 8).getLong();
+                    header = 10;
+                }
+                if (length < 0 || length + message.size() > MAX_MESSAGE_SIZE) {
+                    fail(WebSocketFrames.CLOSE_TOO_BIG);
+                    break;
+                }
+
+                int frameLength = header + 4 + (int) length;
+                if (available < frameLength) {
+                    if (position + frameLength > input.length) {
+                        input = Arrays.copyOf(input, position + frameLength);
+                    }
+                    break;
+                }
+
+                int mask = position + header;
+                int payload = mask + 4;
+                for (int i = 0; i < length; i++) {
+                    input[payload + i] ^= input[mask + (i & 3)];
+                }
+                frame((b0 & 0x80) != 0, b0 & 0x0f, Arrays.copyOfRange(input, payload, payload + (int) length));
+                position += frameLength;
+            }
+
+            System.arraycopy(input, position, input, 0, inputLength - position);
+            inputLength -= position;
+        }
+
+        private void frame(boolean fin, int opcode, byte[] payload) {
+            if (opcode >= WebSocketFrames.CLOSE) {
+                if (!fin || payload.length > 125) {
+                    fail(WebSocketFrames.CLOSE_PROTOCOL_ERROR);
+                } else if (opcode == WebSocketFrames.CLOSE) {
+                    closeAfterWrite = true;
+                    send(WebSocketFrames.encode(WebSocketFrames.CLOSE,
+                            (payload.length >= 2) ? Arrays.copyOf(payload, 2) : payload));
+                } else if (opcode == WebSocketFrames.PING) {
+                    send(WebSocketFrames.encode(WebSocketFrames.PONG, payload));
+                }
+                return;
+            }
+
+            if ((opcode == WebSocketFrames.CONTINUATION) == (messageOpcode < 0)) {
+                // a continuation without a message or a message within one
+                fail(WebSocketFrames.CLOSE_PROTOCOL_ERROR);
+                return;
+            }
+            if (opcode != WebSocketFrames.CONTINUATION) {
+                messageOpcode = opcode;
+            }
+            message.write(payload, 0, payload.length);
+            if (!fin) {
+                return;
+            }
+
+            byte[] text = message.toByteArray();
+            boolean binary = messageOpcode == WebSocketFrames.BINARY;
+            message.reset();
+            messageOpcode = -1;
+            if (binary) {
+                fail(WebSocketFrames.CLOSE_UNSUPPORTED);
+            } else {
+                handle(text);
+            }
+        }
+
+        private void fail(int code) {
+            closeAfterWrite = true;
+            send(WebSocketFrames.close(code));
+        }
+
+        private void handle(byte[] text) {
+            JsonNode request;
+            try {
+                request = mapper.readTree(text);
+            } catch (IOException e) {
+                reply(null, Reply.error(400, "malformed message"));
+                return;
+            }
+            if (request == null || !request.isObject()) {
+                reply(null, Reply.error(400, "malformed message"));
+                return;
+            }
+
+            JsonNode id = request.get("id");
+            String op = text(request, "op", "");
+            String href = text(request, "href", null);
+            if (href == null) {
+                reply(id, Reply.error(400, "href is missing"));
+                return;
+            }
+            if (op.equals("unsubscribe")) {
+                Subscription subscription = subscriptions.remove(href);
+                if (subscription != null) {
+                    unsubscribe(subscription);
+                    changes.remove(subscription);
+                }
+                reply(id, Reply.ok(null));
+                return;
+            }
+
+            RESTListener listener = find(href, new HashMap<>());
+            if (listener == null) {
+                reply(id, Reply.error(404, "Resource not found"));
+                return;
+            }
+
+            String method;
+            switch (op) {
+                case "get":
+                case "subscribe":
+                    method = "GET";
+                    break;
+                case "put":
+                    method = "PUT";
+                    break;
+                case "invoke":
+                    method = "POST";
+                    break;
+                default:
+                    reply(id, Reply.error(400, "unknown op: " + op));
+                    return;
+            }
+            if (listener.hasProtection()) {
+                try {
+                    listener.validate(method, href, text(request, "token", token));
+                } catch (TokenExpiredException e) {
+                    reply(id, Reply.error(401, "Your token has expired"));
+                    return;
+                } catch (UnauthorizedException e) {
+                    reply(id, Reply.error(401, "Unauthorized: " + e.getMessage()));
+                    return;
+                }
+            }
+
+            if (op.equals("subscribe")) {
+                if (!subscriptions.containsKey(href)) {
+                    Subscription subscription = new Subscription(this, href, listener);
+                    subscriptions.put(href, subscription);
+                    subscribe(subscription);
+                    // the current value comes with the next changes
+                    changed(subscription);
+                }
+                reply(id, Reply.ok(null));
+                return;
+            }
+
+            Content value;
+            try {
+                value = new Content(request.has("value") ? mapper.writeValueAsBytes(request.get("value")) : new byte[0],
+                        MediaType.APPLICATION_JSON);
+            } catch (IOException e) {
+                reply(id, Reply.error(400, "malformed value"));
+                return;
+            }
+            inFlight++;
+            try {
+                executor.execute(() -> {
+                    CompletionStage<Content> result;
+                    try {
+                        result = call(op, listener, value);
+                    } catch (RuntimeException | Error e) {
+                        result = failed(e);
+                    }
+                    result.whenComplete((content, e) -> post(() -> {
+                        inFlight--;
+                        reply(id, (e == null) ? Reply.ok(content) : Reply.error(e));
+                        resume();
+                    }));
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight--;
+                reply(id, Reply.error(503, "too many requests"));
+            }
+        }
+
+        private void reply(JsonNode id, Reply reply) {
+            if (closed) {
+                return;
+            }
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                    generator.writeStartObject();
+                    if (id != null) {
+                        generator.writeFieldName("id");
+                        generator.writeTree(id);
+                    }
+                    generator.writeNumberField("status", reply.status);
+                    if (reply.error != null) {
+                        generator.writeStringField("error", reply.error);
+                    } else if (reply.value != null) {
+                        writeValue(generator, reply.value);
+                    }
+                    generator.writeEndObject();
+                }
+                send(WebSocketFrames.encode(WebSocketFrames.TEXT, out.toByteArray()));
+            } catch (IOException e) {
+                log.warn("encoding reply failed", e);
+            }
+        }
+
+        // called by the writing thread of a subscribed resource
+        void changed(Subscription subscription) {
+            changes.add(subscription);
+            if (changesQueued.compareAndSet(false, true)) {
+                changedConnections.add(this);
+                if (tickPending.compareAndSet(false, true)) {
+                    selector.wakeup();
+                }
+            }
+        }
+
+        void sendChanges(Map<RESTListener, Content> values) {
+            changesQueued.set(false);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                int count = 0;
+                try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                    generator.writeStartObject();
+                    generator.writeArrayFieldStart("events");
+                    for (Iterator<Subscription> it = changes.iterator(); it.hasNext(); ) {
+                        Subscription subscription = it.next();
+                        it.remove();
+                        Content value = readChanged(subscription.listener, values);
+                        if (value == null) {
+                            continue;
+                        }
+                        generator.writeStartObject();
+                        generator.writeStringField("href", subscription.href);
+                        writeValue(generator, value);
+                        generator.writeEndObject();
+                        count++;
+                    }
+                    generator.writeEndArray();
+                    generator.writeEndObject();
+                }
+                if (count > 0) {
+                    send(WebSocketFrames.encode(WebSocketFrames.TEXT, out.toByteArray()));
+                }
+            } catch (IOException e) {
+                log.warn("encoding changes failed", e);
+            }
+        }
+
+        void ping(long now) {
+            if (!open || closeAfterWrite) {
+                return;
+            }
+            if (now - lastActive > 2 * PING_INTERVAL) {
+                close();
+            } else if (now - lastActive > PING_INTERVAL && now - lastPing > PING_INTERVAL) {
+                lastPing = now;
+                send(WebSocketFrames.encode(WebSocketFrames.PING, new byte[0]));
+            }
+        }
+
+        private void send(ByteBuffer data) {
+            if (closed) {
+                return;
+            }
+            output.add(data);
+            pendingOutput += data.remaining();
+            WebSocketServer.this.pendingOutput.addAndGet(data.remaining());
+            try {
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Continues writing once the socket drained. A client taking its
+         * answers is alive even if it sends nothing, as when it is throttled.
+         */
+        void write() throws IOException {
+            lastActive = System.currentTimeMillis();
+            flush();
+        }
+
+        void flush() throws IOException {
+            while (!output.isEmpty()) {
+                ByteBuffer head = output.peek();
+                int written = channel.write(head);
+                pendingOutput -= written;
+                WebSocketServer.this.pendingOutput.addAndGet(-written);
+                if (head.hasRemaining()) {
+                    // socket buffer full, continue when writable
+                    break;
+                }
+                output.poll();
+            }
+
+            if (output.isEmpty() && closeAfterWrite) {
+                close();
+            } else if (!closed) {
+                updateInterest();
+                if (throttled && !isBacklogged()) {
+                    // not from here, flush may run within frames()
+                    post(this::resume);
+                }
+            }
+        }
+
+        private boolean isBacklogged() {
+            return pendingOutput > MAX_PENDING_OUTPUT || inFlight >= MAX_IN_FLIGHT;
+        }
+
+        private void updateInterest() {
+            if (closed) {
+                return;
+            }
+            // a throttled connection is not read, so the client's writes back up
+            int ops = throttled ? 0 : SelectionKey.OP_READ;
+            if (!output.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        /**
+         * Takes the requests buffered while throttled, once the backlog
+         * cleared.
+         */
+        private void resume() {
+            if (closed || !throttled || isBacklogged()) {
+                return;
+            }
+            throttled = false;
+            frames();
+            updateInterest();
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            activeConnections.decrementAndGet();
+            WebSocketServer.this.pendingOutput.addAndGet(-pendingOutput);
+            output.clear();
+            closeQuietly(key);
+            for (Subscription subscription : subscriptions.values()) {
+                unsubscribe(subscription);
+            }
+            subscriptions.clear();
+            changes.clear();
+        }
+    }
+
+    private static CompletionStage<Content> call(String op, RESTListener listener, Content value) {
+        switch (op) {
+            case "get":
+                return listener.onGetAsync(Collections.emptyMap()).getResult();
+            case "put":
+                listener.onPut(value);
+                return CompletableFuture.completedFuture(null);
+            default:
+                return listener.onPostAsync(value).getResult();
+        }
+    }
+
+    private static CompletionStage<Content> failed(Throwable t) {
+        CompletableFuture<Content> result = new CompletableFuture<>();
+        result.completeExceptionally(t);
+        return result;
+    }
+
+    /**
+     * Reads the current content of a resource, at most once per tick.
+     *
+     * @return the content, or null if it cannot be read
+     */
+    private static Content readChanged(RESTListener listener, Map<RESTListener, Content> values) {
+        if (values.containsKey(listener)) {
+            return values.get(listener);
+        }
+        Content value;
+        try {
+            value = listener.onGet();
+        } catch (RuntimeException e) {
+            log.debug("reading changed resource failed", e);
+            value = null;
+        }
+        values.put(listener, value);
+        return value;
+    }
+
+    private static String text(JsonNode request, String field, String defaultValue) {
+        JsonNode value = request.get(field);
+        return (value != null && value.isTextual()) ? value.asText() : defaultValue;
+    }
+
+    private static void writeValue(JsonGenerator generator, Content value) throws IOException {
+        byte[] content = value.getContent();
+        if (content.length == 0) {
+            return;
+        }
+        if (value.getMediaType() == MediaType.APPLICATION_JSON) {
+            // already JSON, embedded as it is
+            generator.writeFieldName("value");
+            generator.writeRawValue(new String(content, StandardCharsets.UTF_8));
+        } else {
+            generator.writeStringField("value", new String(content, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
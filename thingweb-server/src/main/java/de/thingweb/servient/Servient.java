@@ -0,0 +1,407 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import de.thingweb.binding.ResourceBuilder;
+import de.thingweb.binding.coap.CoapBinding;
+import de.thingweb.binding.http.HttpBinding;
+import de.thingweb.binding.http.HttpExecutors;
+import de.thingweb.binding.http.HttpServer;
+import de.thingweb.binding.http.NanoHttpServer;
+import de.thingweb.binding.mqtt.MqttBinding;
+import de.thingweb.binding.websocket.WebSocketBinding;
+import de.thingweb.binding.websocket.WebSocketServer;
+import de.thingweb.security.TokenRequirements;
+import de.thingweb.servient.impl.MultiBindingThingServer;
+import de.thingweb.servient.impl.UpdateDispatcher;
+import de.thingweb.thing.Thing;
+import org.eclipse.californium.core.coap.CoAP;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A servient offering things via CoAP and HTTP on its own ports.
+ * <p>
+ * Every servient has its own bindings, update dispatcher and thing registry,
+ * so several servients can run side by side in one JVM and be started,
+ * stopped and closed independently. {@link ServientBuilder} offers the
+ * same for a default instance on the default ports.
+ */
+public class Servient implements Closeable {
+
+    public static final int DEFAULT_HTTP_PORT = NanoHttpServer.PORT;
+    public static final int DEFAULT_COAP_PORT = CoAP.DEFAULT_COAP_PORT;
+
+    private final CoapBinding m_coapBinding;
+    private final HttpBinding m_httpBinding;
+    // null unless a port was given
+    private final WebSocketBinding m_webSocketBinding;
+    // null unless a broker was given
+    private final MqttBinding m_mqttBinding;
+    private final UpdateDispatcher updateDispatcher;
+    private final boolean ownsDispatcher;
+    private final TokenRequirements tokenRequirements;
+
+    private ThingServer thingServer;
+    private boolean running = false;
+    private boolean closed = false;
+
+    private Servient(Builder builder) throws IOException {
+        m_coapBinding = new CoapBinding(builder.coapPort, builder.reusePort);
+        m_httpBinding = new HttpBinding(builder.httpPort, builder.reusePort, builder.httpEngine);
+        m_coapBinding.initialize();
+        m_httpBinding.initialize();
+        if (builder.httpExecutor != null) {
+            m_httpBinding.getServer().setExecutor(builder.httpExecutor);
+        }
+        if (builder.webSocketPort > 0) {
+            m_webSocketBinding = new WebSocketBinding(builder.webSocketPort, builder.reusePort);
+            m_webSocketBinding.initialize();
+        } else {
+            m_webSocketBinding = null;
+        }
+        if (builder.mqttHost != null) {
+            m_mqttBinding = new MqttBinding(builder.mqttHost, builder.mqttPort);
+            m_mqttBinding.initialize();
+        } else {
+            m_mqttBinding = null;
+        }
+
+        if (builder.updateDispatcher != null) {
+            updateDispatcher = builder.updateDispatcher;
+            ownsDispatcher = false;
+        } else {
+            updateDispatcher = new UpdateDispatcher(builder.updateThreads,
+                    UpdateDispatcher.DEFAULT_QUEUE_CAPACITY,
+                    UpdateDispatcher.OverflowPolicy.BLOCK);
+            ownsDispatcher = true;
+        }
+        tokenRequirements = builder.tokenRequirements;
+    }
+
+    public static Servient.Builder getBuilder() {
+        return new Servient.Builder();
+    }
+
+    /**
+     * Returns the thing registry of this servient, created on first use with
+     * the token requirements given to the builder.
+     *
+     * @return the server, never null
+     */
+    public synchronized ThingServer getThingServer() {
+        if (thingServer == null) {
+            thingServer = (tokenRequirements != null) ? newThingServer(tokenRequirements) : newThingServer();
+        }
+        return thingServer;
+    }
+
+    /**
+     * Creates an additional ThingServer sharing the bindings of this servient.
+     *
+     * @return the server, never null
+     */
+    public ThingServer newThingServer() {
+        return configure(new MultiBindingThingServer(resourceBuilders()));
+    }
+
+    /**
+     * Creates an additional ThingServer for the specified thing model.
+     *
+     * @param thing the thing model, must not be null
+     * @return the server, never null
+     */
+    public ThingServer newThingServer(Thing thing) {
+        if (null == thing) {
+            throw new IllegalArgumentException("thing must not be null");
+        }
+        ThingServer server = newThingServer();
+        server.addThing(thing);
+        return server;
+    }
+
+    public ThingServer newThingServer(TokenRequirements tokenRequirements) {
+        return configure(new MultiBindingThingServer(tokenRequirements, resourceBuilders()));
+    }
+
+    public ThingServer newThingServer(TokenRequirements tokenRequirements, Thing thing) {
+        if (null == thing) {
+            throw new IllegalArgumentException("thing must not be null");
+        }
+        ThingServer server = newThingServer(tokenRequirements);
+        server.addThing(thing);
+        return server;
+    }
+
+    private ResourceBuilder[] resourceBuilders() {
+        List<ResourceBuilder> builders = new ArrayList<>();
+        builders.add(m_coapBinding.getResourceBuilder());
+        builders.add(m_httpBinding.getResourceBuilder());
+        if (m_webSocketBinding != null) {
+            builders.add(m_webSocketBinding.getResourceBuilder());
+        }
+        if (m_mqttBinding != null) {
+            builders.add(m_mqttBinding.getResourceBuilder());
+        }
+        return builders.toArray(new ResourceBuilder[builders.size()]);
+    }
+
+    private synchronized MultiBindingThingServer configure(MultiBindingThingServer server) {
+        if (closed) {
+            throw new IllegalStateException("servient is closed");
+        }
+        server.setUpdateDispatcher(updateDispatcher);
+        return server;
+    }
+
+    /**
+     * Starts listening on the ports of this servient. Does nothing if it is
+     * already running.
+     */
+    public synchronized void start() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("servient is closed");
+        }
+        if (running) {
+            return;
+        }
+        m_coapBinding.start();
+        m_httpBinding.start();
+        if (m_webSocketBinding != null) {
+            m_webSocketBinding.start();
+        }
+        if (m_mqttBinding != null) {
+            m_mqttBinding.start();
+        }
+        running = true;
+    }
+
+    /**
+     * Stops listening, things stay registered and the servient can be started
+     * again.
+     */
+    public synchronized void stop() throws IOException {
+        m_coapBinding.stop();
+        m_httpBinding.stop();
+        if (m_webSocketBinding != null) {
+            m_webSocketBinding.stop();
+        }
+        if (m_mqttBinding != null) {
+            m_mqttBinding.stop();
+        }
+        running = false;
+    }
+
+    /**
+     * Stops the servient for good and releases its threads, including the
+     * update dispatcher unless it was given to the builder.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            stop();
+        } finally {
+            closed = true;
+            m_coapBinding.destroy();
+            if (ownsDispatcher) {
+                updateDispatcher.shutdown();
+            }
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public int getHttpPort() {
+        return m_httpBinding.getPort();
+    }
+
+    public int getCoapPort() {
+        return m_coapBinding.getPort();
+    }
+
+    /**
+     * @return the CoAP binding, e.g. for its notification policies
+     */
+    public CoapBinding getCoapBinding() {
+        return m_coapBinding;
+    }
+
+    /**
+     * @return the WebSocket server, or null if the servient has none
+     */
+    public WebSocketServer getWebSocketServer() {
+        return (m_webSocketBinding != null) ? m_webSocketBinding.getServer() : null;
+    }
+
+    public UpdateDispatcher getUpdateDispatcher() {
+        return updateDispatcher;
+    }
+
+    /**
+     * @return the HTTP server, e.g. for its connection metrics
+     */
+    public HttpServer getHttpServer() {
+        return m_httpBinding.getServer();
+    }
+
+    public static class Builder {
+        private int httpPort = DEFAULT_HTTP_PORT;
+        private int coapPort = DEFAULT_COAP_PORT;
+        private int updateThreads = Runtime.getRuntime().availableProcessors();
+        private UpdateDispatcher updateDispatcher;
+        private TokenRequirements tokenRequirements;
+        private boolean reusePort = false;
+        private Executor httpExecutor;
+        private HttpBinding.Engine httpEngine = HttpBinding.Engine.NANO;
+        private int webSocketPort;
+        private String mqttHost;
+        private int mqttPort;
+
+        public Builder setHttpPort(int httpPort) {
+            if (httpPort < 1 || httpPort > 65535) {
+                throw new IllegalArgumentException("httpPort must be a valid port");
+            }
+            this.httpPort = httpPort;
+            return this;
+        }
+
+        public Builder setCoapPort(int coapPort) {
+            if (coapPort < 1 || coapPort > 65535) {
+                throw new IllegalArgumentException("coapPort must be a valid port");
+            }
+            this.coapPort = coapPort;
+            return this;
+        }
+
+        /**
+         * Also serves the things over WebSocket on the given port, see
+         * {@link WebSocketServer}. Off by default.
+         */
+        public Builder setWebSocketPort(int webSocketPort) {
+            if (webSocketPort < 1 || webSocketPort > 65535) {
+                throw new IllegalArgumentException("webSocketPort must be a valid port");
+            }
+            this.webSocketPort = webSocketPort;
+            return this;
+        }
+
+        /**
+         * Also mirrors the things to an MQTT broker, see {@link MqttBinding}.
+         * Off by default.
+         *
+         * @param host the host of the broker, must not be null
+         * @param port the port of the broker, usually
+         *             {@link MqttBinding#DEFAULT_PORT}
+         */
+        public Builder setMqttBroker(String host, int port) {
+            if (null == host) {
+                throw new IllegalArgumentException("host must not be null");
+            }
+            if (port < 1 || port > 65535) {
+                throw new IllegalArgumentException("port must be a valid port");
+            }
+            this.mqttHost = host;
+            this.mqttPort = port;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads running property update handlers.
+         * Defaults to one per core.
+         */
+        public Builder setUpdateThreads(int updateThreads) {
+            if (updateThreads < 1) {
+                throw new IllegalArgumentException("updateThreads must be positive");
+            }
+            this.updateThreads = updateThreads;
+            return this;
+        }
+
+        /**
+         * Shares an existing dispatcher instead of creating one. The servient
+         * does not shut it down when closed.
+         */
+        public Builder setUpdateDispatcher(UpdateDispatcher updateDispatcher) {
+            this.updateDispatcher = updateDispatcher;
+            return this;
+        }
+
+        public Builder setTokenRequirements(TokenRequirements tokenRequirements) {
+            this.tokenRequirements = tokenRequirements;
+            return this;
+        }
+
+        /**
+         * Sets the executor serving HTTP connections, e.g. one of
+         * {@link HttpExecutors}. The servient does not shut it down when
+         * closed. Defaults to a new thread per connection.
+         */
+        public Builder setHttpExecutor(Executor httpExecutor) {
+            this.httpExecutor = httpExecutor;
+            return this;
+        }
+
+        /**
+         * Chooses the HTTP server implementation, defaults to
+         * {@link HttpBinding.Engine#NANO}.
+         */
+        public Builder setHttpEngine(HttpBinding.Engine httpEngine) {
+            if (null == httpEngine) {
+                throw new IllegalArgumentException("httpEngine must not be null");
+            }
+            this.httpEngine = httpEngine;
+            return this;
+        }
+
+        /**
+         * Binds the ports with <code>SO_REUSEPORT</code>, so that other
+         * servients in this process can listen on the same ports.
+         *
+         * @see de.thingweb.binding.ReusePort
+         */
+        public Builder setReusePort(boolean reusePort) {
+            this.reusePort = reusePort;
+            return this;
+        }
+
+        /**
+         * Creates the servient, which does not listen before it is started.
+         */
+        public Servient build() throws IOException {
+            return new Servient(this);
+        }
+    }
+}
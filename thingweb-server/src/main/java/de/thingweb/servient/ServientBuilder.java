@@ -26,20 +26,18 @@
 
 package de.thingweb.servient;
 
-import de.thingweb.binding.coap.CoapBinding;
-import de.thingweb.binding.http.HttpBinding;
 import de.thingweb.security.TokenRequirements;
-import de.thingweb.servient.impl.MultiBindingThingServer;
+import de.thingweb.servient.impl.UpdateDispatcher;
 import de.thingweb.thing.Thing;
 
 import java.io.IOException;
 
 
+/**
+ * Static access to a default {@link Servient} on the default ports.
+ */
 public final class ServientBuilder {
-    private static final CoapBinding m_coapBinding = new CoapBinding();
-    private static final HttpBinding m_httpBinding = new HttpBinding();
-
-    private static boolean initialized = false;
+    private static Servient servient;
 
     private ServientBuilder() {
         /* pure static class */
@@ -52,51 +50,50 @@ public final class ServientBuilder {
      * @return the server, never null
      */
     public static ThingServer newThingServer(Thing thing) {
-        return new MultiBindingThingServer(thing,
-                m_coapBinding.getResourceBuilder(),
-                m_httpBinding.getResourceBuilder()
-        );
+        return getDefault().newThingServer(thing);
     }
 
     public static ThingServer newThingServer(TokenRequirements tokenRequirements, Thing thing) {
-        return new MultiBindingThingServer(tokenRequirements, thing,
-                m_coapBinding.getResourceBuilder(),
-                m_httpBinding.getResourceBuilder()
-        );
+        return getDefault().newThingServer(tokenRequirements, thing);
     }
 
     public static ThingServer newThingServer(TokenRequirements tokenRequirements) {
-        return new MultiBindingThingServer( tokenRequirements,
-                m_coapBinding.getResourceBuilder(),
-                m_httpBinding.getResourceBuilder()
-        );
+        return getDefault().newThingServer(tokenRequirements);
     }
 
-    public static void initialize() throws Exception {
+    public static synchronized void initialize() throws Exception {
         //am already initialized
-        if(initialized) return;
+        if(servient != null) return;
 
-        m_coapBinding.initialize();
-        m_httpBinding.initialize();
-        initialized = true;
+        servient = Servient.getBuilder()
+                .setUpdateDispatcher(UpdateDispatcher.getDefault())
+                .build();
     }
 
     public static void start() throws Exception {
-        if(!initialized) initialize();
-        m_coapBinding.start();
-        m_httpBinding.start();
+        initialize();
+        servient.start();
     }
 
-    public static void stop() throws IOException {
-        m_coapBinding.stop();
-        m_httpBinding.stop();
+    public static synchronized void stop() throws IOException {
+        if (servient != null) {
+            servient.stop();
+        }
     }
 
     public static ThingServer newThingServer() throws Exception {
-        if(!initialized) initialize();
-        return new MultiBindingThingServer(
-                m_coapBinding.getResourceBuilder(),
-                m_httpBinding.getResourceBuilder()
-        );
+        return getDefault().newThingServer();
+    }
+
+    /**
+     * @return the servient behind the static methods, initialized on first use
+     */
+    public static synchronized Servient getDefault() {
+        try {
+            initialize();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return servient;
     }
 }
@@ -0,0 +1,277 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import de.thingweb.binding.ReusePort;
+import de.thingweb.binding.http.HttpBinding;
+import de.thingweb.desc.pojo.ThingDescription;
+import de.thingweb.security.TokenRequirements;
+import de.thingweb.servient.impl.MultiBindingThingServer;
+import de.thingweb.servient.impl.ServedThing;
+import de.thingweb.thing.Thing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Runs several {@link Servient} shards on the same HTTP and CoAP ports.
+ * <p>
+ * The ports are bound with <code>SO_REUSEPORT</code>, so the kernel spreads
+ * connections and datagrams across the shards, each with its own accept
+ * loop, CoAP endpoint and update dispatcher. A thing is owned by the shard
+ * its lower case name hashes to, which keeps its state and runs its
+ * update handlers. All shards route lazily against a shared read-only view
+ * of every shard's things, so any shard serves any thing.
+ */
+public class ShardedServient implements ThingServer, Closeable {
+
+    private final Servient[] shards;
+    private final MultiBindingThingServer[] servers;
+
+    private ShardedServient(Builder builder) throws IOException {
+        if (builder.shards > 1 && !ReusePort.isSupported()) {
+            throw new IOException("sharding needs SO_REUSEPORT, which is not supported on this platform");
+        }
+
+        shards = new Servient[builder.shards];
+        servers = new MultiBindingThingServer[builder.shards];
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = Servient.getBuilder()
+                        .setHttpPort(builder.httpPort)
+                        .setCoapPort(builder.coapPort)
+                        .setUpdateThreads(builder.updateThreads)
+                        .setTokenRequirements(builder.tokenRequirements)
+                        // a single shard too, so that all shard counts share one accept path
+                        .setReusePort(ReusePort.isSupported())
+                        .setHttpEngine(builder.httpEngine)
+                        .build();
+                servers[i] = (MultiBindingThingServer) shards[i].getThingServer();
+                servers[i].setRoutingMode(MultiBindingThingServer.RoutingMode.LAZY);
+                servers[i].setThingLookup(this::lookup);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public static ShardedServient.Builder getBuilder() {
+        return new ShardedServient.Builder();
+    }
+
+    private ServedThing lookup(String key) {
+        return (ServedThing) servers[shardOf(key)].getThing(key);
+    }
+
+    /**
+     * @return the index of the shard owning the thing with the given name
+     */
+    public int shardOf(String thingName) {
+        return Math.floorMod(thingName.toLowerCase().hashCode(), shards.length);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public Servient getShard(int index) {
+        return shards[index];
+    }
+
+    @Override
+    public ThingInterface addThing(Thing thing) {
+        if (null == thing) {
+            throw new IllegalArgumentException("thing must not be null");
+        }
+        return addThings(Collections.singletonList(thing)).get(0);
+    }
+
+    @Override
+    public ThingInterface addThing(ThingDescription thingDescription) {
+        return addThing(new Thing(thingDescription));
+    }
+
+    @Override
+    public List<ThingInterface> addThings(Collection<Thing> things) {
+        if (null == things || things.contains(null)) {
+            throw new IllegalArgumentException("things must not be null or contain null");
+        }
+
+        // one batch per owning shard
+        Map<Integer, List<Thing>> partitions = things.stream()
+                .collect(Collectors.groupingBy(thing -> shardOf(thing.getName())));
+        Map<Thing, ThingInterface> added = new IdentityHashMap<>();
+        partitions.forEach((shard, partition) -> {
+            List<ThingInterface> served = servers[shard].addThings(partition);
+            for (int i = 0; i < partition.size(); i++) {
+                added.put(partition.get(i), served.get(i));
+            }
+        });
+        things.forEach(thing -> peerThingChanged(thing.getName()));
+
+        List<ThingInterface> result = new ArrayList<>(things.size());
+        things.forEach(thing -> result.add(added.get(thing)));
+        return result;
+    }
+
+    @Override
+    public ThingInterface getThing(String thingName) {
+        return servers[shardOf(thingName)].getThing(thingName);
+    }
+
+    @Override
+    public boolean removeThing(String thingName) {
+        if (null == thingName) {
+            throw new IllegalArgumentException("thingName must not be null");
+        }
+        if (!servers[shardOf(thingName)].removeThing(thingName)) {
+            return false;
+        }
+        peerThingChanged(thingName);
+        return true;
+    }
+
+    @Override
+    public ThingInterface replaceThing(Thing thing) {
+        if (null == thing) {
+            throw new IllegalArgumentException("thing must not be null");
+        }
+        ThingInterface replaced = servers[shardOf(thing.getName())].replaceThing(thing);
+        peerThingChanged(thing.getName());
+        return replaced;
+    }
+
+    private void peerThingChanged(String thingName) {
+        int owner = shardOf(thingName);
+        for (int i = 0; i < servers.length; i++) {
+            if (i != owner) {
+                servers[i].peerThingChanged(thingName);
+            }
+        }
+    }
+
+    @Override
+    public void setTokenRequirements(TokenRequirements tokenRequirements) {
+        for (MultiBindingThingServer server : servers) {
+            server.setTokenRequirements(tokenRequirements);
+        }
+    }
+
+    /**
+     * Starts all shards.
+     */
+    public void start() throws IOException {
+        for (Servient shard : shards) {
+            shard.start();
+        }
+    }
+
+    /**
+     * Stops all shards, things stay registered.
+     */
+    public void stop() throws IOException {
+        for (Servient shard : shards) {
+            shard.stop();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Servient shard : shards) {
+            if (shard != null) {
+                shard.close();
+            }
+        }
+    }
+
+    public static class Builder {
+        private int shards = Runtime.getRuntime().availableProcessors();
+        private int httpPort = Servient.DEFAULT_HTTP_PORT;
+        private int coapPort = Servient.DEFAULT_COAP_PORT;
+        private int updateThreads = 1;
+        private TokenRequirements tokenRequirements;
+        private HttpBinding.Engine httpEngine = HttpBinding.Engine.NANO;
+
+        /**
+         * Sets the number of shards, defaults to one per core.
+         */
+        public Builder setShards(int shards) {
+            if (shards < 1) {
+                throw new IllegalArgumentException("shards must be positive");
+            }
+            this.shards = shards;
+            return this;
+        }
+
+        public Builder setHttpPort(int httpPort) {
+            this.httpPort = httpPort;
+            return this;
+        }
+
+        public Builder setCoapPort(int coapPort) {
+            this.coapPort = coapPort;
+            return this;
+        }
+
+        /**
+         * Sets the number of update handler threads of every shard, defaults
+         * to 1.
+         */
+        public Builder setUpdateThreads(int updateThreads) {
+            this.updateThreads = updateThreads;
+            return this;
+        }
+
+        public Builder setTokenRequirements(TokenRequirements tokenRequirements) {
+            this.tokenRequirements = tokenRequirements;
+            return this;
+        }
+
+        public Builder setHttpEngine(HttpBinding.Engine httpEngine) {
+            this.httpEngine = httpEngine;
+            return this;
+        }
+
+        /**
+         * Creates the shards, which do not listen before they are started.
+         *
+         * @throws IOException if more than one shard is requested and the
+         *                     platform does not support <code>SO_REUSEPORT</code>
+         */
+        public ShardedServient build() throws IOException {
+            return new ShardedServient(this);
+        }
+    }
+}
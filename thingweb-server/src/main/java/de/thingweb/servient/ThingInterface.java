@@ -27,6 +27,7 @@ package de.thingweb.servient;
 import de.thingweb.thing.Action;
 import de.thingweb.thing.Property;
 
+import java.util.concurrent.CompletionStage;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -71,7 +72,32 @@ public interface ThingInterface {
 
     Object invokeAction(Action action, Object parameter);
 
+    /**
+     * Invokes an action without blocking the caller.<p>
+     * <p>
+     * The handler runs on a separate thread. If it returns a
+     * {@link CompletionStage}, the returned stage completes with its outcome.
+     *
+     * @param actionName name of the action, must not be null
+     * @param parameter  the parameter passed to the handler
+     * @return stage completing with the result of the action
+     */
+    CompletionStage<Object> invokeActionAsync(String actionName, Object parameter);
+
+    CompletionStage<Object> invokeActionAsync(Action action, Object parameter);
+
     void onInvoke(String actionName, Function<Object, Object> callback);
 
+    /**
+     * Registers a handler for long-running actions.<p>
+     * <p>
+     * The handler should start the work and return immediately; bindings
+     * answer the request once the returned stage completes.
+     *
+     * @param actionName name of the action, must not be null
+     * @param callback   the handler, must not be null
+     */
+    void onInvokeAsync(String actionName, Function<Object, CompletionStage<Object>> callback);
+
     void onUpdate(String propertyName, Consumer<Object> callback);
 }
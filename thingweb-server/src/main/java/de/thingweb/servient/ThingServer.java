@@ -31,6 +31,9 @@ import de.thingweb.desc.pojo.ThingDescription;
 import de.thingweb.security.TokenRequirements;
 import de.thingweb.thing.Thing;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * The ThingServer is thread safe.
  */
@@ -40,7 +43,38 @@ public interface ThingServer {
 
     ThingInterface addThing(ThingDescription thingDescription);
 
+    /**
+     * Adds several things at once, which is considerably cheaper than adding
+     * them one by one. Things of a name already served replace it, see
+     * {@link #replaceThing(Thing)}.
+     *
+     * @param things the things, must not be null or contain null
+     * @return the served things, in the order given
+     */
+    List<ThingInterface> addThings(Collection<Thing> things);
+
     ThingInterface getThing(String thingName);
 
+    /**
+     * Removes a thing and all its resources from every binding.
+     *
+     * @param thingName name of the thing, must not be null
+     * @return false if no such thing was served
+     */
+    boolean removeThing(String thingName);
+
+    /**
+     * Replaces the thing of the same name with a new model, or adds it if no
+     * such thing is served yet.
+     * <p>
+     * Resources are swapped in place: clients observing an interaction that
+     * still exists keep their subscription, values and handlers of such
+     * interactions are carried over, and requests in flight are not blocked.
+     *
+     * @param thing the new model, must not be null
+     * @return the served thing
+     */
+    ThingInterface replaceThing(Thing thing);
+
     void setTokenRequirements(TokenRequirements tokenRequirements);
 }
@@ -0,0 +1,96 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient.impl;
+
+import de.thingweb.binding.AbstractRESTListener;
+import de.thingweb.thing.Content;
+import de.thingweb.thing.MediaType;
+import de.thingweb.util.encoding.ContentHelper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A single invocation of an action, exposed as a resource that clients can
+ * poll while the action is still running.
+ */
+public class ActionExecution extends AbstractRESTListener {
+
+    private final long id;
+    private final String href;
+    private final CompletableFuture<Object> result;
+
+    public ActionExecution(long id, String href, CompletionStage<Object> result) {
+        this.id = id;
+        this.href = href;
+        this.result = result.toCompletableFuture();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    public CompletionStage<Object> getResult() {
+        return result;
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    @Override
+    public Content onGet() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", id);
+
+        if (!result.isDone()) {
+            status.put("status", "running");
+        } else {
+            try {
+                Object value = result.join();
+                status.put("status", "completed");
+                status.put("value", value);
+            } catch (CancellationException e) {
+                status.put("status", "cancelled");
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                status.put("status", "failed");
+                status.put("error", cause.toString());
+            }
+        }
+
+        return ContentHelper.wrap(status, MediaType.APPLICATION_JSON);
+    }
+}
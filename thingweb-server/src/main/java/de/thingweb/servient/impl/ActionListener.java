@@ -27,6 +27,9 @@
 package de.thingweb.servient.impl;
 
 import de.thingweb.binding.AbstractRESTListener;
+import de.thingweb.binding.AsyncResponse;
+import de.thingweb.binding.ResourceBuilder;
+import de.thingweb.security.SecurityTokenValidator;
 import de.thingweb.thing.Action;
 import de.thingweb.thing.Content;
 import de.thingweb.thing.MediaType;
@@ -34,29 +37,71 @@ import de.thingweb.util.encoding.ContentHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Created by Johannes on 07.10.2015.
  */
 public class ActionListener extends AbstractRESTListener {
 
+    /**
+     * Number of finished executions kept available for polling.
+     */
+    public static final int MAX_FINISHED_EXECUTIONS = 32;
+
     private static final Logger log = LoggerFactory.getLogger(ActionListener.class);
     private final Action action;
     private final ServedThing servedThing;
     private final String inputType;
+    private final ResourceBuilder resources;
+    private final String executionsUrl;
+    private final AtomicLong executionIds = new AtomicLong();
+    private final ConcurrentLinkedDeque<ActionExecution> executions = new ConcurrentLinkedDeque<>();
+    private volatile SecurityTokenValidator validator;
 
     public ActionListener(ServedThing servedThing, Action action) {
+        this(servedThing, action, null, null);
+    }
+
+    /**
+     * Creates a listener that publishes invocations still running when a
+     * binding answers the request as execution resources below
+     * <code>url/executions/</code>, see {@link AsyncResponse#getLocation()}.
+     *
+     * @param servedThing the thing owning the action
+     * @param action      the action
+     * @param resources   where execution resources are registered, may be null
+     *                    to not track executions
+     * @param url         the url of the action itself
+     */
+    public ActionListener(ServedThing servedThing, Action action, ResourceBuilder resources, String url) {
         this.action = action;
         this.servedThing = servedThing;
         this.inputType = this.action.getParams().get("parm");
+        this.resources = resources;
+        this.executionsUrl = (url != null) ? url + "/executions/" : null;
+    }
+
+    @Override
+    public void protectWith(SecurityTokenValidator validator) {
+        super.protectWith(validator);
+        this.validator = validator;
     }
 
     @Override
     public Content onGet() {
-        //TODO manage executions in statecontainer and add links to executions
-        return HypermediaIndex.createContent(
-                new HyperMediaLink("invoke","_self","POST",inputType),
-                new HyperMediaLink("parent","../")
-        );
+        List<HyperMediaLink> links = new ArrayList<>();
+        links.add(new HyperMediaLink("invoke","_self","POST",inputType));
+        links.add(new HyperMediaLink("parent","../"));
+        for (ActionExecution execution : executions) {
+            links.add(new HyperMediaLink("execution", execution.getHref()));
+        }
+        return HypermediaIndex.createContent(links);
     }
 
     @Override
@@ -74,4 +119,77 @@ public class ActionListener extends AbstractRESTListener {
         Object response = servedThing.invokeAction(action, param);
         return ContentHelper.wrap(response, MediaType.APPLICATION_JSON);
     }
+
+    @Override
+    public AsyncResponse onPostAsync(Content data) {
+        Object param = ContentHelper.getValueFromJson(data);
+        log.debug("invoking {} asynchronously", action.getName());
+        CompletionStage<Object> result = servedThing.invokeActionAsync(action, param);
+        CompletionStage<Content> response = result.thenApply(
+                value -> ContentHelper.wrap(value, MediaType.APPLICATION_JSON));
+
+        if (resources == null) {
+            return new AsyncResponse(response);
+        }
+        // only registered if a binding answers before the action finished
+        return AsyncResponse.tracked(response, () -> track(result).getHref());
+    }
+
+    private ActionExecution track(CompletionStage<Object> result) {
+        final long id = executionIds.incrementAndGet();
+        final String url = executionsUrl + id;
+        final ActionExecution execution = new ActionExecution(id, MultiBindingThingServer.urlizeTokens(url), result);
+
+        if (validator != null) {
+            execution.protectWith(validator);
+        }
+        resources.newResource(url, execution);
+        executions.addLast(execution);
+        result.whenComplete((value, error) -> evictFinished());
+
+        return execution;
+    }
+
+    /**
+     * Takes over the executions of the listener this one replaces, so they
+     * stay pollable and new executions do not reuse their ids.
+     *
+     * @param previous the replaced listener
+     */
+    public void adoptExecutions(ActionListener previous) {
+        executionIds.set(previous.executionIds.get());
+        for (ActionExecution execution : previous.executions) {
+            executions.addLast(execution);
+            execution.getResult().whenComplete((value, error) -> evictFinished());
+        }
+        previous.executions.clear();
+    }
+
+    /**
+     * Unregisters all execution resources of this action.
+     */
+    public void removeExecutions() {
+        ActionExecution execution;
+        while ((execution = executions.pollFirst()) != null) {
+            resources.removeResource(executionsUrl + execution.getId());
+        }
+    }
+
+    private void evictFinished() {
+        int finished = 0;
+        for (ActionExecution execution : executions) {
+            if (execution.isDone()) {
+                finished++;
+            }
+        }
+
+        Iterator<ActionExecution> it = executions.iterator();
+        while (finished > MAX_FINISHED_EXECUTIONS && it.hasNext()) {
+            ActionExecution execution = it.next();
+            if (execution.isDone() && executions.remove(execution)) {
+                resources.removeResource(executionsUrl + execution.getId());
+                finished--;
+            }
+        }
+    }
 }
@@ -0,0 +1,301 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient.impl;
+
+import de.thingweb.thing.Action;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Isolates the invocations of one action from all others.
+ * <p>
+ * At most {@link Action#getMaxConcurrency()} invocations run at the same time
+ * and up to {@link Action#getQueueLength()} more wait for a free slot. Anything
+ * beyond that fails immediately with a {@link RejectedExecutionException}, so
+ * callers can shed load instead of piling up requests. An invocation that does
+ * not complete within {@link Action#getTimeout()} fails with a
+ * {@link TimeoutException}; it keeps its slot until the handler really
+ * returns, so a hanging device cannot be overloaded by retries.
+ * <p>
+ * Limited actions run on their own pool of threads, unlimited ones share a
+ * cached pool.
+ */
+public class Bulkhead {
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private static final Executor sharedExecutor = Executors.newCachedThreadPool(Bulkhead::newThread);
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(Bulkhead::newThread);
+
+    private final String name;
+    private final int maxConcurrency;
+    private final int queueLength;
+    private final long timeout;
+    private final Executor executor;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Invocation<?>> waiting = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+
+    public Bulkhead(Action action) {
+        this.name = action.getName();
+        this.maxConcurrency = action.getMaxConcurrency();
+        this.queueLength = action.getQueueLength();
+        this.timeout = action.getTimeout();
+
+        if (maxConcurrency == Action.UNLIMITED) {
+            this.executor = sharedExecutor;
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), Bulkhead::newThread);
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+        }
+    }
+
+    private static Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "action-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Runs a task within the limits of this bulkhead.
+     *
+     * @param task started on a pool thread once a slot is free; the slot is
+     *             held until the stage it returns completes
+     * @return stage with the outcome of the task; fails right away with a
+     * {@link RejectedExecutionException} if the bulkhead is full. On timeout
+     * a waiting task leaves the queue, a running one keeps its slot until
+     * its stage completes.
+     */
+    public <T> CompletionStage<T> submit(Supplier<CompletionStage<T>> task) {
+        Invocation<T> invocation = new Invocation<>(task);
+
+        if (tryAcquire()) {
+            start(invocation);
+        } else if (tryEnqueue(invocation)) {
+            // a slot may have been released in between
+            drain();
+        } else {
+            rejected.increment();
+            invocation.result.completeExceptionally(new RejectedExecutionException(
+                    "action " + name + " is busy"));
+            return invocation.result;
+        }
+
+        if (timeout != Action.UNLIMITED) {
+            ScheduledFuture<?> timeoutTask = timer.schedule(() -> {
+                // leave the queue before anyone sees the timeout
+                if (waiting.remove(invocation)) {
+                    queued.decrementAndGet();
+                }
+                if (invocation.result.completeExceptionally(new TimeoutException(
+                        "action " + name + " did not complete within " + timeout + " ms"))) {
+                    timedOut.increment();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            invocation.result.whenComplete((value, error) -> timeoutTask.cancel(false));
+        }
+
+        return invocation.result;
+    }
+
+    private boolean tryAcquire() {
+        if (maxConcurrency == Action.UNLIMITED) {
+            active.incrementAndGet();
+            return true;
+        }
+        for (;;) {
+            int current = active.get();
+            if (current >= maxConcurrency) {
+                return false;
+            }
+            if (active.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean tryEnqueue(Invocation<?> invocation) {
+        for (;;) {
+            int current = queued.get();
+            if (current >= queueLength) {
+                return false;
+            }
+            if (queued.compareAndSet(current, current + 1)) {
+                waiting.add(invocation);
+                return true;
+            }
+        }
+    }
+
+    private void release() {
+        active.decrementAndGet();
+        drain();
+    }
+
+    /**
+     * Starts waiting invocations while slots are free.
+     */
+    private void drain() {
+        while (!waiting.isEmpty() && tryAcquire()) {
+            Invocation<?> next = waiting.poll();
+            if (next == null) {
+                active.decrementAndGet();
+                return;
+            }
+            queued.decrementAndGet();
+            if (next.result.isDone()) {
+                // timed out while waiting
+                active.decrementAndGet();
+                continue;
+            }
+            start(next);
+        }
+    }
+
+    private <T> void start(Invocation<T> invocation) {
+        final long waited = System.nanoTime() - invocation.submitted;
+        queueNanos.add(waited);
+        maxQueueNanos.accumulateAndGet(waited, Math::max);
+        started.increment();
+
+        try {
+            executor.execute(invocation::run);
+        } catch (RejectedExecutionException e) {
+            invocation.result.completeExceptionally(e);
+            release();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return number of invocations currently holding a slot
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return number of invocations waiting for a slot
+     */
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * @return number of invocations started so far
+     */
+    public long getStartedCount() {
+        return started.sum();
+    }
+
+    /**
+     * @return number of invocations rejected because the bulkhead was full
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return number of invocations that failed because of the timeout
+     */
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    /**
+     * @return mean time an invocation waited for a slot, in nanoseconds
+     */
+    public long getMeanQueueTimeNanos() {
+        long count = started.sum();
+        return count == 0 ? 0 : queueNanos.sum() / count;
+    }
+
+    /**
+     * @return longest time an invocation waited for a slot, in nanoseconds
+     */
+    public long getMaxQueueTimeNanos() {
+        return maxQueueNanos.get();
+    }
+
+    private final class Invocation<T> {
+        final Supplier<CompletionStage<T>> task;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long submitted = System.nanoTime();
+
+        Invocation(Supplier<CompletionStage<T>> task) {
+            this.task = task;
+        }
+
+        void run() {
+            CompletionStage<T> stage;
+            try {
+                stage = task.get();
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+                release();
+                return;
+            }
+
+            stage.whenComplete((value, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+                release();
+            });
+        }
+    }
+}
@@ -30,6 +30,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import de.thingweb.binding.AbstractRESTListener;
+import de.thingweb.binding.CachedContent;
 import de.thingweb.binding.RESTListener;
 import de.thingweb.thing.Content;
 import de.thingweb.thing.MediaType;
@@ -43,16 +44,17 @@ import java.util.Observer;
  */
 public class HypermediaIndex extends AbstractRESTListener {
 
-    private static final ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
+    private static final ObjectWriter ow = new ObjectMapper().writer();
 
-    private Content myContent;
+    private final CachedContent myContent;
 
     public HypermediaIndex(List<HyperMediaLink> links) {
-        myContent = createContent(links);
+        Content content = createContent(links);
+        myContent = new CachedContent(content.getContent(), content.getMediaType());
     }
 
     public HypermediaIndex(HyperMediaLink... links) {
-        myContent = createContent(Arrays.asList(links));
+        this(Arrays.asList(links));
     }
 
     public static Content createContent(HyperMediaLink... links) {
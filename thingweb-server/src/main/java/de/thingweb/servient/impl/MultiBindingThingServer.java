@@ -28,8 +28,10 @@ package de.thingweb.servient.impl;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import de.thingweb.binding.AbstractRESTListener;
+import de.thingweb.binding.CachedContent;
 import de.thingweb.binding.RESTListener;
 import de.thingweb.binding.ResourceBuilder;
+import de.thingweb.binding.ResourceResolver;
 import de.thingweb.desc.pojo.Protocol;
 import de.thingweb.desc.pojo.ThingDescription;
 import de.thingweb.security.SecurityTokenValidator;
@@ -46,6 +48,8 @@ import org.jose4j.lang.JoseException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -56,14 +60,64 @@ import java.util.stream.Collectors;
  */
 public class MultiBindingThingServer implements ThingServer {
 
+    /**
+     * How the resources of things are created.
+     */
+    public enum RoutingMode {
+        /**
+         * Every interaction of a thing is registered with every binding when
+         * the thing is added.
+         */
+        EAGER,
+        /**
+         * Requests below <code>/things/</code> are resolved against the added
+         * things, listeners are created on first use and kept until the thing
+         * is removed or replaced.
+         */
+        LAZY
+    }
+
     /**
      * The logger.
      */
     protected final static Logger log = Logger.getLogger(MultiBindingThingServer.class.getCanonicalName());
-    private final Map<String, ServedThing> things = new LinkedHashMap<>();
+    private final Map<String, ServedThing> things = new ConcurrentHashMap<>();
+    // resources registered per thing and binding, guarded by this
+    private final Map<String, Map<ResourceBuilder, Map<String, RESTListener>>> registrations = new HashMap<>();
+    // listeners resolved in lazy mode per thing, by lower case url
+    private final Map<String, Map<String, RESTListener>> resolved = new ConcurrentHashMap<>();
+    private final ThingIndex thingIndex = new ThingIndex();
     private final Collection<ResourceBuilder> m_bindings = new ArrayList<>();
+    // lets a single lazily created action listener publish executions on all bindings
+    private final ResourceBuilder allBindings = new ResourceBuilder() {
+        @Override
+        public void newResource(String url, RESTListener restListener) {
+            m_bindings.forEach(binding -> binding.newResource(url, restListener));
+        }
+
+        @Override
+        public void removeResource(String url) {
+            m_bindings.forEach(binding -> binding.removeResource(url));
+        }
+
+        @Override
+        public String getBase() {
+            return "";
+        }
+
+        @Override
+        public String getIdentifier() {
+            return "all";
+        }
+    };
     protected SecurityTokenValidator4NicePlugfest validator;
     private TokenRequirements tokenRequirements;
+    private volatile UpdateDispatcher updateDispatcher = UpdateDispatcher.getDefault();
+    private volatile int historyCapacity = 0;
+    private volatile StateStore stateStore;
+    private volatile RoutingMode routingMode = RoutingMode.EAGER;
+    // where lazy routing finds things by lower case name
+    private volatile Function<String, ServedThing> thingLookup = things::get;
 
     public MultiBindingThingServer(Thing thingModel,
                                    ResourceBuilder... bindings) {
@@ -90,13 +144,13 @@ public class MultiBindingThingServer implements ThingServer {
     }
 
     //Better move these urlize-methods to a helper class
-    private static String urlizeTokens(String url) {
+    static String urlizeTokens(String url) {
         return Arrays.stream(url.split("/"))
                 .map(MultiBindingThingServer::urlize)
                 .collect(Collectors.joining("/"));
     }
 
-    private static String urlize(String name) {
+    static String urlize(String name) {
         try {
             return URLEncoder.encode(name,"UTF-8").toLowerCase();
         } catch (UnsupportedEncodingException e) {
@@ -112,6 +166,8 @@ public class MultiBindingThingServer implements ThingServer {
                         )
                 )
         );
+        m_bindings.forEach(resourceBuilder ->
+                resourceBuilder.newResource(Defines.BASE_THING_URL, thingIndex));
     }
 
     protected SecurityTokenValidator getValidator() {
@@ -133,9 +189,107 @@ public class MultiBindingThingServer implements ThingServer {
         if (null == thing) {
             throw new IllegalArgumentException("thingModel must not be null");
         }
-        ServedThing servedThing = new ServedThing(thing);
-        things.put(thing.getName().toLowerCase(), servedThing);
-        createBindings(servedThing, thing.isProtected());
+        return addThings(Collections.singletonList(thing)).get(0);
+    }
+
+    @Override
+    public synchronized List<ThingInterface> addThings(Collection<Thing> thingModels) {
+        if (null == thingModels || thingModels.contains(null)) {
+            throw new IllegalArgumentException("thingModels must not be null or contain null");
+        }
+
+        List<ThingInterface> added = new ArrayList<>(thingModels.size());
+        List<String> names = new ArrayList<>(thingModels.size());
+        for (Thing thing : thingModels) {
+            String key = thing.getName().toLowerCase();
+            if (things.containsKey(key)) {
+                // tears down the listeners and executions of the previous thing
+                added.add(replaceThing(thing));
+                continue;
+            }
+
+            ServedThing servedThing = new ServedThing(thing, updateDispatcher, historyCapacity);
+            StateStore store = stateStore;
+            if (store != null) {
+                store.attach(servedThing);
+            }
+            if (routingMode == RoutingMode.EAGER) {
+                registrations.put(key, createBindings(servedThing, registrations.get(key)));
+                things.put(key, servedThing);
+            } else {
+                publishProtocols(servedThing);
+                things.put(key, servedThing);
+                dropResolved(key);
+            }
+            added.add(servedThing);
+            names.add(thing.getName());
+        }
+
+        // one index update and one notification for the whole batch
+        thingIndex.addAll(names);
+        return added;
+    }
+
+    @Override
+    public synchronized boolean removeThing(String thingName) {
+        if (null == thingName) {
+            throw new IllegalArgumentException("thingName must not be null");
+        }
+
+        String key = thingName.toLowerCase();
+        ServedThing servedThing = things.remove(key);
+        if (servedThing == null) {
+            return false;
+        }
+
+        thingIndex.remove(servedThing.getName());
+        Map<ResourceBuilder, Map<String, RESTListener>> registered = registrations.remove(key);
+        if (registered != null) {
+            registered.forEach((binding, listeners) -> removeResources(binding, listeners.keySet()));
+            registered.values().forEach(listeners -> listeners.values().stream()
+                    .filter(listener -> listener instanceof ActionListener)
+                    .forEach(listener -> ((ActionListener) listener).removeExecutions()));
+        }
+        dropResolved(key);
+
+        StateStore store = stateStore;
+        if (store != null) {
+            store.detach(servedThing);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized ThingInterface replaceThing(Thing thing) {
+        if (null == thing) {
+            throw new IllegalArgumentException("thing must not be null");
+        }
+
+        String key = thing.getName().toLowerCase();
+        ServedThing previous = things.get(key);
+        if (previous == null) {
+            return addThing(thing);
+        }
+
+        ServedThing servedThing = new ServedThing(thing, updateDispatcher, historyCapacity);
+        servedThing.adoptFrom(previous);
+        StateStore store = stateStore;
+        if (store != null) {
+            store.detach(previous);
+            store.attach(servedThing);
+        }
+
+        if (routingMode == RoutingMode.EAGER) {
+            // resources are swapped one by one, requests in flight finish on the
+            // listener they started with
+            registrations.put(key, createBindings(servedThing, registrations.get(key)));
+            things.put(key, servedThing);
+        } else {
+            // resolved resources are dropped and resolved again on next use
+            publishProtocols(servedThing);
+            things.put(key, servedThing);
+            dropResolved(key);
+        }
         return servedThing;
     }
 
@@ -155,35 +309,327 @@ public class MultiBindingThingServer implements ThingServer {
         this.validator = null;
     }
 
-    private void createBindings(ServedThing thingModel, boolean isProtected) {
-        final List<HyperMediaLink> thinglinks = things.keySet().stream()
-                .sorted()
-                .map(name -> new HyperMediaLink("thing", Defines.BASE_THING_URL + urlize(name)))
-                .collect(Collectors.toList());
+    /**
+     * Sets the dispatcher running the update handlers of things added from
+     * now on. Defaults to {@link UpdateDispatcher#getDefault()}.
+     *
+     * @param updateDispatcher the dispatcher, must not be null
+     */
+    public void setUpdateDispatcher(UpdateDispatcher updateDispatcher) {
+        if (null == updateDispatcher) {
+            throw new IllegalArgumentException("updateDispatcher must not be null");
+        }
+        this.updateDispatcher = updateDispatcher;
+    }
+
+    public UpdateDispatcher getUpdateDispatcher() {
+        return updateDispatcher;
+    }
+
+    /**
+     * Keeps the given number of recent numeric values for every property of
+     * things added from now on and serves them at
+     * <code>/things/&lt;thing&gt;/&lt;property&gt;/history</code>.
+     * Defaults to 0, which keeps no history.
+     *
+     * @param historyCapacity samples per property, must not be negative
+     */
+    public void setHistoryCapacity(int historyCapacity) {
+        if (historyCapacity < 0) {
+            throw new IllegalArgumentException("historyCapacity must not be negative");
+        }
+        this.historyCapacity = historyCapacity;
+    }
+
+    public int getHistoryCapacity() {
+        return historyCapacity;
+    }
+
+    /**
+     * Persists the property values of things added from now on in the given
+     * store, restoring the values it recovered when a thing is added.
+     *
+     * @param stateStore the store, or null to stop persisting new things
+     */
+    public void setStateStore(StateStore stateStore) {
+        this.stateStore = stateStore;
+    }
+
+    public StateStore getStateStore() {
+        return stateStore;
+    }
+
+    /**
+     * Chooses how the resources of things are created. In
+     * {@link RoutingMode#LAZY} mode the listeners of a thing only exist for
+     * the interactions that were requested or observed, which keeps the heap
+     * small for large numbers of things. Replacing a thing then ends the
+     * observations of its resources instead of carrying them over. All
+     * bindings must support {@link ResourceBuilder#newResolver}.
+     *
+     * @param routingMode the mode, must not be null
+     * @throws IllegalStateException if things were already added
+     * @throws UnsupportedOperationException if a binding does not support the
+     *                                       mode, which then stays unchanged
+     */
+    public synchronized void setRoutingMode(RoutingMode routingMode) {
+        if (null == routingMode) {
+            throw new IllegalArgumentException("routingMode must not be null");
+        }
+        if (routingMode == this.routingMode) {
+            return;
+        }
+        if (!things.isEmpty()) {
+            throw new IllegalStateException("routing mode must be set before things are added");
+        }
+
+        final ResourceResolver resolver = (routingMode == RoutingMode.LAZY) ? this::resolve : null;
+        final List<ResourceBuilder> switched = new ArrayList<>();
+        try {
+            for (ResourceBuilder binding : m_bindings) {
+                binding.newResolver(Defines.BASE_THING_URL, resolver);
+                switched.add(binding);
+            }
+        } catch (UnsupportedOperationException e) {
+            // leave no binding in the mode that was refused
+            final ResourceResolver previous = (this.routingMode == RoutingMode.LAZY) ? this::resolve : null;
+            switched.forEach(binding -> binding.newResolver(Defines.BASE_THING_URL, previous));
+            throw e;
+        }
+        this.routingMode = routingMode;
+    }
+
+    public RoutingMode getRoutingMode() {
+        return routingMode;
+    }
+
+    /**
+     * Lets lazy routing serve things registered with other servers as well,
+     * e.g. the other shards of a {@link de.thingweb.servient.ShardedServient}.
+     * Those things are listed once {@link #peerThingChanged} is called.
+     *
+     * @param thingLookup finds a thing by its lower case name, or null to only
+     *                    serve the things of this server
+     */
+    public void setThingLookup(Function<String, ServedThing> thingLookup) {
+        if (routingMode != RoutingMode.LAZY) {
+            throw new IllegalStateException("things of other servers can only be served in lazy routing mode");
+        }
+        this.thingLookup = (thingLookup != null) ? thingLookup : things::get;
+    }
+
+    /**
+     * Updates the index and forgets the resolved resources of a thing that
+     * was added, replaced or removed on another server.
+     *
+     * @param thingName the name of the thing
+     */
+    public synchronized void peerThingChanged(String thingName) {
+        if (null == thingName) {
+            throw new IllegalArgumentException("thingName must not be null");
+        }
+
+        String key = thingName.toLowerCase();
+        ServedThing servedThing = thingLookup.apply(key);
+        if (servedThing != null) {
+            thingIndex.add(servedThing.getName());
+        } else {
+            thingIndex.remove(thingName);
+        }
+        dropResolved(key);
+    }
+
+    /**
+     * Resolves <code>/things/{thing}[/{interaction}[/value|/history]]</code>
+     * against the added things.
+     */
+    private RESTListener resolve(String url) {
+        if (!url.toLowerCase().startsWith(Defines.BASE_THING_URL)) {
+            return null;
+        }
+        String[] segments = Arrays.stream(url.substring(Defines.BASE_THING_URL.length()).split("/"))
+                .filter(segment -> !segment.isEmpty())
+                .toArray(String[]::new);
+        if (segments.length == 0 || segments.length > 3) {
+            return null;
+        }
+
+        String key = segments[0].toLowerCase();
+        ServedThing servedThing = thingLookup.apply(key);
+        if (servedThing == null) {
+            return null;
+        }
+
+        Map<String, RESTListener> listeners = resolved.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        RESTListener listener = resolve(servedThing, segments, listeners);
+        if (thingLookup.apply(key) != servedThing) {
+            // replaced or removed meanwhile, do not keep the old listeners
+            resolved.remove(key, listeners);
+        }
+        return listener;
+    }
+
+    private RESTListener resolve(ServedThing servedThing, String[] segments, Map<String, RESTListener> listeners) {
+        final Thing thingModel = servedThing.getThingModel();
+        final boolean isProtected = thingModel.isProtected();
+        final String thingurl = Defines.BASE_THING_URL + thingModel.getName();
+
+        if (segments.length == 1) {
+            return listeners.computeIfAbsent(thingurl.toLowerCase(),
+                    url -> new HypermediaIndex(interactionLinks(thingModel)));
+        }
+
+        final String name = segments[1];
+        final InteractionIndex index = thingModel.getIndex();
+        final Property property = (index.getProperty(name) != null)
+                ? index.getProperty(name)
+                : findIgnoreCase(index.getProperties(), name, Property::getName);
+        if (property != null) {
+            final String url = thingurl + "/" + property.getName();
+            if (segments.length == 2 || segments[2].equalsIgnoreCase("value")) {
+                return listeners.computeIfAbsent(url.toLowerCase(),
+                        u -> protect(new PropertyListener(servedThing, property), isProtected));
+            }
+            final PropertyHistory history = servedThing.getHistory(property);
+            if (segments[2].equalsIgnoreCase("history") && history != null) {
+                return listeners.computeIfAbsent((url + "/history").toLowerCase(),
+                        u -> protect(new PropertyHistoryListener(property, history), isProtected));
+            }
+            return null;
+        }
+        if (segments.length > 2) {
+            return null;
+        }
+
+        final Action action = (index.getAction(name) != null)
+                ? index.getAction(name)
+                : findIgnoreCase(index.getActions(), name, Action::getName);
+        if (action != null) {
+            final String url = thingurl + "/" + action.getName();
+            return listeners.computeIfAbsent(url.toLowerCase(),
+                    u -> protect(new ActionListener(servedThing, action, allBindings, url), isProtected));
+        }
+        if (name.equalsIgnoreCase("properties")) {
+            return listeners.computeIfAbsent((thingurl + "/properties").toLowerCase(),
+                    u -> protect(new PropertiesListener(servedThing), isProtected));
+        }
+        if (name.equalsIgnoreCase(".td")) {
+            return listeners.computeIfAbsent((thingurl + "/.td").toLowerCase(),
+                    u -> descriptionListener(thingModel));
+        }
+        return null;
+    }
+
+    // urls are case insensitive like in eager mode
+    private static <T> T findIgnoreCase(List<T> interactions, String name, Function<T, String> getName) {
+        return interactions.stream()
+                .filter(interaction -> getName.apply(interaction).equalsIgnoreCase(name))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private <T extends AbstractRESTListener> T protect(T listener, boolean isProtected) {
+        if (isProtected) {
+            listener.protectWith(getValidator());
+        }
+        return listener;
+    }
+
+    /**
+     * Forgets the listeners resolved for a thing and removes the resources
+     * the bindings created for them.
+     */
+    private void dropResolved(String key) {
+        Map<String, RESTListener> listeners = resolved.remove(key);
+        if (listeners == null) {
+            return;
+        }
+
+        Set<String> urls = new HashSet<>();
+        listeners.forEach((url, listener) -> {
+            urls.add(url);
+            if (listener instanceof PropertyListener) {
+                urls.add(url + "/value");
+            } else if (listener instanceof ActionListener) {
+                ((ActionListener) listener).removeExecutions();
+                urls.add(url + "/executions");
+            }
+        });
+        m_bindings.forEach(binding -> removeResources(binding, urls));
+    }
+
+    /**
+     * Registers the resources of a thing with every binding.
+     *
+     * @param previous the resources of the thing being replaced, or null
+     * @return the registered resources per binding
+     */
+    private Map<ResourceBuilder, Map<String, RESTListener>> createBindings(
+            ServedThing thingModel, Map<ResourceBuilder, Map<String, RESTListener>> previous) {
+        final boolean isProtected = thingModel.getThingModel().isProtected();
+        final Map<ResourceBuilder, Map<String, RESTListener>> registered = new HashMap<>();
+        // all bindings serve the same rendering of the description
+        final RESTListener description = descriptionListener(thingModel.getThingModel());
 
-        final HypermediaIndex thingIndex = new HypermediaIndex(thinglinks);
+        for (ResourceBuilder binding : m_bindings) {
+            final Map<String, RESTListener> listeners = createBinding(binding, thingModel, isProtected, description);
+            final Map<String, RESTListener> old = (previous != null) ? previous.get(binding) : null;
 
+            if (old != null) {
+                listeners.forEach((url, listener) -> {
+                    if (listener instanceof ActionListener && old.get(url) instanceof ActionListener) {
+                        ((ActionListener) listener).adoptExecutions((ActionListener) old.get(url));
+                    }
+                });
+            }
+
+            // root first, leaves last (side-effect of coap-binding); existing
+            // urls are swapped in place
+            listeners.forEach(binding::newResource);
+
+            if (old != null) {
+                Set<String> stale = new HashSet<>(old.keySet());
+                stale.removeAll(listeners.keySet());
+                removeResources(binding, stale);
+                old.entrySet().stream()
+                        .filter(entry -> stale.contains(entry.getKey()) && entry.getValue() instanceof ActionListener)
+                        .forEach(entry -> ((ActionListener) entry.getValue()).removeExecutions());
+            }
+
+            registered.put(binding, listeners);
+        }
+
+        publishProtocols(thingModel);
+        return registered;
+    }
+
+    private void publishProtocols(ServedThing thingModel) {
         final Map<String, Protocol> protocols = thingModel.getThingModel().getThingDescription().getMetadata().getProtocols();
 
         int prio=1;
         for (ResourceBuilder binding : m_bindings) {
-            // update/create HATEOAS links to things
-            binding.newResource(Defines.BASE_THING_URL, thingIndex);
-            createBinding(binding, thingModel,isProtected);
             final Protocol protocol = new Protocol(binding.getBase() + Defines.BASE_THING_URL + urlize(thingModel.getName()),prio++);
             protocols.put(binding.getIdentifier(),protocol);
         }
+    }
 
-
+    private static void removeResources(ResourceBuilder binding, Collection<String> urls) {
+        // leaves first, so that no placeholders are left behind
+        urls.stream()
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .forEach(binding::removeResource);
     }
 
-    private void createBinding(ResourceBuilder resources, ServedThing servedThing, boolean isProtected) {
+    /**
+     * @return the listeners of the thing by url, thing root first
+     */
+    private Map<String, RESTListener> createBinding(ResourceBuilder resources, ServedThing servedThing, boolean isProtected,
+                                                    RESTListener description) {
         final Thing thingModel = servedThing.getThingModel();
 
         final Collection<Property> properties = thingModel.getProperties();
         final Collection<Action> actions = thingModel.getActions();
 
-        final List<HyperMediaLink> interactionLinks = new LinkedList<>();
         final Map<String, RESTListener> interactionListeners = new HashMap<>();
         final String thingurl = Defines.BASE_THING_URL + thingModel.getName();
 
@@ -202,48 +648,107 @@ public class MultiBindingThingServer implements ThingServer {
 //            ));
 
             interactionListeners.put(url + "/value", propertyListener);
-            interactionLinks.add(new HyperMediaLink("property", urlizeTokens(url)));
+
+            final PropertyHistory history = servedThing.getHistory(property);
+            if (history != null) {
+                final PropertyHistoryListener historyListener = new PropertyHistoryListener(property, history);
+                if(isProtected) historyListener.protectWith(getValidator());
+                interactionListeners.put(url + "/history", historyListener);
+            }
         }
 
         // collect actions
         for (Action action : actions) {
             //TODO optimize by preconstructing strings and using format
             final String url = thingurl + "/" + action.getName();
-            final ActionListener actionListener = new ActionListener(servedThing, action);
+            final ActionListener actionListener = new ActionListener(servedThing, action, resources, url);
             if(isProtected) actionListener.protectWith(getValidator());
             interactionListeners.put(url, actionListener);
-            interactionLinks.add(new HyperMediaLink("action", urlizeTokens(url)));
+        }
+
+        // all property values in one snapshot
+        String propertiesUrl = thingurl + "/properties";
+        if (interactionListeners.containsKey(propertiesUrl)) {
+            log.warning("interaction 'properties' of " + thingModel.getName() + " hides the bulk property resource");
+        } else {
+            final PropertiesListener propertiesListener = new PropertiesListener(servedThing);
+            if(isProtected) propertiesListener.protectWith(getValidator());
+            interactionListeners.put(propertiesUrl, propertiesListener);
         }
 
         //add listener for thing description
-        String tdUrl = thingurl + "/.td";
-        interactionLinks.add(new HyperMediaLink("description",urlizeTokens(tdUrl)));
-        interactionListeners.put(tdUrl,
-                new AbstractRESTListener() {
-                    @Override
-                    public Content onGet() {
-                        //TODO fill up metadata
-                        ThingDescription td = thingModel.getThingDescription();
-
-                        //manually adding the context
-                        ObjectNode json = ContentHelper.getJsonMapper().valueToTree(td);
-                        json.put("@context", "http://w3c.github.io/wot/w3c-wot-td-context.jsonld");
-
-                        return ContentHelper.wrap(json,
-                                MediaType.APPLICATION_JSON);
-                    }
-                });
+        interactionListeners.put(thingurl + "/.td", description);
+
+        final Map<String, RESTListener> listeners = new LinkedHashMap<>();
 
         // thing root
-        resources.newResource(thingurl,
-                new HypermediaIndex(interactionLinks)
-        );
+        listeners.put(thingurl, new HypermediaIndex(interactionLinks(thingModel)));
+        listeners.putAll(interactionListeners);
 
-        // leaves last (side-effect of coap-binding)
-        interactionListeners.entrySet().stream().forEachOrdered(
-                entry -> resources.newResource(entry.getKey(), entry.getValue())
-        );
+        return listeners;
+    }
+
+    private static List<HyperMediaLink> interactionLinks(Thing thingModel) {
+        final List<HyperMediaLink> interactionLinks = new LinkedList<>();
+        final String thingurl = Defines.BASE_THING_URL + thingModel.getName();
+        final InteractionIndex index = thingModel.getIndex();
 
+        index.getProperties().forEach(property ->
+                interactionLinks.add(new HyperMediaLink("property", urlizeTokens(thingurl + "/" + property.getName()))));
+        index.getActions().forEach(action ->
+                interactionLinks.add(new HyperMediaLink("action", urlizeTokens(thingurl + "/" + action.getName()))));
+
+        // the bulk property resource is hidden by an interaction of the same name
+        if (index.getProperty("properties") == null && index.getAction("properties") == null) {
+            interactionLinks.add(new HyperMediaLink("properties", urlizeTokens(thingurl + "/properties")));
+        }
+        interactionLinks.add(new HyperMediaLink("description", urlizeTokens(thingurl + "/.td")));
+        return interactionLinks;
+    }
+
+    private static RESTListener descriptionListener(Thing thingModel) {
+        return new AbstractRESTListener() {
+            // the description is rendered again when the interactions change
+            private volatile RenderedDescription rendered;
+
+            @Override
+            public Content onGet() {
+                RenderedDescription current = rendered;
+                if (current != null && current.index == thingModel.getIndex()) {
+                    return current.content;
+                }
+                // the model publishes its index and description under its lock
+                synchronized (thingModel) {
+                    InteractionIndex index = thingModel.getIndex();
+                    current = rendered;
+                    if (current != null && current.index == index) {
+                        return current.content;
+                    }
+                    //TODO fill up metadata
+                    ThingDescription td = thingModel.getThingDescription();
+
+                    //manually adding the context
+                    ObjectNode json = ContentHelper.getJsonMapper().valueToTree(td);
+                    json.put("@context", "http://w3c.github.io/wot/w3c-wot-td-context.jsonld");
+
+                    current = new RenderedDescription(index, new CachedContent(
+                            ContentHelper.wrap(json, MediaType.APPLICATION_JSON).getContent(), MediaType.APPLICATION_JSON));
+                    rendered = current;
+                }
+                return current.content;
+            }
+        };
+    }
+
+    // published as one, so the content always belongs to the index
+    private static final class RenderedDescription {
+        final InteractionIndex index;
+        final CachedContent content;
+
+        RenderedDescription(InteractionIndex index, CachedContent content) {
+            this.index = index;
+            this.content = content;
+        }
     }
 
 }
@@ -0,0 +1,110 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient.impl;
+
+import de.thingweb.binding.AbstractRESTListener;
+import de.thingweb.thing.Content;
+import de.thingweb.thing.MediaType;
+import de.thingweb.thing.Property;
+import de.thingweb.util.encoding.ContentHelper;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Serves the values of all readable properties of a thing in one JSON
+ * object, read from a single consistent snapshot. The query parameter
+ * <code>names=a,b,c</code> restricts the result to the given properties.
+ * <p>
+ * A PUT of such an object writes all given properties atomically.
+ */
+public class PropertiesListener extends AbstractRESTListener {
+
+    private final ServedThing servedThing;
+
+    public PropertiesListener(ServedThing servedThing) {
+        this.servedThing = servedThing;
+        servedThing.addChangeListener(this::changed);
+    }
+
+    @Override
+    public Content onGet() {
+        return onGet(Collections.emptyMap());
+    }
+
+    @Override
+    public Content onGet(Map<String, String> parameters) {
+        String names = parameters.get("names");
+        List<String> propertyNames = null;
+        if (names != null && !names.isEmpty()) {
+            propertyNames = Arrays.stream(names.split(","))
+                    .map(String::trim)
+                    .filter(name -> !name.isEmpty())
+                    .collect(Collectors.toList());
+        }
+
+        return ContentHelper.wrap(servedThing.getProperties(propertyNames), MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * Applies a JSON object of property names and values as one atomic write.
+     */
+    @Override
+    public void onPut(Content data) {
+        Object parsed = ContentHelper.parse(data, Map.class);
+        if (!(parsed instanceof Map)) {
+            throw new IllegalArgumentException("expected an object of property values");
+        }
+        Map<?, ?> values = (Map<?, ?>) parsed;
+
+        Map<String, Object> writes = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            String name = String.valueOf(entry.getKey());
+            Property property = servedThing.getThingModel().getProperty(name);
+            if (property == null) {
+                throw new IllegalArgumentException("no such property: " + name);
+            }
+            if (!property.isWriteable()) {
+                throw new UnsupportedOperationException(name + " is not writable");
+            }
+            writes.put(name, entry.getValue());
+        }
+
+        servedThing.setProperties(writes);
+    }
+
+    private void changed(Collection<String> propertyNames) {
+        // one notification per write, however many properties it changed
+        setChanged();
+        notifyObservers(propertyNames);
+    }
+}
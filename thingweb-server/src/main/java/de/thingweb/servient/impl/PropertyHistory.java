@@ -0,0 +1,230 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient.impl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Fixed-size ring of timestamped numeric samples of a single property.
+ * <p>
+ * Samples are stored as a primitive (long, double) pair in a direct buffer,
+ * so keeping a long history for many properties does not add to the Java
+ * heap. The buffer is allocated on the first recorded sample. Timestamps never
+ * decrease, which lets queries binary-search the ring.
+ * <p>
+ * Writers serialize on a {@link StampedLock}; readers copy optimistically and
+ * only fall back to the read lock if a write overlapped the copy.
+ */
+public class PropertyHistory {
+
+    private static final int SAMPLE_SIZE = Long.BYTES + Double.BYTES;
+
+    private final int capacity;
+    private final StampedLock lock = new StampedLock();
+
+    private ByteBuffer buffer;
+    // total number of samples ever recorded, the oldest live one is at
+    // max(0, count - capacity)
+    private long count;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    public PropertyHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Records a sample if the value is numeric. Booleans are stored as 0 and 1,
+     * other values are ignored.
+     *
+     * @param timestamp time of the sample in milliseconds since the epoch
+     * @param value     the value
+     * @return true if the value was recorded
+     */
+    public boolean record(long timestamp, Object value) {
+        double sample;
+        if (value instanceof Number) {
+            sample = ((Number) value).doubleValue();
+        } else if (value instanceof Boolean) {
+            sample = ((Boolean) value) ? 1 : 0;
+        } else {
+            return false;
+        }
+
+        append(timestamp, sample);
+        return true;
+    }
+
+    /**
+     * Records a sample, overwriting the oldest one if the ring is full.
+     *
+     * @param timestamp time of the sample in milliseconds since the epoch
+     * @param value     the value
+     */
+    public void append(long timestamp, double value) {
+        long stamp = lock.writeLock();
+        try {
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(capacity * SAMPLE_SIZE);
+            }
+            // keep timestamps monotonic, clocks may step backwards
+            lastTimestamp = Math.max(lastTimestamp, timestamp);
+            int offset = (int) (count % capacity) * SAMPLE_SIZE;
+            buffer.putLong(offset, lastTimestamp);
+            buffer.putDouble(offset + Long.BYTES, value);
+            count++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return number of samples currently held
+     */
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        long c = count;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                c = count;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return (int) Math.min(c, capacity);
+    }
+
+    /**
+     * Returns the oldest samples taken at or after a point in time.
+     *
+     * @param since earliest timestamp to include, in milliseconds since the epoch
+     * @param limit maximum number of samples to return, must not be negative
+     * @return the samples, oldest first
+     */
+    public Samples query(long since, int limit) {
+        return read(since, limit, false);
+    }
+
+    /**
+     * Returns the most recent samples.
+     *
+     * @param limit maximum number of samples to return, must not be negative
+     * @return the samples, oldest first
+     */
+    public Samples latest(int limit) {
+        return read(Long.MIN_VALUE, limit, true);
+    }
+
+    private Samples read(long since, int limit, boolean newest) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        Samples samples = copy(since, limit, newest);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                samples = copy(since, limit, newest);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return samples;
+    }
+
+    private Samples copy(long since, int limit, boolean newest) {
+        // fields are read once, an optimistic copy may see them torn but is
+        // discarded then; indexes are clamped so it cannot fail either
+        ByteBuffer buf = buffer;
+        long total = count;
+        if (buf == null || total <= 0) {
+            return Samples.EMPTY;
+        }
+
+        long first = Math.max(0, total - capacity);
+        long lo = newest ? Math.max(first, total - limit) : first;
+        long hi = total;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (buf.getLong(offset(mid)) < since) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        int n = (int) Math.min(limit, total - lo);
+        long[] timestamps = new long[n];
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            int offset = offset(lo + i);
+            timestamps[i] = buf.getLong(offset);
+            values[i] = buf.getDouble(offset + Long.BYTES);
+        }
+        return new Samples(timestamps, values);
+    }
+
+    private int offset(long sequence) {
+        return (int) (sequence % capacity) * SAMPLE_SIZE;
+    }
+
+    /**
+     * Result of a history query, two parallel arrays ordered by time.
+     */
+    public static final class Samples {
+        static final Samples EMPTY = new Samples(new long[0], new double[0]);
+
+        private final long[] timestamps;
+        private final double[] values;
+
+        Samples(long[] timestamps, double[] values) {
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+
+        public int size() {
+            return timestamps.length;
+        }
+
+        public long getTimestamp(int i) {
+            return timestamps[i];
+        }
+
+        public double getValue(int i) {
+            return values[i];
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient.impl;
+
+import de.thingweb.binding.AbstractRESTListener;
+import de.thingweb.thing.Content;
+import de.thingweb.thing.MediaType;
+import de.thingweb.thing.Property;
+import de.thingweb.util.encoding.ContentHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the recorded history of a property, answering
+ * <code>GET .../history?since=&lt;millis&gt;&amp;limit=&lt;n&gt;</code> with the
+ * oldest samples taken at or after <code>since</code>. Without <code>since</code>
+ * the newest samples are returned.
+ */
+public class PropertyHistoryListener extends AbstractRESTListener {
+
+    public static final int DEFAULT_LIMIT = 100;
+
+    private final Property property;
+    private final PropertyHistory history;
+
+    public PropertyHistoryListener(Property property, PropertyHistory history) {
+        if (null == history) {
+            throw new IllegalArgumentException("history must not be null");
+        }
+        this.property = property;
+        this.history = history;
+    }
+
+    @Override
+    public Content onGet() {
+        return onGet(Collections.emptyMap());
+    }
+
+    @Override
+    public Content onGet(Map<String, String> parameters) {
+        if (!property.isReadable()) {
+            throw new UnsupportedOperationException();
+        }
+
+        long since = parse(parameters, "since", -1);
+        long limit = parse(parameters, "limit", DEFAULT_LIMIT);
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+
+        int n = (int) Math.min(limit, Integer.MAX_VALUE);
+        PropertyHistory.Samples samples = since < 0 ? history.latest(n) : history.query(since, n);
+        List<Map<String, Object>> entries = new ArrayList<>(samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("time", samples.getTimestamp(i));
+            entry.put("value", samples.getValue(i));
+            entries.add(entry);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("property", property.getName());
+        result.put("samples", entries);
+        return ContentHelper.wrap(result, MediaType.APPLICATION_JSON);
+    }
+
+    private static long parse(Map<String, String> parameters, String name, long defaultValue) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number: " + value);
+        }
+    }
+}
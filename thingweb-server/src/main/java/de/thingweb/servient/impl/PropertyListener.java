@@ -25,27 +25,37 @@
 package de.thingweb.servient.impl;
 
 import de.thingweb.binding.AbstractRESTListener;
+import de.thingweb.binding.AsyncResponse;
+import de.thingweb.binding.TaggedContent;
 import de.thingweb.thing.Content;
+import de.thingweb.thing.MediaType;
 import de.thingweb.thing.Property;
 import de.thingweb.util.encoding.ContentHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Observable;
-import java.util.Observer;
+import java.util.Map;
 
 /**
  * Created by Johannes on 07.10.2015.
+ * <p>
+ * Reads with <code>?waitFor=&lt;entity tag&gt;&amp;timeout=30s</code> are long
+ * polls, answered once the value differs from the tagged one or with the
+ * unchanged value after the timeout.
  */
-public class PropertyListener extends AbstractRESTListener implements Observer {
+public class PropertyListener extends AbstractRESTListener {
     private static final Logger log = LoggerFactory.getLogger(PropertyListener.class);
+
+    public static final long DEFAULT_WAIT = 30000;
+    public static final long MAX_WAIT = 120000;
+
     private final Property property;
     private final ServedThing servedThing;
 
     public PropertyListener(ServedThing servedThing, Property property) {
         this.property = property;
         this.servedThing = servedThing;
-        property.addObserver(this);
+        servedThing.addChangeListener(property, this::changed);
     }
 
     @Override
@@ -54,9 +64,59 @@ public class PropertyListener extends AbstractRESTListener implements Observer {
             throw new UnsupportedOperationException();
         }
 
-        Object res = servedThing.getProperty(property);
-        return ContentHelper.makeJsonValue(res);
+        return servedThing.getPropertyContent(property, MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    public AsyncResponse onGetAsync(Map<String, String> parameters) {
+        String waitFor = parameters.get(WAIT_FOR);
+        if (waitFor == null) {
+            return AsyncResponse.completed(onGet());
+        }
+        if (!property.isReadable()) {
+            throw new UnsupportedOperationException();
+        }
 
+        long timeout = parseTimeout(parameters.get("timeout"));
+        byte[] etag = TaggedContent.parseEntityTag(waitFor);
+        if (etag == null) {
+            // not a tag of ours, so it is outdated
+            return AsyncResponse.completed(onGet());
+        }
+        return new AsyncResponse(servedThing.awaitPropertyContent(property, etag, MediaType.APPLICATION_JSON, timeout)
+                .thenApply(Content.class::cast));
+    }
+
+    /**
+     * @param timeout e.g. <code>30s</code>, <code>500ms</code> or
+     *                <code>2m</code>, plain numbers are seconds
+     * @return the timeout in milliseconds, at most {@link #MAX_WAIT}
+     */
+    static long parseTimeout(String timeout) {
+        if (timeout == null) {
+            return DEFAULT_WAIT;
+        }
+
+        long unit = 1000;
+        String amount = timeout;
+        if (timeout.endsWith("ms")) {
+            unit = 1;
+            amount = timeout.substring(0, timeout.length() - 2);
+        } else if (timeout.endsWith("s")) {
+            amount = timeout.substring(0, timeout.length() - 1);
+        } else if (timeout.endsWith("m")) {
+            unit = 60000;
+            amount = timeout.substring(0, timeout.length() - 1);
+        }
+        try {
+            long value = Long.parseLong(amount);
+            if (value < 0) {
+                throw new IllegalArgumentException("timeout must not be negative");
+            }
+            return Math.min(value, MAX_WAIT / unit) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("timeout is not a duration: " + timeout);
+        }
     }
 
     @Override
@@ -70,9 +130,9 @@ public class PropertyListener extends AbstractRESTListener implements Observer {
     }
 
 
-    @Override
-    public void update(Observable o, Object arg) {
-        log.info("change detected: " + o + " to " + arg);
+    private void changed(Object value) {
+        log.debug("change detected: {} to {}", property.getName(), value);
         setChanged();
+        notifyObservers(value);
     }
 }
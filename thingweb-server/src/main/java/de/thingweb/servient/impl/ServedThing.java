@@ -26,15 +26,39 @@
 
 package de.thingweb.servient.impl;
 
+import de.thingweb.binding.TaggedContent;
 import de.thingweb.servient.ThingInterface;
 import de.thingweb.thing.Action;
+import de.thingweb.thing.Content;
+import de.thingweb.thing.InteractionIndex;
+import de.thingweb.thing.MediaType;
 import de.thingweb.thing.Property;
 import de.thingweb.thing.Thing;
+import de.thingweb.util.encoding.ContentHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 /**
  * Created by Johannes on 20.12.2015.
@@ -43,16 +67,71 @@ public class ServedThing implements ThingInterface {
 
     protected final static Logger log = LoggerFactory.getLogger(ServedThing.class);
 
-    /**
-     * Sync object for {@link #m_stateSync}.
-     */
-    private final Object m_stateSync = new Object();
+    private static final ScheduledThreadPoolExecutor waitTimer = newWaitTimer();
+
     private final Thing m_thingModel;
     private final StateContainer m_state;
+    private final InteractionIndex m_index;
+    private final Bulkhead[] m_bulkheads;
+    private volatile StateStore m_store;
+    // highest version handed to the store per property, guarded by m_logLocks
+    private final long[] m_loggedVersions;
+    private final Object[] m_logLocks;
+    private final List<List<Consumer<Object>>> m_changeListeners;
+    private final List<Consumer<Collection<String>>> m_thingChangeListeners = new CopyOnWriteArrayList<>();
+    // per property, the long polls woken by the next committed write
+    private final AtomicReferenceArray<Set<CompletableFuture<Void>>> m_waiters;
+    // versions restart with every instance, the epoch keeps their tags apart
+    private final int m_epoch = ThreadLocalRandom.current().nextInt();
 
     public ServedThing(Thing thing) {
+        this(thing, UpdateDispatcher.getDefault());
+    }
+
+    public ServedThing(Thing thing, UpdateDispatcher dispatcher) {
+        this(thing, dispatcher, 0);
+    }
+
+    /**
+     * @param thing           the thing model
+     * @param dispatcher      runs the update handlers
+     * @param historyCapacity number of samples kept per property, 0 to keep
+     *                        no history
+     */
+    public ServedThing(Thing thing, UpdateDispatcher dispatcher, int historyCapacity) {
         this.m_thingModel = thing;
-        this.m_state = new StateContainer(thing);
+        this.m_state = new StateContainer(thing, dispatcher, historyCapacity);
+        this.m_index = m_state.getIndex();
+        this.m_bulkheads = new Bulkhead[m_index.getActionCount()];
+
+        for (int i = 0; i < m_bulkheads.length; i++) {
+            m_bulkheads[i] = new Bulkhead(m_index.getAction(i));
+        }
+
+        this.m_changeListeners = new ArrayList<>(m_index.getPropertyCount());
+        for (int i = 0; i < m_index.getPropertyCount(); i++) {
+            m_changeListeners.add(new CopyOnWriteArrayList<>());
+        }
+        this.m_waiters = new AtomicReferenceArray<>(m_index.getPropertyCount());
+        for (int i = 0; i < m_index.getPropertyCount(); i++) {
+            m_waiters.set(i, ConcurrentHashMap.newKeySet());
+        }
+        this.m_loggedVersions = new long[m_index.getPropertyCount()];
+        this.m_logLocks = new Object[m_index.getPropertyCount()];
+        for (int i = 0; i < m_logLocks.length; i++) {
+            m_logLocks[i] = new Object();
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor newWaitTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "property-wait-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // most waits end with a write, do not keep their timeouts around
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
     }
 
     public Thing getThingModel() {
@@ -61,67 +140,340 @@ public class ServedThing implements ThingInterface {
 
     @Override
     public void setProperty(Property property, Object value) {
-        if (null == property) {
-            throw new IllegalArgumentException("property must not be null");
+        setProperty(propertyId(property), value);
+    }
+
+    @Override
+    public void setProperty(String propertyName, Object value) {
+        setProperty(propertyId(propertyName), value);
+    }
+
+    private void setProperty(int id, Object value) {
+        // the state container updates lock-free, handlers are run by the
+        // dispatcher and do not hold up readers or other writers
+        VersionedValue stored = m_state.setProperty(id, value);
+        committed(id, stored);
+        notifyThingChange(Collections.singletonList(m_index.getProperty(id).getName()));
+    }
+
+    /**
+     * Atomically sets the values of several properties: readers of a
+     * {@link #getProperties(Collection) snapshot} see either none or all of
+     * them. Update handlers and change listeners of every property are called
+     * once, after all values were applied.
+     *
+     * @param values property names mapped to their new values, must not be null
+     * @throws IllegalArgumentException if a property does not exist, in which
+     *                                  case no value is set
+     */
+    public void setProperties(Map<String, Object> values) {
+        if (null == values) {
+            throw new IllegalArgumentException("values must not be null");
         }
-        if (!m_thingModel.isOwnerOf(property)) {
-            throw new IllegalArgumentException(
-                    "property does not belong to served thing");
+
+        int[] ids = new int[values.size()];
+        Object[] newValues = new Object[values.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            ids[i] = propertyId(entry.getKey());
+            newValues[i] = entry.getValue();
+            i++;
         }
 
-        synchronized (m_stateSync) {
-            m_state.setProperty(property, value);
-            m_state.getUpdateHandlers(property)
-                    .parallelStream()
-                    .forEach(handler -> handler.accept(value));
+        VersionedValue[] stored = m_state.setProperties(ids, newValues);
 
-            property.setChanged();
+        for (i = 0; i < ids.length; i++) {
+            committed(ids[i], stored[i]);
         }
+        notifyThingChange(new ArrayList<>(values.keySet()));
     }
 
-    @Override
-    public void setProperty(String propertyName, Object value) {
-        Property prop = m_thingModel.getProperty(propertyName);
+    private void committed(int id, VersionedValue stored) {
+        Object value = stored.getValue();
+        // the version orders the handlers' values, writers may get here out of commit order
+        m_state.dispatchUpdate(id, stored);
 
-        if (null == prop) {
-            throw new IllegalArgumentException("no such property: " +
-                    propertyName);
+        StateStore store = m_store;
+        if (store != null) {
+            log(store, id, stored);
+        }
+
+        for (Consumer<Object> listener : m_changeListeners.get(id)) {
+            listener.accept(value);
+        }
+
+        // waiters register before they read the version, so an empty set
+        // means every later waiter sees this write
+        if (!m_waiters.get(id).isEmpty()) {
+            for (CompletableFuture<Void> waiter : m_waiters.getAndSet(id, ConcurrentHashMap.newKeySet())) {
+                waiter.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Appends a written value to the store in commit order. A writer
+     * overtaken by a newer one skips its value, so the log never ends on a
+     * value that was not the last one committed.
+     */
+    private void log(StateStore store, int id, VersionedValue stored) {
+        synchronized (m_logLocks[id]) {
+            if (stored.getVersion() > m_loggedVersions[id]) {
+                m_loggedVersions[id] = stored.getVersion();
+                store.append(getName(), m_index.getProperty(id).getName(), stored.getValue());
+            }
         }
+    }
 
-        setProperty(prop, value);
+    private void notifyThingChange(Collection<String> propertyNames) {
+        for (Consumer<Collection<String>> listener : m_thingChangeListeners) {
+            listener.accept(propertyNames);
+        }
+    }
+
+    /**
+     * Registers a listener that is called with the new value after every
+     * committed write of a property, on the writing thread. Bindings use this
+     * to notify their observers; application code should use
+     * {@link #onUpdate(String, Consumer)}.
+     *
+     * @param property the property, must not be null
+     * @param listener the listener, must not be null
+     */
+    public void addChangeListener(Property property, Consumer<Object> listener) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener must not be null");
+        }
+        m_changeListeners.get(propertyId(property)).add(listener);
+    }
+
+    /**
+     * Registers a listener that is called once per committed write, single or
+     * batch, with the names of the properties it changed.
+     *
+     * @param listener the listener, must not be null
+     */
+    public void addChangeListener(Consumer<Collection<String>> listener) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener must not be null");
+        }
+        m_thingChangeListeners.add(listener);
+    }
+
+    /**
+     * Takes over the values, update handlers and action handlers of the
+     * interactions this thing shares by name with a thing it replaces.
+     */
+    void adoptFrom(ServedThing previous) {
+        for (int id = 0; id < m_index.getPropertyCount(); id++) {
+            Property property = m_index.getProperty(id);
+            int old = previous.m_index.indexOfProperty(property.getName());
+            if (old < 0) {
+                continue;
+            }
+
+            VersionedValue value = previous.m_state.getVersionedProperty(old);
+            if (value.getVersion() > 0) {
+                m_state.setProperty(id, value.getValue());
+            }
+            for (Consumer<Object> handler : previous.m_state.getUpdateHandlers(previous.m_index.getProperty(old))) {
+                m_state.addUpdateHandler(property, handler);
+            }
+        }
+
+        for (int id = 0; id < m_index.getActionCount(); id++) {
+            int old = previous.m_index.indexOfAction(m_index.getAction(id).getName());
+            if (old >= 0) {
+                m_state.addHandler(m_index.getAction(id), previous.m_state.getHandler(old));
+            }
+        }
+    }
+
+    void setStateStore(StateStore store) {
+        m_store = store;
+    }
+
+    /**
+     * Sets a value recovered from a {@link StateStore}, without running
+     * update handlers or logging it again.
+     *
+     * @return false if the thing has no such property
+     */
+    boolean restoreProperty(String propertyName, Object value) {
+        int id = m_index.indexOfProperty(propertyName);
+        if (id < 0) {
+            return false;
+        }
+        m_state.setProperty(id, value);
+        return true;
+    }
+
+    /**
+     * Passes the name and value of every property that was written at least
+     * once to the consumer.
+     */
+    void forEachValue(BiConsumer<String, Object> consumer) {
+        for (int id = 0; id < m_index.getPropertyCount(); id++) {
+            VersionedValue value = m_state.getVersionedProperty(id);
+            if (value.getVersion() > 0) {
+                consumer.accept(m_index.getProperty(id).getName(), value.getValue());
+            }
+        }
     }
 
     @Override
     public Object getProperty(Property property) {
-        if (null == property) {
-            throw new IllegalArgumentException("property must not be null");
-        }
-        if (!m_thingModel.isOwnerOf(property)) {
-            throw new IllegalArgumentException(
-                    "property does not belong to served thing");
+        return m_state.getVersionedProperty(propertyId(property)).getValue();
+    }
+
+    /**
+     * Returns the current value of a property encoded as the given media type.
+     * <p>
+     * Encoded values are cached until the next write to the property, so
+     * repeated reads of an unchanged property return the same Content. The
+     * content is tagged with the version of the value.
+     *
+     * @param property  the property, must not be null
+     * @param mediaType the media type to encode to
+     * @return the encoded value
+     */
+    public TaggedContent getPropertyContent(Property property, MediaType mediaType) {
+        VersionedValue versioned = m_state.getVersionedProperty(propertyId(property));
+        return (TaggedContent) versioned.getEncoded(mediaType, value -> {
+            Content content = encode(value, mediaType);
+            return new TaggedContent(content.getContent(), content.getMediaType(),
+                    etag(versioned.getVersion(), mediaType));
+        });
+    }
+
+    /**
+     * Returns the content of a property once it differs from the content the
+     * given entity tag was issued for, or the unchanged content after the
+     * timeout. Tags of an outdated version, another media type or another
+     * instance complete at once.
+     * <p>
+     * Waiters do not hold a thread. A write wakes all waiters of the property
+     * at once, they read the new value without locking.
+     *
+     * @param property  the property, must not be null
+     * @param etag      the entity tag the caller has, must not be null
+     * @param mediaType the media type to encode to
+     * @param timeout   milliseconds to wait at most
+     * @return the encoded value
+     */
+    public CompletionStage<TaggedContent> awaitPropertyContent(Property property, byte[] etag, MediaType mediaType,
+                                                               long timeout) {
+        if (null == etag) {
+            throw new IllegalArgumentException("etag must not be null");
         }
 
-        synchronized (m_stateSync) {
-            return m_state.getProperty(property);
+        int id = propertyId(property);
+        CompletableFuture<Void> change = new CompletableFuture<>();
+        Set<CompletableFuture<Void>> waiters = m_waiters.get(id);
+        waiters.add(change);
+        // registered before the version is read, a write in between wakes it
+        TaggedContent current = getPropertyContent(property, mediaType);
+        if (!current.hasETag(etag)) {
+            waiters.remove(change);
+            return CompletableFuture.completedFuture(current);
         }
 
+        ScheduledFuture<?> timeoutTask = waitTimer.schedule(() -> change.complete(null), timeout, TimeUnit.MILLISECONDS);
+        return change.thenApply(v -> {
+            timeoutTask.cancel(false);
+            waiters.remove(change);
+            return getPropertyContent(property, mediaType);
+        });
+    }
+
+    private byte[] etag(long version, MediaType mediaType) {
+        return new byte[] {
+                (byte) (m_epoch >>> 16), (byte) (m_epoch >>> 8), (byte) m_epoch,
+                (byte) mediaType.ordinal(),
+                (byte) (version >>> 24), (byte) (version >>> 16), (byte) (version >>> 8), (byte) version
+        };
+    }
+
+    private static Content encode(Object value, MediaType mediaType) {
+        if (mediaType == MediaType.APPLICATION_JSON) {
+            return ContentHelper.makeJsonValue(value);
+        }
+        return ContentHelper.wrap(value, mediaType);
     }
 
     @Override
     public Object getProperty(String propertyName) {
-        Property prop = m_thingModel.getProperty(propertyName);
+        return m_state.getVersionedProperty(propertyId(propertyName)).getValue();
+    }
+
+    /**
+     * @param property the property, must not be null
+     * @return the recent numeric values of the property, or null if no
+     * history is kept
+     */
+    public PropertyHistory getHistory(Property property) {
+        return m_state.getHistory(propertyId(property));
+    }
 
-        if (null == prop) {
+    /**
+     * Reads the values of several readable properties from one consistent
+     * snapshot of the state.
+     *
+     * @param propertyNames names of the properties, or null for all readable
+     *                      properties
+     * @return property names mapped to their values, in model order
+     * @throws IllegalArgumentException if a property does not exist
+     */
+    public Map<String, Object> getProperties(Collection<String> propertyNames) {
+        int[] ids;
+        if (propertyNames == null) {
+            ids = IntStream.range(0, m_index.getPropertyCount())
+                    .filter(id -> m_index.getProperty(id).isReadable())
+                    .toArray();
+        } else {
+            ids = propertyNames.stream()
+                    .mapToInt(this::propertyId)
+                    .filter(id -> m_index.getProperty(id).isReadable())
+                    .distinct()
+                    .sorted()
+                    .toArray();
+        }
+
+        VersionedValue[] values = m_state.snapshot(ids);
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            result.put(m_index.getProperty(ids[i]).getName(), values[i].getValue());
+        }
+        return result;
+    }
+
+    private int propertyId(Property property) {
+        if (null == property) {
+            throw new IllegalArgumentException("property must not be null");
+        }
+
+        int id = m_index.indexOf(property);
+        if (id < 0) {
+            throw new IllegalArgumentException(
+                    "property does not belong to served thing");
+        }
+
+        return id;
+    }
+
+    private int propertyId(String propertyName) {
+        int id = m_index.indexOfProperty(propertyName);
+        if (id < 0) {
             throw new IllegalArgumentException("no such property: " +
                     propertyName);
         }
 
-        return getProperty(prop);
+        return id;
     }
 
     @Override
     public Object invokeAction(String actionName, Object parameter) {
-        Action action = m_thingModel.getAction(actionName);
+        Action action = m_index.getAction(actionName);
         if (action == null) {
             log.warn("onInvoke for actionName '{}' not found in thing model", actionName);
             throw new IllegalArgumentException(actionName);
@@ -132,17 +484,88 @@ public class ServedThing implements ThingInterface {
 
     @Override
     public Object invokeAction(Action action, Object parameter) {
-        Function<?, ?> handler = m_state.getHandler(action);
+        try {
+            return invokeActionAsync(action, parameter).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
 
-        Function<Object, Object> objectHandler = (Function<Object, Object>) handler;
-        Object result = objectHandler.apply(parameter);
+    @Override
+    public CompletionStage<Object> invokeActionAsync(String actionName, Object parameter) {
+        Action action = m_index.getAction(actionName);
+        if (action == null) {
+            log.warn("onInvoke for actionName '{}' not found in thing model", actionName);
+            throw new IllegalArgumentException(actionName);
+        } else {
+            return invokeActionAsync(action, parameter);
+        }
+    }
 
-        return result;
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The invocation runs on the {@link Bulkhead} of the action and fails with
+     * a {@link java.util.concurrent.RejectedExecutionException} if the action
+     * is already running at its configured limit.
+     */
+    @Override
+    public CompletionStage<Object> invokeActionAsync(Action action, Object parameter) {
+        int id = actionId(action);
+        Function<Object, Object> handler = getActionHandler(id);
+
+        return m_bulkheads[id].submit(() -> flatten(handler.apply(parameter)));
+    }
+
+    /**
+     * @param actionName name of the action
+     * @return the bulkhead limiting the invocations of the action, which also
+     * provides its rejection and queueing metrics
+     */
+    public Bulkhead getBulkhead(String actionName) {
+        Action action = m_index.getAction(actionName);
+        if (action == null) {
+            throw new IllegalArgumentException("no such action: " + actionName);
+        }
+        return getBulkhead(action);
+    }
+
+    private Bulkhead getBulkhead(Action action) {
+        return m_bulkheads[actionId(action)];
+    }
+
+    private int actionId(Action action) {
+        if (null == action) {
+            throw new IllegalArgumentException("action must not be null");
+        }
+
+        int id = m_index.indexOf(action);
+        if (id < 0) {
+            throw new IllegalArgumentException("Unknown action: " + action);
+        }
+
+        return id;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompletionStage<Object> flatten(Object result) {
+        if (result instanceof CompletionStage) {
+            return (CompletionStage<Object>) result;
+        }
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Function<Object, Object> getActionHandler(int actionId) {
+        return (Function<Object, Object>) m_state.getHandler(actionId);
     }
 
     @Override
     public void onUpdate(String propertyName, Consumer<Object> callback) {
-        Property property = m_thingModel.getProperty(propertyName);
+        Property property = m_index.getProperty(propertyName);
         if (property == null) {
             log.warn("property {} not found in thing {}", propertyName, m_thingModel.getName());
             throw new IllegalArgumentException(propertyName);
@@ -154,7 +577,7 @@ public class ServedThing implements ThingInterface {
     //TODO overloads for void
     @Override
     public void onInvoke(String actionName, Function<Object, Object> callback) {
-        Action action = m_thingModel.getAction(actionName);
+        Action action = m_index.getAction(actionName);
         if (action == null) {
             log.warn("onInvoke for actionName '" + actionName + "' not found in thing model");
         } else {
@@ -162,6 +585,25 @@ public class ServedThing implements ThingInterface {
         }
     }
 
+    /**
+     * @param propertyName name of the property
+     * @return number of values still waiting for the update handlers of the property
+     */
+    public int getUpdateQueueDepth(String propertyName) {
+        return m_state.getUpdateQueueDepth(m_index.getProperty(propertyId(propertyName)));
+    }
+
+    @Override
+    public void onInvokeAsync(String actionName, Function<Object, CompletionStage<Object>> callback) {
+        Action action = m_index.getAction(actionName);
+        if (action == null) {
+            log.warn("onInvokeAsync for actionName '" + actionName + "' not found in thing model");
+        } else {
+            // stored like a synchronous handler, invokeAction unwraps the stage
+            m_state.addHandler(action, callback);
+        }
+    }
+
     public String getName() {
         return m_thingModel.getName();
     }
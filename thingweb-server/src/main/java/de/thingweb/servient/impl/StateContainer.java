@@ -29,64 +29,218 @@ import de.thingweb.thing.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 
 /**
  * The StateContainer saves all state belonging to a {@link ThingServer}.
+ * <p>
+ * Every property lives in its own slot holding a {@link VersionedValue}.
+ * Slots are updated by compare-and-set, so reads never block and writes to
+ * different properties do not contend with each other. Slots and action
+ * handlers are kept in arrays indexed by the interaction ids of the
+ * {@link InteractionIndex} taken at construction time; interactions added to
+ * the thing later are unknown to the container.
+ * <p>
+ * Optionally every slot also keeps a {@link PropertyHistory} of its recent
+ * numeric values. The history has its own lock and is read without touching
+ * the slot.
  */
 public class StateContainer {
 
     protected static final Logger log = LoggerFactory.getLogger(StateContainer.class);
-    private final Map<Property, Object> m_values = new HashMap<>();
-    private final Map<Property, List<Consumer<Object>>> m_updateHandlers = new HashMap<>();
-    private final Map<Action, Function<?, ?>> m_handlers = new HashMap<>();
+    // optimistic reads of a snapshot before it waits for batch writes
+    private static final int OPTIMISTIC_SNAPSHOTS = 8;
+    private final InteractionIndex m_index;
+    private final PropertySlot[] m_slots;
+    private final AtomicReferenceArray<Function<?, ?>> m_handlers;
+    private final Object m_batchLock = new Object();
+    // odd while a batch write is being applied, see setProperties
+    private volatile long m_batchSequence;
 
     public StateContainer(Thing thingModel) {
-        for (Property property : thingModel.getProperties()) {
-            m_values.put(property, new Content(new byte[0], MediaType.TEXT_PLAIN));
-            m_updateHandlers.put(property, new LinkedList<>());
+        this(thingModel, UpdateDispatcher.getDefault());
+    }
+
+    public StateContainer(Thing thingModel, UpdateDispatcher dispatcher) {
+        this(thingModel, dispatcher, 0);
+    }
+
+    /**
+     * @param thingModel      the thing
+     * @param dispatcher      runs the update handlers
+     * @param historyCapacity number of samples kept per property, 0 to keep
+     *                        no history
+     */
+    public StateContainer(Thing thingModel, UpdateDispatcher dispatcher, int historyCapacity) {
+        if (historyCapacity < 0) {
+            throw new IllegalArgumentException("historyCapacity must not be negative");
         }
 
-        for (Action action : thingModel.getActions()) {
-            m_handlers.put(action, Void -> {
+        m_index = thingModel.getIndex();
+        m_slots = new PropertySlot[m_index.getPropertyCount()];
+        m_handlers = new AtomicReferenceArray<>(m_index.getActionCount());
+
+        for (int i = 0; i < m_slots.length; i++) {
+            m_slots[i] = new PropertySlot(new Content(new byte[0], MediaType.TEXT_PLAIN), dispatcher,
+                    historyCapacity > 0 ? new PropertyHistory(historyCapacity) : null);
+        }
+
+        for (int i = 0; i < m_handlers.length(); i++) {
+            Action action = m_index.getAction(i);
+            m_handlers.set(i, Void -> {
                 log.info("unhandled action " + action.getName() + " called");
                 return Void;
             });
         }
     }
 
-    public void setProperty(Property property, Object value) {
-        if (null == property) {
-            throw new IllegalArgumentException("property must not be null");
-        }
+    /**
+     * @return the interactions this container holds state for
+     */
+    public InteractionIndex getIndex() {
+        return m_index;
+    }
+
+    /**
+     * Atomically replaces the value of a property.
+     *
+     * @param property the property, must not be null
+     * @param value    the new value, must not be null
+     * @return the value as stored, carrying its new version
+     */
+    public VersionedValue setProperty(Property property, Object value) {
+        // FIXME: add type / compatibility check between value and type info
+        // from property
+
+        return setProperty(propertyId(property), value);
+    }
+
+    /**
+     * Atomically replaces the value of a property.
+     *
+     * @param propertyId the id of the property in {@link #getIndex()}
+     * @param value      the new value, must not be null
+     * @return the value as stored, carrying its new version
+     */
+    public VersionedValue setProperty(int propertyId, Object value) {
         if (null == value) {
             throw new IllegalArgumentException("value must not be null");
         }
-        if (!m_values.containsKey(property)) {
-            throw new IllegalArgumentException("Unknown property: " + property);
+
+        PropertySlot slot = getSlot(propertyId);
+        VersionedValue stored = slot.value.updateAndGet(current -> current.next(value));
+        if (slot.history != null) {
+            slot.history.record(System.currentTimeMillis(), value);
         }
+        return stored;
+    }
 
-        // FIXME: add type / compatibility check between value and type info
-        // from property
+    /**
+     * Reads several properties as of a single point in time.
+     * <p>
+     * The slots are read twice; if any of them was written in between, or a
+     * batch write overlapped the reads, the read is repeated. After a few
+     * failed attempts the slots are read once while holding off batch writes,
+     * so batches are still seen whole but single writes may fall between the
+     * reads. Single writes are never blocked.
+     *
+     * @param propertyIds ids of the properties in {@link #getIndex()}
+     * @return the values, in the order of the ids
+     */
+    public VersionedValue[] snapshot(int[] propertyIds) {
+        PropertySlot[] slots = new PropertySlot[propertyIds.length];
+        for (int i = 0; i < propertyIds.length; i++) {
+            slots[i] = getSlot(propertyIds[i]);
+        }
+
+        VersionedValue[] values = new VersionedValue[slots.length];
+        for (int attempt = 0; attempt < OPTIMISTIC_SNAPSHOTS; attempt++) {
+            long sequence = m_batchSequence;
+            if ((sequence & 1) == 0) {
+                for (int i = 0; i < slots.length; i++) {
+                    values[i] = slots[i].value.get();
+                }
+
+                boolean stable = true;
+                for (int i = 0; i < slots.length && stable; i++) {
+                    // every write stores a new VersionedValue
+                    stable = slots[i].value.get() == values[i];
+                }
+                if (stable && sequence == m_batchSequence) {
+                    return values;
+                }
+            }
+            Thread.yield();
+        }
 
-        m_values.put(property, value);
+        // steady batch writes would starve the reader otherwise
+        synchronized (m_batchLock) {
+            for (int i = 0; i < slots.length; i++) {
+                values[i] = slots[i].value.get();
+            }
+        }
+        return values;
     }
 
-    public Object getProperty(Property property) {
-        if (null == property) {
-            throw new IllegalArgumentException("property must not be null");
+    /**
+     * Atomically replaces the values of several properties. Snapshots see
+     * either none or all of the new values.
+     *
+     * @param propertyIds ids of the properties in {@link #getIndex()}
+     * @param values      the new values, in the order of the ids, must not be null
+     * @return the values as stored, carrying their new versions
+     */
+    public VersionedValue[] setProperties(int[] propertyIds, Object[] values) {
+        if (propertyIds.length != values.length) {
+            throw new IllegalArgumentException("expected " + propertyIds.length + " values");
         }
-        if (!m_values.containsKey(property)) {
-            throw new IllegalArgumentException("Unknown property: " + property);
+
+        PropertySlot[] slots = new PropertySlot[propertyIds.length];
+        for (int i = 0; i < propertyIds.length; i++) {
+            if (null == values[i]) {
+                throw new IllegalArgumentException("value must not be null");
+            }
+            slots[i] = getSlot(propertyIds[i]);
         }
 
-        return m_values.get(property);
+        VersionedValue[] stored = new VersionedValue[slots.length];
+        synchronized (m_batchLock) {
+            m_batchSequence++;
+            try {
+                for (int i = 0; i < slots.length; i++) {
+                    final Object value = values[i];
+                    stored[i] = slots[i].value.updateAndGet(current -> current.next(value));
+                }
+            } finally {
+                m_batchSequence++;
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i].history != null) {
+                slots[i].history.record(now, values[i]);
+            }
+        }
+        return stored;
+    }
+
+    public Object getProperty(Property property) {
+        return getVersionedProperty(property).getValue();
+    }
+
+    public VersionedValue getVersionedProperty(Property property) {
+        return getVersionedProperty(propertyId(property));
+    }
+
+    public VersionedValue getVersionedProperty(int propertyId) {
+        return getSlot(propertyId).value.get();
     }
 
     public void addHandler(Action action, Function<?, ?> handler) {
@@ -96,47 +250,133 @@ public class StateContainer {
         if (null == handler) {
             throw new IllegalArgumentException("handler must not be null");
         }
-        if (!m_handlers.containsKey(action)) {
-            throw new IllegalArgumentException("Unknown action: " + action);
-        }
 
-        Function<?, ?> oldhandler = m_handlers.get(action);
+        Function<?, ?> oldhandler = m_handlers.getAndSet(actionId(action), handler);
         if (oldhandler != null) {
             log.info("replacing existing handler.");
         }
-        m_handlers.put(action, handler);
     }
 
     public Function<?, ?> getHandler(Action action) {
-        if (null == action) {
-            throw new IllegalArgumentException("action must not be null");
-        }
-        if (!m_handlers.containsKey(action)) {
-            throw new IllegalArgumentException("Unknown action: " + action);
+        return m_handlers.get(actionId(action));
+    }
+
+    /**
+     * @param property the property, must not be null
+     * @return the recorded history of the property, or null if this container
+     * keeps no history
+     */
+    public PropertyHistory getHistory(Property property) {
+        return getSlot(property).history;
+    }
+
+    public PropertyHistory getHistory(int propertyId) {
+        return getSlot(propertyId).history;
+    }
+
+    public Function<?, ?> getHandler(int actionId) {
+        if (actionId < 0 || actionId >= m_handlers.length()) {
+            throw new IllegalArgumentException("Unknown action id: " + actionId);
         }
 
-        return m_handlers.get(action);
+        return m_handlers.get(actionId);
     }
 
     public void addUpdateHandler(Property property, Consumer<Object> callback) {
+        getSlot(property).updateHandlers.add(callback);
+    }
+
+    public List<Consumer<Object>> getUpdateHandlers(Property property) {
+        return getSlot(property).updateHandlers;
+    }
+
+    /**
+     * Queues a value for the update handlers of a property. Handlers of one
+     * property see values in the order they were queued.
+     *
+     * @param property the property, must not be null
+     * @param value    the value to hand to the handlers
+     */
+    public void dispatchUpdate(Property property, Object value) {
+        dispatchUpdate(propertyId(property), value);
+    }
+
+    public void dispatchUpdate(int propertyId, Object value) {
+        getSlot(propertyId).updates.offer(value);
+    }
+
+    /**
+     * Queues a written value for the update handlers of a property. Values
+     * older than one already queued are skipped, so the handlers end on the
+     * latest value even if writers queue out of commit order.
+     *
+     * @param propertyId the id of the property in {@link #getIndex()}
+     * @param stored     the value as returned by the write
+     */
+    public void dispatchUpdate(int propertyId, VersionedValue stored) {
+        getSlot(propertyId).updates.offer(stored.getValue(), stored.getVersion());
+    }
+
+    /**
+     * @param property the property, must not be null
+     * @return number of values still waiting for the update handlers of the property
+     */
+    public int getUpdateQueueDepth(Property property) {
+        return getSlot(property).updates.size();
+    }
+
+    private PropertySlot getSlot(Property property) {
+        return m_slots[propertyId(property)];
+    }
+
+    private PropertySlot getSlot(int propertyId) {
+        if (propertyId < 0 || propertyId >= m_slots.length) {
+            throw new IllegalArgumentException("Unknown property id: " + propertyId);
+        }
+
+        return m_slots[propertyId];
+    }
+
+    private int propertyId(Property property) {
         if (null == property) {
             throw new IllegalArgumentException("property must not be null");
         }
-        if (!m_updateHandlers.containsKey(property)) {
+
+        int id = m_index.indexOf(property);
+        if (id < 0) {
             throw new IllegalArgumentException("Unknown property: " + property);
         }
 
-        m_updateHandlers.get(property).add(callback);
+        return id;
     }
 
-    public List<Consumer<Object>> getUpdateHandlers(Property property) {
-        if (null == property) {
-            throw new IllegalArgumentException("property must not be null");
+    private int actionId(Action action) {
+        if (null == action) {
+            throw new IllegalArgumentException("action must not be null");
         }
-        if (!m_updateHandlers.containsKey(property)) {
-            throw new IllegalArgumentException("Unknown property: " + property);
+
+        int id = m_index.indexOf(action);
+        if (id < 0) {
+            throw new IllegalArgumentException("Unknown action: " + action);
         }
 
-        return m_updateHandlers.get(property);
+        return id;
+    }
+
+    /**
+     * State of a single property: the current value, its update handlers, the
+     * queue feeding them and its optional history.
+     */
+    private static final class PropertySlot {
+        final AtomicReference<VersionedValue> value;
+        final List<Consumer<Object>> updateHandlers = new CopyOnWriteArrayList<>();
+        final UpdateDispatcher.PropertyQueue updates;
+        final PropertyHistory history;
+
+        PropertySlot(Object initialValue, UpdateDispatcher dispatcher, PropertyHistory history) {
+            this.history = history;
+            value = new AtomicReference<>(new VersionedValue(initialValue, 0));
+            updates = dispatcher.newQueue(updateHandlers);
+        }
     }
 }
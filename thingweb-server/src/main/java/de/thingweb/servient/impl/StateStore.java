@@ -0,0 +1,521 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient.impl;
+
+import de.thingweb.util.encoding.ContentHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Persists property values of served things across restarts.
+ * <p>
+ * Every write is appended to a memory-mapped write-ahead log. A single
+ * committer thread copies queued writes into the log in batches and forces
+ * the log to disk once per batch (group commit), so writers never wait for
+ * the disk. Writes survive a crash of the process as soon as the committer
+ * copied them; writes still queued at that moment are lost.
+ * <p>
+ * When the log is full, and periodically, the committer writes a compacted
+ * snapshot holding the latest value of every property and starts the log
+ * over. Opening a store replays snapshot and log; {@link #attach(ServedThing)}
+ * then restores the recovered values of a thing and starts logging its writes.
+ * Values are stored as JSON.
+ */
+public class StateStore implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(StateStore.class);
+
+    public static final int DEFAULT_LOG_SIZE = 64 * 1024 * 1024;
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = 60_000;
+
+    static final String LOG_FILE = "state.wal";
+    static final String SNAPSHOT_FILE = "state.snapshot";
+
+    private static final int SNAPSHOT_MAGIC = 0x57545331;
+    private static final int RECORD_HEADER = 8;
+    private static final int MAX_BATCH = 1024;
+    private static final int QUEUE_CAPACITY = 64 * 1024;
+
+    private final Path directory;
+    private final int logSize;
+    private final long snapshotInterval;
+    private final FileChannel logChannel;
+    private final MappedByteBuffer logBuffer;
+    private int logPosition;
+
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    // values of things that are not attached yet, guarded by this
+    private final Map<String, Map<String, byte[]>> recovered = new HashMap<>();
+    private final Map<String, ServedThing> attached = new ConcurrentHashMap<>();
+    private final Thread committer;
+    // queueing holds the read lock, closing the write lock, so that nothing
+    // is queued once the committer may have drained the queue for the last time
+    private final ReadWriteLock queueLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    private final int recoveredCount;
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+
+    public StateStore(Path directory) throws IOException {
+        this(directory, DEFAULT_LOG_SIZE, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Opens a store and recovers the values persisted in it.
+     *
+     * @param directory        where log and snapshot are kept, created if missing
+     * @param logSize          size of the mapped log in bytes
+     * @param snapshotInterval milliseconds between snapshots of a non-empty log
+     * @throws IOException if the files cannot be read or mapped
+     */
+    public StateStore(Path directory, int logSize, long snapshotInterval) throws IOException {
+        if (null == directory) {
+            throw new IllegalArgumentException("directory must not be null");
+        }
+        if (logSize <= RECORD_HEADER) {
+            throw new IllegalArgumentException("logSize too small: " + logSize);
+        }
+
+        this.directory = directory;
+        this.logSize = logSize;
+        this.snapshotInterval = snapshotInterval;
+
+        Files.createDirectories(directory);
+        readSnapshot();
+        logChannel = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replayLog();
+
+        int count = 0;
+        for (Map<String, byte[]> values : recovered.values()) {
+            count += values.size();
+        }
+        recoveredCount = count;
+
+        // fold the replayed log into a fresh snapshot, then start an empty log
+        writeSnapshot();
+        logChannel.truncate(logSize);
+        logBuffer = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, logSize);
+        resetLog();
+
+        committer = new Thread(this::commitLoop, "state-store-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Restores the recovered values of a thing and logs all its writes from
+     * now on. Values of properties the thing no longer has are dropped.
+     *
+     * @param servedThing the thing, must not be null
+     */
+    public void attach(ServedThing servedThing) {
+        if (null == servedThing) {
+            throw new IllegalArgumentException("servedThing must not be null");
+        }
+
+        synchronized (this) {
+            Map<String, byte[]> values = recovered.remove(servedThing.getName());
+            if (values != null) {
+                values.forEach((property, json) -> {
+                    try {
+                        if (!servedThing.restoreProperty(property, decode(json))) {
+                            log.info("dropping persisted value of unknown property {} of {}",
+                                    property, servedThing.getName());
+                        }
+                    } catch (IOException e) {
+                        log.warn("cannot restore property " + property + " of " + servedThing.getName(), e);
+                    }
+                });
+            }
+            attached.put(servedThing.getName(), servedThing);
+        }
+        servedThing.setStateStore(this);
+    }
+
+    /**
+     * Stops logging the writes of a thing. Its current values are kept and
+     * restored when a thing of the same name is attached again.
+     *
+     * @param servedThing the thing, must not be null
+     */
+    public void detach(ServedThing servedThing) {
+        if (null == servedThing) {
+            throw new IllegalArgumentException("servedThing must not be null");
+        }
+
+        servedThing.setStateStore(null);
+        synchronized (this) {
+            if (attached.remove(servedThing.getName(), servedThing)) {
+                Map<String, byte[]> values = new HashMap<>();
+                servedThing.forEachValue((property, value) -> {
+                    try {
+                        values.put(property, encode(value));
+                    } catch (IOException e) {
+                        log.warn("cannot persist value of " + servedThing.getName() + "/" + property, e);
+                    }
+                });
+                recovered.put(servedThing.getName(), values);
+            }
+        }
+    }
+
+    /**
+     * Queues a write for the log. Blocks only if the committer has fallen
+     * far behind.
+     *
+     * @param thingName    name of the thing
+     * @param propertyName name of the property
+     * @param value        the new value
+     */
+    public void append(String thingName, String propertyName, Object value) {
+        if (closed) {
+            throw new IllegalStateException("state store is closed");
+        }
+
+        byte[] payload;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(thingName);
+            out.writeUTF(propertyName);
+            out.write(encode(value));
+            payload = bytes.toByteArray();
+        } catch (IOException e) {
+            log.warn("cannot persist value of " + thingName + "/" + propertyName, e);
+            return;
+        }
+
+        enqueue(new Record(payload, null));
+        appended.incrementAndGet();
+    }
+
+    /**
+     * Waits until all writes queued before this call are forced to disk.
+     */
+    public void flush() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        enqueue(new Record(null, done));
+        done.join();
+    }
+
+    /**
+     * Writes a last snapshot and stops the committer.
+     */
+    @Override
+    public void close() throws IOException {
+        queueLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            queueLock.writeLock().unlock();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!committer.isAlive()) {
+            // left behind only if the committer was interrupted
+            Record left;
+            while ((left = queue.poll()) != null) {
+                if (left.done != null) {
+                    left.done.completeExceptionally(new IllegalStateException("state store is closed"));
+                }
+            }
+        }
+        logChannel.close();
+    }
+
+    /**
+     * @return number of property values recovered when the store was opened
+     */
+    public int getRecoveredCount() {
+        return recoveredCount;
+    }
+
+    public long getAppendedCount() {
+        return appended.get();
+    }
+
+    /**
+     * @return number of times the log was forced to disk
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    public long getSnapshotCount() {
+        return snapshots.get();
+    }
+
+    private void enqueue(Record record) {
+        queueLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("state store is closed");
+            }
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while queueing state write", e);
+        } finally {
+            queueLock.readLock().unlock();
+        }
+    }
+
+    private void commitLoop() {
+        List<Record> batch = new ArrayList<>(MAX_BATCH);
+        long nextSnapshot = System.currentTimeMillis() + snapshotInterval;
+
+        while (true) {
+            try {
+                long wait = Math.max(1, Math.min(100, nextSnapshot - System.currentTimeMillis()));
+                Record first = queue.poll(wait, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                }
+
+                if (!batch.isEmpty()) {
+                    for (Record record : batch) {
+                        if (record.payload != null) {
+                            write(record.payload);
+                        }
+                    }
+                    logBuffer.force();
+                    batches.incrementAndGet();
+                    for (Record record : batch) {
+                        if (record.done != null) {
+                            record.done.complete(null);
+                        }
+                    }
+                    batch.clear();
+                }
+
+                boolean stopping = closed && queue.isEmpty();
+                if (stopping || System.currentTimeMillis() >= nextSnapshot) {
+                    if (logPosition > 0 || stopping) {
+                        compact();
+                    }
+                    nextSnapshot = System.currentTimeMillis() + snapshotInterval;
+                }
+                if (stopping) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.error("state store committer failed", e);
+                for (Record record : batch) {
+                    if (record.done != null) {
+                        record.done.completeExceptionally(e);
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(byte[] payload) throws IOException {
+        // room for header, payload and the terminator of the next record
+        int needed = RECORD_HEADER + payload.length + 4;
+        if (logPosition + needed > logSize) {
+            // the snapshot covers all values written so far, including this one
+            logBuffer.force();
+            compact();
+            if (needed > logSize) {
+                return;
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        // terminate first and set the length last, so a torn record is never
+        // mistaken for a complete one
+        logBuffer.putInt(logPosition + RECORD_HEADER + payload.length, 0);
+        logBuffer.position(logPosition + RECORD_HEADER);
+        logBuffer.put(payload);
+        logBuffer.putInt(logPosition + 4, (int) crc.getValue());
+        logBuffer.putInt(logPosition, payload.length);
+        logPosition += RECORD_HEADER + payload.length;
+    }
+
+    private void compact() throws IOException {
+        writeSnapshot();
+        resetLog();
+        snapshots.incrementAndGet();
+    }
+
+    private void resetLog() {
+        logBuffer.putInt(0, 0);
+        logBuffer.force();
+        logPosition = 0;
+    }
+
+    private void replayLog() throws IOException {
+        long size = logChannel.size();
+        if (size < RECORD_HEADER) {
+            return;
+        }
+
+        MappedByteBuffer buffer = logChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int position = 0;
+        while (position + RECORD_HEADER <= size) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER + length > size) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            buffer.position(position + RECORD_HEADER);
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                log.warn("stopping log replay at corrupt record at offset {}", position);
+                break;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            String thing = in.readUTF();
+            String property = in.readUTF();
+            byte[] json = new byte[in.available()];
+            in.readFully(json);
+            recovered.computeIfAbsent(thing, t -> new HashMap<>()).put(property, json);
+
+            position += RECORD_HEADER + length;
+        }
+    }
+
+    private void readSnapshot() throws IOException {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("not a state snapshot: " + file);
+            }
+            int things = in.readInt();
+            for (int i = 0; i < things; i++) {
+                String thing = in.readUTF();
+                int properties = in.readInt();
+                Map<String, byte[]> values = new HashMap<>(properties * 2);
+                for (int j = 0; j < properties; j++) {
+                    String property = in.readUTF();
+                    byte[] json = new byte[in.readInt()];
+                    in.readFully(json);
+                    values.put(property, json);
+                }
+                recovered.put(thing, values);
+            }
+        }
+    }
+
+    private synchronized void writeSnapshot() throws IOException {
+        Map<String, Map<String, byte[]>> values = new HashMap<>(recovered);
+        for (ServedThing servedThing : attached.values()) {
+            Map<String, byte[]> thingValues = new HashMap<>();
+            servedThing.forEachValue((property, value) -> {
+                try {
+                    thingValues.put(property, encode(value));
+                } catch (IOException e) {
+                    log.warn("cannot persist value of " + servedThing.getName() + "/" + property, e);
+                }
+            });
+            values.put(servedThing.getName(), thingValues);
+        }
+
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(values.size());
+            for (Map.Entry<String, Map<String, byte[]>> thing : values.entrySet()) {
+                out.writeUTF(thing.getKey());
+                out.writeInt(thing.getValue().size());
+                for (Map.Entry<String, byte[]> property : thing.getValue().entrySet()) {
+                    out.writeUTF(property.getKey());
+                    out.writeInt(property.getValue().length);
+                    out.write(property.getValue());
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] encode(Object value) throws IOException {
+        return ContentHelper.getJsonMapper().writeValueAsBytes(value);
+    }
+
+    private static Object decode(byte[] json) throws IOException {
+        return ContentHelper.getJsonMapper().readValue(json, Object.class);
+    }
+
+    private static final class Record {
+        final byte[] payload;
+        final CompletableFuture<Void> done;
+
+        Record(byte[] payload, CompletableFuture<Void> done) {
+            this.payload = payload;
+            this.done = done;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient.impl;
+
+import de.thingweb.binding.AbstractRESTListener;
+import de.thingweb.binding.CachedContent;
+import de.thingweb.servient.Defines;
+import de.thingweb.thing.Content;
+import de.thingweb.thing.MediaType;
+import de.thingweb.util.encoding.ContentHelper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The <code>/things/</code> index, listing a link to every served thing in
+ * name order.
+ * <p>
+ * Links are kept in a sorted map that is updated in place when things are
+ * added or removed. The JSON document is only rendered on a request and
+ * cached, with its compressed encodings and entity tag, until the next
+ * change.
+ */
+public class ThingIndex extends AbstractRESTListener {
+
+    private final ConcurrentSkipListMap<String, HyperMediaLink> links = new ConcurrentSkipListMap<>();
+    private volatile long modifications;
+    private volatile Rendered rendered;
+
+    public void add(String thingName) {
+        addAll(Collections.singletonList(thingName));
+    }
+
+    /**
+     * Adds links to several things, notifying observers only once.
+     *
+     * @param thingNames names of the things
+     */
+    public void addAll(Collection<String> thingNames) {
+        for (String name : thingNames) {
+            String key = MultiBindingThingServer.urlize(name);
+            links.put(key, new HyperMediaLink("thing", Defines.BASE_THING_URL + key));
+        }
+        changed();
+    }
+
+    public void remove(String thingName) {
+        if (links.remove(MultiBindingThingServer.urlize(thingName)) != null) {
+            changed();
+        }
+    }
+
+    public int size() {
+        return links.size();
+    }
+
+    @Override
+    public Content onGet() {
+        Rendered current = rendered;
+        long version = modifications;
+        if (current == null || current.version != version) {
+            // a concurrent change bumps the version again, so a stale
+            // rendering is never served after the change returned
+            Content content = ContentHelper.wrap(new ArrayList<>(links.values()), MediaType.APPLICATION_JSON);
+            current = new Rendered(version, new CachedContent(content.getContent(), content.getMediaType()));
+            rendered = current;
+        }
+        return current.content;
+    }
+
+    private synchronized void changed() {
+        modifications++;
+        setChanged();
+        notifyObservers();
+    }
+
+    private static final class Rendered {
+        final long version;
+        final CachedContent content;
+
+        Rendered(long version, CachedContent content) {
+            this.version = version;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Runs property update handlers off the writing thread.
+ * <p>
+ * Every property gets its own bounded {@link PropertyQueue}. Values queued for
+ * one property are handed to its handlers strictly in order, while queues of
+ * different properties are drained concurrently by a fixed pool of threads.
+ * A queue drains at most {@link #BATCH_SIZE} values before yielding its thread,
+ * so a busy property cannot starve the others.
+ * <p>
+ * What happens when a queue is full is decided by the {@link OverflowPolicy}.
+ * Once the dispatcher is shut down, new values are dropped.
+ */
+public class UpdateDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(UpdateDispatcher.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    static final int BATCH_SIZE = 16;
+
+    private static UpdateDispatcher defaultDispatcher;
+
+    /**
+     * What to do when a value is queued for a property whose queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * the writer waits until the handlers caught up; handlers writing
+         * other properties drop the oldest value instead, they would wait
+         * for a thread of their own pool
+         */
+        BLOCK,
+        /** the oldest pending value is discarded */
+        DROP_OLDEST,
+        /** the newest pending value is replaced, handlers always see the latest value */
+        COALESCE
+    }
+
+    private final ExecutorService executor;
+    private volatile boolean closed;
+    private final int queueCapacity;
+    private final OverflowPolicy policy;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder handlerInvocations = new LongAdder();
+    private final LongAdder handlerNanos = new LongAdder();
+    private final AtomicLong maxHandlerNanos = new AtomicLong();
+
+    public UpdateDispatcher(int threads, int queueCapacity, OverflowPolicy policy) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        if (null == policy) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Worker(runnable, "update-dispatcher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The threads running handlers, recognized to keep handlers from
+     * blocking on full queues.
+     */
+    private static final class Worker extends Thread {
+        Worker(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+
+    /**
+     * Returns the dispatcher shared by all things that were not given one
+     * explicitly. It uses one thread per core and blocks writers on overflow.
+     *
+     * @return the default dispatcher
+     */
+    public static synchronized UpdateDispatcher getDefault() {
+        if (defaultDispatcher == null) {
+            defaultDispatcher = new UpdateDispatcher(
+                    Runtime.getRuntime().availableProcessors(),
+                    DEFAULT_QUEUE_CAPACITY,
+                    OverflowPolicy.BLOCK);
+        }
+        return defaultDispatcher;
+    }
+
+    /**
+     * Creates the queue for a single property.
+     *
+     * @param handlers the handlers to be called for every queued value; the
+     *                 list is read on every dispatch, so later additions are
+     *                 picked up
+     * @return the new queue
+     */
+    public PropertyQueue newQueue(List<Consumer<Object>> handlers) {
+        return new PropertyQueue(handlers);
+    }
+
+    /**
+     * Stops taking values. Values already queued are still handed to their
+     * handlers.
+     */
+    public void shutdown() {
+        closed = true;
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return number of values currently waiting in all queues of this dispatcher
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return number of values handed to handlers so far
+     */
+    public long getDispatchedCount() {
+        return dispatched.sum();
+    }
+
+    /**
+     * @return number of values discarded by {@link OverflowPolicy#DROP_OLDEST}
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return number of values replaced by {@link OverflowPolicy#COALESCE}
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return number of individual handler calls so far
+     */
+    public long getHandlerInvocations() {
+        return handlerInvocations.sum();
+    }
+
+    /**
+     * @return mean time spent in a single handler call, in nanoseconds
+     */
+    public long getMeanHandlerLatencyNanos() {
+        long invocations = handlerInvocations.sum();
+        return invocations == 0 ? 0 : handlerNanos.sum() / invocations;
+    }
+
+    /**
+     * @return longest time spent in a single handler call, in nanoseconds
+     */
+    public long getMaxHandlerLatencyNanos() {
+        return maxHandlerNanos.get();
+    }
+
+    private void runHandlers(List<Consumer<Object>> handlers, Object value) {
+        for (Consumer<Object> handler : handlers) {
+            final long start = System.nanoTime();
+            try {
+                handler.accept(value);
+            } catch (RuntimeException e) {
+                log.warn("update handler failed", e);
+            }
+            final long elapsed = System.nanoTime() - start;
+            handlerInvocations.increment();
+            handlerNanos.add(elapsed);
+            maxHandlerNanos.accumulateAndGet(elapsed, Math::max);
+        }
+        dispatched.increment();
+    }
+
+    /**
+     * Bounded, ordered queue of pending values for a single property.
+     */
+    public final class PropertyQueue {
+        private final List<Consumer<Object>> handlers;
+        private final ArrayDeque<Object> pending = new ArrayDeque<>();
+        private boolean scheduled;
+        // highest version queued so far, -1 if no versioned value was queued
+        private long queuedVersion = -1;
+
+        private PropertyQueue(List<Consumer<Object>> handlers) {
+            this.handlers = handlers;
+        }
+
+        /**
+         * Queues a value for the handlers of this property. Returns
+         * immediately unless the queue is full and the policy is
+         * {@link OverflowPolicy#BLOCK}.
+         *
+         * @param value the new value, must not be null
+         */
+        public void offer(Object value) {
+            offer(value, -1);
+        }
+
+        /**
+         * Queues a value written at the given version. Values older than one
+         * already queued are skipped, so concurrent writers that queue in a
+         * different order than they committed still leave the handlers with
+         * the latest value.
+         *
+         * @param value   the new value, must not be null
+         * @param version the version of the value, see {@link VersionedValue}
+         */
+        public void offer(Object value, long version) {
+            if (null == value) {
+                throw new IllegalArgumentException("value must not be null");
+            }
+            if (handlers.isEmpty() || closed) {
+                return;
+            }
+
+            synchronized (this) {
+                if (isStale(version)) {
+                    return;
+                }
+                if (pending.size() >= queueCapacity && !overflow(value)) {
+                    queuedVersion = Math.max(queuedVersion, version);
+                    return;
+                }
+                if (isStale(version)) {
+                    // a newer value was queued while waiting for room
+                    return;
+                }
+
+                queuedVersion = Math.max(queuedVersion, version);
+                pending.addLast(value);
+                queueDepth.incrementAndGet();
+                if (!scheduled) {
+                    schedule();
+                }
+            }
+        }
+
+        // called with the monitor held
+        private void schedule() {
+            scheduled = true;
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // shut down, no thread is left to run the handlers
+                scheduled = false;
+                dropped.add(pending.size());
+                queueDepth.addAndGet(-pending.size());
+                pending.clear();
+                notifyAll();
+            }
+        }
+
+        private boolean isStale(long version) {
+            return version >= 0 && version <= queuedVersion;
+        }
+
+        /**
+         * @return number of values waiting for this property
+         */
+        public synchronized int size() {
+            return pending.size();
+        }
+
+        /**
+         * Applies the overflow policy, called with the monitor held.
+         *
+         * @return true if value still needs to be appended
+         */
+        private boolean overflow(Object value) {
+            OverflowPolicy effective = policy;
+            if (effective == OverflowPolicy.BLOCK && Thread.currentThread() instanceof Worker) {
+                // a handler would wait for a drain that may be queued behind it
+                effective = OverflowPolicy.DROP_OLDEST;
+            }
+
+            switch (effective) {
+                case BLOCK:
+                    boolean interrupted = false;
+                    while (pending.size() >= queueCapacity) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return true;
+                case DROP_OLDEST:
+                    pending.pollFirst();
+                    queueDepth.decrementAndGet();
+                    dropped.increment();
+                    return true;
+                case COALESCE:
+                default:
+                    pending.pollLast();
+                    pending.addLast(value);
+                    coalesced.increment();
+                    return false;
+            }
+        }
+
+        private void drain() {
+            try {
+                // once shut down a queue is drained to the end, it could not
+                // be scheduled again
+                for (int i = 0; i < BATCH_SIZE || closed; i++) {
+                    Object value;
+                    synchronized (this) {
+                        value = pending.pollFirst();
+                        if (value == null) {
+                            scheduled = false;
+                            return;
+                        }
+                        queueDepth.decrementAndGet();
+                        notifyAll();
+                    }
+                    runHandlers(handlers, value);
+                }
+            } finally {
+                synchronized (this) {
+                    if (scheduled) {
+                        // batch exhausted, give other properties a turn
+                        schedule();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient.impl;
+
+import de.thingweb.thing.Content;
+import de.thingweb.thing.MediaType;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Immutable pairing of a property value with the version it was written at.
+ * <p>
+ * Versions start at 0 for the initial value of a property and increase by one
+ * with every successful write, so they can be compared to detect changes.
+ * <p>
+ * A VersionedValue also caches the encoded {@link Content} of its value per
+ * media type. Since every write creates a new VersionedValue, the cache is
+ * invalidated implicitly and never needs to be cleared.
+ */
+public final class VersionedValue {
+
+    private static final int MEDIA_TYPE_COUNT = MediaType.values().length;
+
+    private final Object value;
+    private final long version;
+    private final AtomicReferenceArray<Content> encoded = new AtomicReferenceArray<>(MEDIA_TYPE_COUNT);
+
+    public VersionedValue(Object value, long version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the value encoded as the given media type, encoding it on
+     * first use only. Repeated calls return the same Content instance.
+     *
+     * @param mediaType the media type to encode to
+     * @param encoder   creates the Content if it is not cached yet
+     * @return the encoded value
+     */
+    public Content getEncoded(MediaType mediaType, Function<Object, Content> encoder) {
+        final int slot = mediaType.ordinal();
+        Content content = encoded.get(slot);
+        if (content == null) {
+            content = encoder.apply(value);
+            if (!encoded.compareAndSet(slot, null, content)) {
+                // lost the race against a concurrent reader, hand out its bytes
+                content = encoded.get(slot);
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Creates the successor of this value.
+     *
+     * @param newValue the new value
+     * @return a VersionedValue holding newValue with the next version number
+     */
+    public VersionedValue next(Object newValue) {
+        return new VersionedValue(newValue, version + 1);
+    }
+}
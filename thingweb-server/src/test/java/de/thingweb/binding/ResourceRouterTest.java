@@ -0,0 +1,136 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ResourceRouterTest {
+
+    @Test
+    public void literalRoutesAreCaseInsensitive() {
+        ResourceRouter<String> router = new ResourceRouter<>();
+        router.add("/things/Lamp/on", "on");
+        router.add("/things", "things");
+
+        assertThat(router.find("/things/lamp/ON"), is("on"));
+        assertThat(router.find("things/LAMP/on/"), is("on"));
+        assertThat(router.find("/Things"), is("things"));
+        assertThat(router.find("/things/lamp"), nullValue());
+        assertThat(router.find(Arrays.asList("things", "lamp", "on")), is("on"));
+    }
+
+    @Test
+    public void templatesCaptureParameters() {
+        ResourceRouter<String> router = new ResourceRouter<>();
+        router.add("/things/{thing}/{property}", "property");
+        router.add("/things/{thing}/.well-known", "description");
+
+        Map<String, String> params = new HashMap<>();
+        assertThat(router.find("/things/Lamp/brightness", params), is("property"));
+        assertThat(params, hasEntry("thing", "Lamp"));
+        assertThat(params, hasEntry("property", "brightness"));
+
+        params.clear();
+        assertThat(router.find("/things/lamp/.WELL-KNOWN", params), is("description"));
+        assertThat(params, hasEntry("thing", "lamp"));
+        assertThat(params.size(), is(1));
+
+        assertThat(router.find("/things/lamp"), nullValue());
+    }
+
+    @Test
+    public void literalsTakePrecedenceOverParameters() {
+        ResourceRouter<String> router = new ResourceRouter<>();
+        router.add("/things/{thing}/{property}", "template");
+        router.add("/things/lamp/on", "literal");
+
+        assertThat(router.find("/things/lamp/on"), is("literal"));
+        // falls back to the template when the literal branch does not match
+        assertThat(router.find("/things/lamp/off"), is("template"));
+    }
+
+    @Test
+    public void removeAndPrefixes() {
+        ResourceRouter<String> router = new ResourceRouter<>();
+        router.addPrefix("/things", "all");
+        router.addPrefix("/things/lamp", "lamp");
+        router.add("/things/lamp/on", "on");
+
+        assertThat(router.findPrefix("/things/LAMP/off"), is("lamp"));
+        assertThat(router.findPrefix("/things/fan/on"), is("all"));
+        assertThat(router.findPrefix("/actions"), nullValue());
+
+        assertThat(router.remove("/things/lamp/ON"), is("on"));
+        assertThat(router.find("/things/lamp/on"), nullValue());
+        assertThat(router.removePrefix("/things/lamp"), is("lamp"));
+        assertThat(router.findPrefix("/things/lamp/on"), is("all"));
+    }
+
+    @Test
+    public void manyChildren() {
+        ResourceRouter<Integer> router = new ResourceRouter<>();
+        for (int i = 0; i < 10000; i++) {
+            router.add("/things/thing" + i + "/value", i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertThat(router.find("/things/THING" + i + "/value"), is(i));
+        }
+        assertThat(router.find("/things/thing10000/value"), nullValue());
+    }
+
+    @Test
+    public void removedRoutesReleaseTheirNodes() {
+        ResourceRouter<Integer> router = new ResourceRouter<>();
+        router.add("/things/lamp/on", 0);
+        router.add("/things/{thing}/history", 1);
+        int before = router.nodeCount();
+
+        for (int i = 0; i < 1000; i++) {
+            router.add("/things/lamp/on/executions/" + i, i);
+        }
+        assertThat(router.nodeCount(), is(before + 1001));
+        for (int i = 0; i < 1000; i++) {
+            router.remove("/things/lamp/on/executions/" + i);
+        }
+        assertThat(router.nodeCount(), is(before));
+        assertThat(router.find("/things/lamp/on"), is(0));
+
+        router.remove("/things/{thing}/history");
+        router.remove("/things/lamp/on");
+        assertThat(router.nodeCount(), is(0));
+        router.addPrefix("/static/files", 2);
+        router.removePrefix("/static/files");
+        assertThat(router.nodeCount(), is(0));
+    }
+}
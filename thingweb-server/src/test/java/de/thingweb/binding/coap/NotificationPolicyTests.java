@@ -0,0 +1,142 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.coap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.thingweb.servient.Servient;
+import de.thingweb.servient.ThingInterface;
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapObserveRelation;
+import org.eclipse.californium.core.CoapResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class NotificationPolicyTests {
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final BlockingQueue<Integer> notified = new LinkedBlockingQueue<>();
+    private Servient servient;
+    private ThingInterface thing;
+    private CoapObserveRelation relation;
+
+    @Before
+    public void setUp() throws Exception {
+        servient = Servient.getBuilder()
+                .setHttpPort(8781)
+                .setCoapPort(5981)
+                .build();
+        Thing model = new Thing("sensor");
+        model.addProperty(Property.getBuilder("level").setWriteable(true).build());
+        thing = servient.getThingServer().addThing(model);
+        thing.setProperty("level", 0);
+        servient.start();
+    }
+
+    @Test
+    public void changesWithinMinIntervalAreCoalesced() throws Exception {
+        CoapBinding coap = servient.getCoapBinding();
+        coap.setNotificationPolicy("/things/{thing}/level",
+                NotificationPolicy.getBuilder().setMinInterval(200).build());
+        observe();
+        assertThat(next(), is(0));
+
+        for (int i = 1; i <= 1000; i++) {
+            thing.setProperty("level", i);
+        }
+        int notifications = 0;
+        int latest = 0;
+        while (latest != 1000) {
+            latest = next();
+            notifications++;
+        }
+        assertThat(notifications, lessThan(20));
+        assertThat(coap.getNotificationsSuppressed(), greaterThan(900L));
+        assertThat(coap.getNotificationsSent(), is((long) notifications));
+    }
+
+    @Test
+    public void smallChangesWaitForTheHeartbeat() throws Exception {
+        servient.getCoapBinding().setDefaultNotificationPolicy(NotificationPolicy.getBuilder()
+                .setThreshold(5)
+                .setMaxInterval(1000)
+                .build());
+        observe();
+        assertThat(next(), is(0));
+
+        thing.setProperty("level", 2);
+        thing.setProperty("level", 4);
+        assertThat(notified.poll(500, TimeUnit.MILLISECONDS), is(nullValue()));
+        thing.setProperty("level", 9);
+        assertThat(next(), is(9));
+
+        // nothing changes, observers hear from the resource anyway
+        assertThat(next(), is(9));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (relation != null) {
+            relation.proactiveCancel();
+        }
+        servient.close();
+    }
+
+    private void observe() {
+        relation = new CoapClient("coap://localhost:5981/things/sensor/level").observe(new CoapHandler() {
+            @Override
+            public void onLoad(CoapResponse response) {
+                try {
+                    notified.add(jsonMapper.readTree(response.getPayload()).get("value").asInt());
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+
+            @Override
+            public void onError() {
+            }
+        });
+    }
+
+    private int next() throws InterruptedException {
+        Integer value = notified.poll(5, TimeUnit.SECONDS);
+        assertThat("no notification", value, is(notNullValue()));
+        return value;
+    }
+}
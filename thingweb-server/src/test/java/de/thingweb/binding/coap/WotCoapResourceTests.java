@@ -0,0 +1,53 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.coap;
+
+import de.thingweb.binding.AbstractRESTListener;
+import org.eclipse.californium.core.server.resources.Resource;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class WotCoapResourceTests {
+
+    @Test
+    public void caseVariantsShareOneResolvedChild() {
+        WotCoapResource lamp = new WotCoapResource("lamp", new AbstractRESTListener());
+        AbstractRESTListener level = new AbstractRESTListener();
+        lamp.setResolver(url -> url.toLowerCase().endsWith("lamp/level") ? level : null);
+
+        Resource child = lamp.getChild("level");
+        assertThat(child, notNullValue());
+        assertThat(lamp.getChild("LEVEL"), sameInstance(child));
+        assertThat(lamp.getChild("Level"), sameInstance(child));
+        assertThat(lamp.getChild("unknown"), nullValue());
+
+        assertThat(lamp.getChildren().size(), is(1));
+        assertThat(level.countObservers(), is(1));
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.mqtt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An in-JVM MQTT 3.1.1 broker for tests: QoS 0, retained messages, topic
+ * wildcards and nothing else.
+ */
+public class EmbeddedBroker implements Closeable {
+
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private final List<Session> sessions = new CopyOnWriteArrayList<>();
+    private final Map<String, byte[]> retained = new ConcurrentHashMap<>();
+
+    public EmbeddedBroker(int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        acceptor = new Thread(this::accept, "broker-" + port);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                Session session = new Session(serverSocket.accept());
+                Thread thread = new Thread(session, "broker-session");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException e) {
+            // closed
+        }
+    }
+
+    private void route(String topic, byte[] payload, boolean retain) throws IOException {
+        if (retain) {
+            if (payload.length == 0) {
+                retained.remove(topic);
+            } else {
+                retained.put(topic, payload);
+            }
+        }
+        for (Session session : sessions) {
+            for (String filter : session.filters) {
+                if (matches(filter, topic)) {
+                    session.publish(topic, payload, false);
+                    break;
+                }
+            }
+        }
+    }
+
+    static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            }
+            if (i >= topicLevels.length || !(filterLevels[i].equals("+") || filterLevels[i].equals(topicLevels[i]))) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Session session : sessions) {
+            session.socket.close();
+        }
+        try {
+            // the port is released once the accepting thread returned
+            acceptor.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class Session implements Runnable {
+        final Socket socket;
+        final List<String> filters = new CopyOnWriteArrayList<>();
+        private final DataInputStream in;
+        private final OutputStream out;
+
+        Session(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(socket.getInputStream());
+            this.out = socket.getOutputStream();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    int header = in.readUnsignedByte();
+                    int length = 0;
+                    int shift = 0;
+                    int digit;
+                    do {
+                        digit = in.readUnsignedByte();
+                        length |= (digit & 0x7f) << shift;
+                        shift += 7;
+                    } while ((digit & 0x80) != 0);
+                    byte[] packet = new byte[length];
+                    in.readFully(packet);
+
+                    switch (header >>> 4) {
+                        case MqttConnection.CONNECT:
+                            sessions.add(this);
+                            send(MqttConnection.CONNACK << 4, new byte[]{0, 0});
+                            break;
+                        case MqttConnection.PUBLISH:
+                            int topicLength = ((packet[0] & 0xff) << 8) | (packet[1] & 0xff);
+                            String topic = new String(packet, 2, topicLength, StandardCharsets.UTF_8);
+                            byte[] payload = new byte[packet.length - 2 - topicLength];
+                            System.arraycopy(packet, 2 + topicLength, payload, 0, payload.length);
+                            route(topic, payload, (header & 1) != 0);
+                            break;
+                        case MqttConnection.SUBSCRIBE:
+                            subscribe(packet);
+                            break;
+                        case MqttConnection.PINGREQ:
+                            send(MqttConnection.PINGRESP << 4, new byte[0]);
+                            break;
+                        case MqttConnection.DISCONNECT:
+                            return;
+                        default:
+                            break;
+                    }
+                }
+            } catch (IOException e) {
+                // session ends
+            } finally {
+                sessions.remove(this);
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+        }
+
+        private void subscribe(byte[] packet) throws IOException {
+            List<String> added = new ArrayList<>();
+            ByteArrayOutputStream ack = new ByteArrayOutputStream();
+            ack.write(packet[0]);
+            ack.write(packet[1]);
+            int offset = 2;
+            while (offset < packet.length) {
+                int filterLength = ((packet[offset] & 0xff) << 8) | (packet[offset + 1] & 0xff);
+                added.add(new String(packet, offset + 2, filterLength, StandardCharsets.UTF_8));
+                offset += 2 + filterLength + 1;
+                ack.write(0);
+            }
+            filters.addAll(added);
+            send(MqttConnection.SUBACK << 4, ack.toByteArray());
+
+            for (Map.Entry<String, byte[]> entry : retained.entrySet()) {
+                for (String filter : added) {
+                    if (matches(filter, entry.getKey())) {
+                        publish(entry.getKey(), entry.getValue(), true);
+                        break;
+                    }
+                }
+            }
+        }
+
+        void publish(String topic, byte[] payload, boolean retain) throws IOException {
+            byte[] name = topic.getBytes(StandardCharsets.UTF_8);
+            byte[] packet = new byte[2 + name.length + payload.length];
+            packet[0] = (byte) (name.length >>> 8);
+            packet[1] = (byte) name.length;
+            System.arraycopy(name, 0, packet, 2, name.length);
+            System.arraycopy(payload, 0, packet, 2 + name.length, payload.length);
+            send((MqttConnection.PUBLISH << 4) | (retain ? 1 : 0), packet);
+        }
+
+        private synchronized void send(int header, byte[] body) throws IOException {
+            ByteArrayOutputStream packet = new ByteArrayOutputStream();
+            packet.write(header);
+            int length = body.length;
+            do {
+                int digit = length & 0x7f;
+                length >>>= 7;
+                packet.write((length > 0) ? digit | 0x80 : digit);
+            } while (length > 0);
+            packet.write(body);
+            out.write(packet.toByteArray());
+        }
+    }
+}
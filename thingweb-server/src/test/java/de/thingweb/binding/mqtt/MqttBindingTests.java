@@ -0,0 +1,152 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.binding.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.thingweb.servient.Servient;
+import de.thingweb.servient.ThingInterface;
+import de.thingweb.servient.impl.MultiBindingThingServer;
+import de.thingweb.servient.impl.MultiBindingThingServer.RoutingMode;
+import de.thingweb.thing.Action;
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class MqttBindingTests {
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final BlockingQueue<String[]> received = new LinkedBlockingQueue<>();
+    private EmbeddedBroker broker;
+    private Servient servient;
+    private ThingInterface thing;
+    private MqttConnection client;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new EmbeddedBroker(18830);
+        servient = Servient.getBuilder()
+                .setHttpPort(8681)
+                .setCoapPort(5781)
+                .setMqttBroker("localhost", 18830)
+                .build();
+        Thing model = new Thing("lamp");
+        model.addProperty(Property.getBuilder("brightness").setWriteable(true).build());
+        model.addAction(Action.getBuilder("double").build());
+        thing = servient.getThingServer().addThing(model);
+        thing.setProperty("brightness", 10);
+        servient.start();
+
+        client = new MqttConnection("localhost", 18830, "test", 0,
+                (topic, payload) -> received.add(new String[]{topic, new String(payload, StandardCharsets.UTF_8)}));
+    }
+
+    @Test
+    public void propertiesArePublishedRetained() throws Exception {
+        client.subscribe("things/lamp/brightness");
+        assertThat(valueOf(next("things/lamp/brightness")), is(10));
+
+        thing.setProperty("brightness", 11);
+        assertThat(valueOf(next("things/lamp/brightness")), is(11));
+    }
+
+    @Test
+    public void changesAreCoalescedUnderLoad() throws Exception {
+        client.subscribe("things/lamp/brightness");
+        assertThat(valueOf(next("things/lamp/brightness")), is(10));
+
+        for (int i = 1; i <= 1000; i++) {
+            thing.setProperty("brightness", i);
+        }
+        int messages = 0;
+        int latest = 0;
+        while (latest != 1000) {
+            latest = valueOf(next("things/lamp/brightness"));
+            messages++;
+        }
+        assertThat(messages, lessThan(1000));
+    }
+
+    @Test
+    public void setAndInvokeTopics() throws Exception {
+        thing.onInvoke("double", value -> 2 * (Integer) value);
+        client.subscribe("things/lamp/double/result");
+
+        client.publish("things/lamp/brightness/set", "{\"value\": 42}".getBytes(StandardCharsets.UTF_8), false);
+        client.publish("things/lamp/double/invoke", "{\"value\": 21}".getBytes(StandardCharsets.UTF_8), false);
+        client.flush();
+
+        assertThat(next("things/lamp/double/result"), containsString("42"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!thing.getProperty("brightness").equals(42) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(thing.getProperty("brightness"), is((Object) 42));
+    }
+
+    @Test
+    public void lazyRoutingIsRefused() throws Exception {
+        MultiBindingThingServer server = (MultiBindingThingServer) servient.newThingServer();
+        try {
+            server.setRoutingMode(RoutingMode.LAZY);
+            fail("MQTT cannot publish lazily resolved resources");
+        } catch (UnsupportedOperationException expected) {
+            assertThat(server.getRoutingMode(), is(RoutingMode.EAGER));
+        }
+    }
+
+    private String next(String topic) throws InterruptedException {
+        while (true) {
+            String[] message = received.poll(5, TimeUnit.SECONDS);
+            assertThat("no message to " + topic, message, is(notNullValue()));
+            if (message[0].equals(topic)) {
+                return message[1];
+            }
+        }
+    }
+
+    private int valueOf(String json) throws Exception {
+        return jsonMapper.readTree(json).get("value").asInt();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        servient.close();
+        broker.close();
+    }
+}
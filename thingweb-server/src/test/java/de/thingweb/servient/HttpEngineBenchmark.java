@@ -0,0 +1,110 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import de.thingweb.binding.http.HttpBinding;
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP load test comparing the {@link HttpBinding.Engine}s.
+ * <p>
+ * Serves the same 1000 things with each engine and prints the property
+ * reads per second a number of client threads achieve over keep-alive
+ * connections.
+ * Usage: <code>HttpEngineBenchmark [clients [seconds]]</code>
+ */
+public class HttpEngineBenchmark {
+
+    private static final int THINGS = 1000;
+    private static final int PORT = 8491;
+
+    public static void main(String[] args) throws Exception {
+        int clients = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+        int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+        System.out.println("  engine  clients     reads/s");
+        for (HttpBinding.Engine engine : HttpBinding.Engine.values()) {
+            System.out.printf("%8s %8d %11d%n", engine, clients, run(engine, clients, seconds));
+        }
+    }
+
+    private static long run(HttpBinding.Engine engine, int clients, int seconds) throws Exception {
+        try (Servient servient = Servient.getBuilder()
+                .setHttpPort(PORT)
+                .setCoapPort(5691)
+                .setHttpEngine(engine)
+                .build()) {
+            List<Thing> things = new ArrayList<>(THINGS);
+            for (int i = 0; i < THINGS; i++) {
+                Thing thing = new Thing("thing" + i);
+                thing.addProperty(Property.getBuilder("temperature").build());
+                things.add(thing);
+            }
+            servient.getThingServer().addThings(things).forEach(thing -> thing.setProperty("temperature", 21.5));
+            servient.start();
+
+            LongAdder reads = new LongAdder();
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            List<Thread> threads = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                final int client = c;
+                Thread thread = new Thread(() -> {
+                    byte[] buffer = new byte[1024];
+                    int i = client;
+                    while (System.nanoTime() < deadline) {
+                        try {
+                            URL url = new URL("http://127.0.0.1:" + PORT + "/things/thing" + (i++ % THINGS) + "/temperature");
+                            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                            try (InputStream in = connection.getInputStream()) {
+                                while (in.read(buffer) >= 0) {
+                                    // drain to reuse the connection
+                                }
+                            }
+                            reads.increment();
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            return reads.sum() / seconds;
+        }
+    }
+}
@@ -29,15 +29,27 @@ package de.thingweb.servient;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import de.thingweb.servient.impl.MultiBindingThingServer;
 import de.thingweb.thing.Action;
 import de.thingweb.thing.Property;
 import de.thingweb.thing.Thing;
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapObserveRelation;
+import org.eclipse.californium.core.CoapResponse;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -87,6 +99,132 @@ public class MultiThingTests {
         });
     }
 
+    @Test
+    public void addThingsInOneBatch() throws Exception {
+        List<Thing> things = new ArrayList<>();
+        for (String name : Arrays.asList("delta", "alpha", "charlie", "bravo")) {
+            Thing thing = new Thing(name);
+            thing.addProperty(Property.getBuilder("testProp").build());
+            things.add(thing);
+        }
+
+        List<ThingInterface> added = server.addThings(things);
+        assertThat(added.size(), is(things.size()));
+
+        ServientBuilder.start();
+
+        ArrayNode links = (ArrayNode) jsonMapper.readTree(new URL("http://localhost:8080/things/"));
+        List<String> hrefs = new ArrayList<>();
+        links.forEach(link -> hrefs.add(link.get("href").textValue()));
+        assertThat(hrefs, contains("/things/alpha", "/things/bravo", "/things/charlie", "/things/delta"));
+
+        JsonNode thingLinks = jsonMapper.readTree(new URL("http://localhost:8080/things/charlie"));
+        assertThat(thingLinks.isArray(), is(true));
+    }
+
+    @Test
+    public void replaceAndRemoveThing() throws Exception {
+        Thing original = new Thing("Swappable");
+        original.addProperty(Property.getBuilder("kept").setWriteable(true).build());
+        original.addProperty(Property.getBuilder("dropped").build());
+        ThingInterface thing = server.addThing(original);
+        thing.setProperty("kept", 1);
+
+        ServientBuilder.start();
+
+        CoapClient client = new CoapClient("coap://localhost:5683/things/Swappable/kept");
+        List<String> notifications = new CopyOnWriteArrayList<>();
+        CountDownLatch notified = new CountDownLatch(1);
+        CoapObserveRelation relation = client.observe(new CoapHandler() {
+            @Override
+            public void onLoad(CoapResponse response) {
+                notifications.add(response.getResponseText());
+                if (response.getResponseText().contains("2")) {
+                    notified.countDown();
+                }
+            }
+
+            @Override
+            public void onError() {
+            }
+        });
+
+        Thing replacement = new Thing("Swappable");
+        replacement.addProperty(Property.getBuilder("kept").setWriteable(true).build());
+        replacement.addProperty(Property.getBuilder("added").build());
+        ThingInterface replaced = server.replaceThing(replacement);
+
+        assertThat(replaced.getProperty("kept"), is((Object) 1));
+        assertThat(server.getThing("Swappable"), is(replaced));
+        assertThat(jsonMapper.readTree(new URL("http://localhost:8080/things/swappable/added")), notNullValue());
+        assertThat(status("http://localhost:8080/things/swappable/dropped"), is(404));
+
+        // the observe relation survived the swap and follows the new thing
+        replaced.setProperty("kept", 2);
+        assertThat(notified.await(5, TimeUnit.SECONDS), is(true));
+        relation.proactiveCancel();
+
+        assertThat(server.removeThing("Swappable"), is(true));
+        assertThat(server.getThing("Swappable"), nullValue());
+        assertThat(status("http://localhost:8080/things/swappable/kept"), is(404));
+        assertThat(jsonMapper.readTree(new URL("http://localhost:8080/things/")).toString(),
+                not(containsString("swappable")));
+    }
+
+    @Test
+    public void addingAgainReplaces() throws Exception {
+        Thing original = new Thing("Twice");
+        original.addProperty(Property.getBuilder("old").build());
+        ThingInterface first = server.addThing(original);
+
+        ServientBuilder.start();
+
+        Thing again = new Thing("Twice");
+        again.addProperty(Property.getBuilder("new").build());
+        ThingInterface second = server.addThing(again);
+
+        assertThat(second, not(sameInstance(first)));
+        assertThat(server.getThing("Twice"), is(second));
+        assertThat(status("http://localhost:8080/things/twice/old"), is(404));
+        assertThat(jsonMapper.readTree(new URL("http://localhost:8080/things/twice/new")), notNullValue());
+    }
+
+    @Test
+    public void lazyRouting() throws Exception {
+        MultiBindingThingServer lazyServer = (MultiBindingThingServer) server;
+        lazyServer.setRoutingMode(MultiBindingThingServer.RoutingMode.LAZY);
+
+        Thing model = new Thing("Lazy");
+        model.addProperty(Property.getBuilder("level").setWriteable(true).build());
+        model.addAction(Action.getBuilder("reset").build());
+        ThingInterface thing = server.addThing(model);
+        thing.setProperty("level", 5);
+
+        ServientBuilder.start();
+
+        try {
+            JsonNode index = jsonMapper.readTree(new URL("http://localhost:8080/things/lazy"));
+            assertThat(index.toString(), containsString("/things/lazy/level"));
+            assertThat(jsonMapper.readTree(new URL("http://localhost:8080/things/lazy/level")).get("value").asInt(), is(5));
+            assertThat(jsonMapper.readTree(new URL("http://localhost:8080/things/Lazy/LEVEL/value")).get("value").asInt(), is(5));
+            assertThat(status("http://localhost:8080/things/lazy/unknown"), is(404));
+
+            CoapResponse response = new CoapClient("coap://localhost:5683/things/Lazy/level").get();
+            assertThat(response.getResponseText(), containsString("5"));
+
+            assertThat(server.removeThing("Lazy"), is(true));
+            assertThat(status("http://localhost:8080/things/lazy/level"), is(404));
+            assertThat(new CoapClient("coap://localhost:5683/things/Lazy/level").get().isSuccess(), is(false));
+        } finally {
+            server.removeThing("Lazy");
+            lazyServer.setRoutingMode(MultiBindingThingServer.RoutingMode.EAGER);
+        }
+    }
+
+    private static int status(String url) throws IOException {
+        return ((HttpURLConnection) new URL(url).openConnection()).getResponseCode();
+    }
+
     @Test
     public void notUrlConformNames() throws Exception {
         final Thing thing = new Thing("Ugly strange näime");
@@ -0,0 +1,210 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.thingweb.binding.http.HttpBinding;
+import de.thingweb.binding.http.NioHttpServer;
+import de.thingweb.thing.MediaType;
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class NioHttpServerTests {
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private Servient servient;
+    private ThingInterface thing;
+
+    @Before
+    public void setUp() throws Exception {
+        servient = Servient.getBuilder()
+                .setHttpPort(8481)
+                .setCoapPort(5981)
+                .setHttpEngine(HttpBinding.Engine.NIO)
+                .build();
+        Thing model = new Thing("lamp");
+        model.addProperty(Property.getBuilder("brightness").setWriteable(true).build());
+        model.addProperty(Property.getBuilder("color").build());
+        thing = servient.getThingServer().addThing(model);
+        thing.setProperty("brightness", 10);
+        thing.setProperty("color", "red");
+        servient.start();
+    }
+
+    @Test
+    public void readAndWriteProperty() throws Exception {
+        assertThat(jsonMapper.readTree(new URL("http://localhost:8481/things/lamp/brightness")).get("value").asInt(), is(10));
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8481/things/lamp/brightness").openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("PUT");
+        connection.setRequestProperty("content-type", MediaType.APPLICATION_JSON.mediaType);
+        connection.getOutputStream().write("{ \"value\" : 42 }".getBytes());
+        assertThat(connection.getResponseCode(), is(200));
+
+        assertThat(thing.getProperty("brightness"), is((Object) 42));
+        assertThat(status("http://localhost:8481/things/lamp/unknown"), is(404));
+    }
+
+    @Test
+    public void pipelinedRequestsAreAnsweredInOrder() throws Exception {
+        try (Socket socket = new Socket("localhost", 8481)) {
+            socket.getOutputStream().write((
+                    "GET /things/lamp/brightness HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                            + "GET /things/lamp/color HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                            + "GET /things/lamp/brightness HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+            ).getBytes(StandardCharsets.US_ASCII));
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertThat(readBody(reader), containsString("10"));
+            assertThat(readBody(reader), containsString("red"));
+            assertThat(readBody(reader), containsString("10"));
+            assertThat(reader.readLine(), nullValue());
+        }
+    }
+
+    @Test
+    public void eventStreamDeliversChanges() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8481/things/lamp/brightness").openConnection();
+        connection.setRequestProperty("Accept", "text/event-stream");
+        connection.setReadTimeout(5000);
+        assertThat(connection.getContentType(), is("text/event-stream"));
+
+        try (BufferedReader events = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            assertThat(TestTools.nextEvent(events), containsString("10"));
+            thing.setProperty("brightness", 11);
+            assertThat(TestTools.nextEvent(events), containsString("11"));
+        }
+    }
+
+    @Test
+    public void longPollWaitsForChange() throws Exception {
+        String url = "http://localhost:8481/things/lamp/brightness";
+        String etag = new URL(url).openConnection().getHeaderField("ETag");
+        String poll = url + "?waitFor=" + URLEncoder.encode(etag, "UTF-8");
+
+        CompletableFuture<String> changed = CompletableFuture.supplyAsync(() -> {
+            try {
+                return TestTools.fromUrl(poll + "&timeout=10s");
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertThat(changed.isDone(), is(false));
+        thing.setProperty("brightness", 12);
+        assertThat(changed.get(5, TimeUnit.SECONDS), containsString("12"));
+
+        String current = new URL(url).openConnection().getHeaderField("ETag");
+        HttpURLConnection unchanged = (HttpURLConnection) new URL(url + "?waitFor="
+                + URLEncoder.encode(current, "UTF-8") + "&timeout=200ms").openConnection();
+        unchanged.setRequestProperty("If-None-Match", current);
+        assertThat(unchanged.getResponseCode(), is(304));
+    }
+
+    @Test
+    public void clientThatDoesNotReadIsNotBuffered() throws Exception {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            large.append('x');
+        }
+        thing.setProperty("color", large.toString());
+        int requests = 10000;
+        byte[] request = "GET /things/lamp/color HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(64 * 1024);
+            socket.connect(new InetSocketAddress("localhost", 8481));
+            OutputStream out = socket.getOutputStream();
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < requests; i++) {
+                        out.write(request);
+                    }
+                } catch (IOException e) {
+                    // closed by the test
+                }
+            });
+            writer.start();
+            Thread.sleep(2000);
+            // far less than the 20MB all answers would take
+            assertThat(((NioHttpServer) servient.getHttpServer()).getPendingOutput(), lessThan(1024 * 1024L));
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for (int i = 0; i < requests; i++) {
+                assertThat(readBody(reader), containsString("xxx"));
+            }
+            writer.join();
+        }
+    }
+
+    private static String readBody(BufferedReader reader) throws IOException {
+        assertThat(reader.readLine(), is("HTTP/1.1 200 OK"));
+        int length = 0;
+        String line;
+        while (!(line = reader.readLine()).isEmpty()) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                length = Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+        }
+        char[] body = new char[length];
+        int read = 0;
+        while (read < length) {
+            read += reader.read(body, read, length - read);
+        }
+        return new String(body);
+    }
+
+    private static int status(String url) throws IOException {
+        return ((HttpURLConnection) new URL(url).openConnection()).getResponseCode();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        servient.close();
+    }
+}
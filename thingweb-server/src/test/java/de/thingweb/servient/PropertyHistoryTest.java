@@ -0,0 +1,99 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import de.thingweb.servient.impl.PropertyHistory;
+import de.thingweb.servient.impl.PropertyHistoryListener;
+import de.thingweb.thing.Property;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class PropertyHistoryTest {
+
+    @Test
+    public void keepsNewestSamplesWhenFull() {
+        PropertyHistory history = new PropertyHistory(4);
+        for (int i = 0; i < 10; i++) {
+            history.append(1000 + i, i);
+        }
+
+        PropertyHistory.Samples samples = history.query(0, 100);
+        assertThat(history.size(), is(4));
+        assertThat(samples.size(), is(4));
+        assertThat(samples.getTimestamp(0), is(1006L));
+        assertThat(samples.getValue(3), is(9.0));
+    }
+
+    @Test
+    public void queriesFromTimestampWithLimit() {
+        PropertyHistory history = new PropertyHistory(16);
+        for (int i = 0; i < 10; i++) {
+            history.append(1000 + 10 * i, i);
+        }
+
+        PropertyHistory.Samples samples = history.query(1035, 2);
+        assertThat(samples.size(), is(2));
+        assertThat(samples.getTimestamp(0), is(1040L));
+        assertThat(samples.getValue(1), is(5.0));
+    }
+
+    @Test
+    public void returnsNewestSamplesWithoutSince() {
+        PropertyHistory history = new PropertyHistory(16);
+        for (int i = 0; i < 10; i++) {
+            history.append(1000 + i, i);
+        }
+
+        PropertyHistory.Samples samples = history.latest(3);
+        assertThat(samples.size(), is(3));
+        assertThat(samples.getTimestamp(0), is(1007L));
+        assertThat(samples.getValue(2), is(9.0));
+
+        PropertyHistoryListener listener =
+                new PropertyHistoryListener(Property.getBuilder("p").build(), history);
+        String body = new String(listener.onGet(Collections.singletonMap("limit", "2")).getContent(),
+                StandardCharsets.UTF_8);
+        assertThat(body, containsString("1008"));
+        assertThat(body, containsString("1009"));
+        assertThat(body, not(containsString("1000")));
+    }
+
+    @Test
+    public void ignoresNonNumericValues() {
+        PropertyHistory history = new PropertyHistory(4);
+
+        assertThat(history.record(1, "text"), is(false));
+        assertThat(history.record(2, true), is(true));
+        assertThat(history.record(3, 7), is(true));
+        assertThat(history.query(0, 10).size(), is(2));
+    }
+}
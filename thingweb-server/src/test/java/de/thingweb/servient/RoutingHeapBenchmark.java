@@ -0,0 +1,140 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import de.thingweb.binding.RESTListener;
+import de.thingweb.binding.ResourceBuilder;
+import de.thingweb.binding.ResourceResolver;
+import de.thingweb.servient.impl.MultiBindingThingServer;
+import de.thingweb.servient.impl.MultiBindingThingServer.RoutingMode;
+import de.thingweb.thing.Action;
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Heap benchmark for the routing modes of {@link MultiBindingThingServer}.
+ * <p>
+ * Adds things with 30 properties and 2 actions each against an in-memory
+ * binding and prints the retained heap per thing in eager and lazy mode, the
+ * latter also after one property of every thing has been requested.
+ * Usage: <code>RoutingHeapBenchmark [count]</code>
+ */
+public class RoutingHeapBenchmark {
+
+    private static final int PROPERTIES = 30;
+
+    public static void main(String[] args) throws Exception {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 20_000;
+
+        System.out.println("  mode          things  bytes/thing");
+        for (RoutingMode mode : RoutingMode.values()) {
+            List<Thing> models = models(count);
+            long before = usedHeap();
+
+            InMemoryBinding binding = new InMemoryBinding();
+            MultiBindingThingServer server = new MultiBindingThingServer(binding);
+            server.setRoutingMode(mode);
+            server.addThings(models);
+            System.out.printf("  %-12s %7d %12d%n", mode, count, (usedHeap() - before) / count);
+
+            if (mode == RoutingMode.LAZY) {
+                for (int i = 0; i < count; i++) {
+                    binding.resolve(Defines.BASE_THING_URL + "thing" + i + "/p0");
+                }
+                System.out.printf("  %-12s %7d %12d%n", "LAZY, 1 used", count, (usedHeap() - before) / count);
+            }
+
+            // keep everything reachable until measured
+            if (server.getThing("thing0") == null || models.isEmpty()) {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    private static List<Thing> models(int count) {
+        List<Thing> models = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Thing thing = new Thing("thing" + i);
+            for (int p = 0; p < PROPERTIES; p++) {
+                thing.addProperty(Property.getBuilder("p" + p).setWriteable(true).build());
+            }
+            thing.addAction(Action.getBuilder("start").build());
+            thing.addAction(Action.getBuilder("stop").build());
+            models.add(thing);
+        }
+        return models;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static class InMemoryBinding implements ResourceBuilder {
+        final Map<String, RESTListener> resources = new HashMap<>();
+        ResourceResolver resolver;
+
+        @Override
+        public void newResource(String url, RESTListener restListener) {
+            resources.put(url, restListener);
+        }
+
+        @Override
+        public void removeResource(String url) {
+            resources.remove(url);
+        }
+
+        @Override
+        public void newResolver(String url, ResourceResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        RESTListener resolve(String url) {
+            RESTListener listener = resources.get(url);
+            return (listener == null && resolver != null) ? resolver.resolve(url) : listener;
+        }
+
+        @Override
+        public String getBase() {
+            return "mem://localhost";
+        }
+
+        @Override
+        public String getIdentifier() {
+            return "memory";
+        }
+    }
+}
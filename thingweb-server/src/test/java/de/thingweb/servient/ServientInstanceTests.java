@@ -0,0 +1,121 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.thingweb.binding.http.HttpExecutors;
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+import org.eclipse.californium.core.CoapClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ServientInstanceTests {
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private Servient first;
+    private Servient second;
+
+    @Before
+    public void setUp() throws Exception {
+        first = Servient.getBuilder().setHttpPort(8181).setCoapPort(5781).setUpdateThreads(1).build();
+        second = Servient.getBuilder().setHttpPort(8182).setCoapPort(5782).setUpdateThreads(1).build();
+    }
+
+    @Test
+    public void independentServients() throws Exception {
+        first.getThingServer().addThing(counter()).setProperty("count", 1);
+        second.getThingServer().addThing(counter()).setProperty("count", 2);
+        first.start();
+        second.start();
+
+        assertThat(jsonMapper.readTree(new URL("http://localhost:8181/things/counter/count")).get("value").asInt(), is(1));
+        assertThat(jsonMapper.readTree(new URL("http://localhost:8182/things/counter/count")).get("value").asInt(), is(2));
+        assertThat(new CoapClient("coap://localhost:5782/things/counter/count").get().getResponseText(), containsString("2"));
+
+        first.close();
+        assertThat(first.isRunning(), is(false));
+        assertThat(jsonMapper.readTree(new URL("http://localhost:8182/things/counter/count")).get("value").asInt(), is(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedServientCannotStart() throws Exception {
+        first.close();
+        first.start();
+    }
+
+    @Test
+    public void boundedHttpExecutorRejectsWithServiceUnavailable() throws Exception {
+        try (Servient bounded = Servient.getBuilder()
+                .setHttpPort(8183)
+                .setCoapPort(5783)
+                .setHttpExecutor(HttpExecutors.bounded(1, 0))
+                .build()) {
+            bounded.getThingServer().addThing(counter()).setProperty("count", 3);
+            bounded.start();
+
+            // an idle keep-alive connection occupies the only thread
+            try (Socket idle = new Socket("localhost", 8183)) {
+                assertThat(idle.isConnected(), is(true));
+                while (bounded.getHttpServer().getActiveConnections() == 0) {
+                    Thread.sleep(10);
+                }
+
+                HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8183/things/counter/count").openConnection();
+                assertThat(connection.getResponseCode(), is(503));
+                assertThat(connection.getHeaderField("Retry-After"), is("1"));
+                assertThat(bounded.getHttpServer().getRejectedCount(), is(1L));
+            }
+
+            while (bounded.getHttpServer().getActiveConnections() > 0) {
+                Thread.sleep(10);
+            }
+            assertThat(jsonMapper.readTree(new URL("http://localhost:8183/things/counter/count")).get("value").asInt(), is(3));
+        }
+    }
+
+    private static Thing counter() {
+        Thing thing = new Thing("counter");
+        thing.addProperty(Property.getBuilder("count").setWriteable(true).build());
+        return thing;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        first.close();
+        second.close();
+    }
+}
@@ -30,22 +30,49 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import de.thingweb.desc.DescriptionParser;
 import de.thingweb.desc.pojo.ThingDescription;
+import de.thingweb.servient.impl.Bulkhead;
+import de.thingweb.servient.impl.MultiBindingThingServer;
+import de.thingweb.servient.impl.ServedThing;
+import de.thingweb.thing.Action;
 import de.thingweb.thing.Content;
 import de.thingweb.thing.MediaType;
+import de.thingweb.thing.Property;
 import de.thingweb.thing.Thing;
 import de.thingweb.util.encoding.ContentHelper;
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.Request;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.InetAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
 
 import static de.thingweb.servient.TestTools.fromUrl;
 import static de.thingweb.servient.TestTools.readResource;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 /**
  * Created by Johannes on 20.12.2015.
@@ -108,6 +135,35 @@ public class ServientTestHttp {
         assertThat("value is 42", number,is(42));
     }
 
+    @Test
+    public void longPollIsRejectedWithoutDeferredReplies() throws Exception {
+        String url = "http://localhost:8080/things/SimpleThing/number";
+        String etag = new URL(url).openConnection().getHeaderField("ETag");
+        HttpURLConnection poll = (HttpURLConnection) new URL(url + "?waitFor="
+                + URLEncoder.encode(etag, "UTF-8") + "&timeout=10s").openConnection();
+
+        // the thread per connection engine would be held for the whole wait
+        assertThat(poll.getResponseCode(), is(501));
+    }
+
+    @Test
+    public void repeatedReadsShareEncodedValue() throws Exception {
+        thing.setProperty("number", 42);
+        String first = fromUrl("http://localhost:8080/things/SimpleThing/number");
+
+        ServedThing served = (ServedThing) thing;
+        Property number = served.getThingModel().getProperty("number");
+        Content cached = served.getPropertyContent(number, MediaType.APPLICATION_JSON);
+        assertThat("unchanged property should be served from cache",
+                served.getPropertyContent(number, MediaType.APPLICATION_JSON), sameInstance(cached));
+        assertThat(new String(cached.getContent()), equalTo(first));
+
+        thing.setProperty("number", 43);
+        Content updated = served.getPropertyContent(number, MediaType.APPLICATION_JSON);
+        assertThat("write should invalidate the cache", updated, not(sameInstance(cached)));
+        assertThat(ContentHelper.getValueFromJson(updated), is(43));
+    }
+
     @Test
     public void attachListenerAndsetDirectly() throws Exception {
         CompletableFuture<Integer> future = new CompletableFuture<>();
@@ -122,6 +178,208 @@ public class ServientTestHttp {
         assertThat("value is 42", future.get() ,is(42));
     }
 
+    @Test
+    public void longRunningActionIsAccepted() throws Exception {
+        CompletableFuture<Object> pending = new CompletableFuture<>();
+        thing.onInvokeAsync("testaction", param -> pending);
+
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:8080/things/simplething/testaction").openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("content-type", MediaType.APPLICATION_JSON.mediaType);
+        connection.getOutputStream().write("{ \"value\" : 42 }".getBytes());
+
+        assertThat(connection.getResponseCode(), is(202));
+        String location = connection.getHeaderField("Location");
+        assertThat(location, startsWith("/things/simplething/testaction/executions/"));
+
+        JsonNode running = ContentHelper.readJSON(fromUrl("http://localhost:8080" + location));
+        assertThat(running.get("status").textValue(), is("running"));
+
+        pending.complete(7);
+        JsonNode completed = ContentHelper.readJSON(fromUrl("http://localhost:8080" + location));
+        assertThat(completed.get("status").textValue(), is("completed"));
+        assertThat(completed.get("value").intValue(), is(7));
+    }
+
+    @Test
+    public void finishedActionIsNotTracked() throws Exception {
+        thing.onInvoke("testaction", param -> 1);
+
+        HttpURLConnection connection = postAction("{ \"value\" : 42 }");
+        assertThat(connection.getResponseCode(), is(200));
+
+        HttpURLConnection execution = (HttpURLConnection)
+                new URL("http://localhost:8080/things/simplething/testaction/executions/1").openConnection();
+        assertThat(execution.getResponseCode(), is(404));
+        assertThat(fromUrl("http://localhost:8080/things/simplething/testaction"), not(containsString("executions")));
+    }
+
+    @Test
+    public void cancelledExecutionIsReported() throws Exception {
+        CompletableFuture<Object> pending = new CompletableFuture<>();
+        thing.onInvokeAsync("testaction", param -> pending);
+
+        HttpURLConnection connection = postAction("{ \"value\" : 42 }");
+        assertThat(connection.getResponseCode(), is(202));
+        String location = connection.getHeaderField("Location");
+
+        pending.cancel(false);
+        JsonNode cancelled = ContentHelper.readJSON(fromUrl("http://localhost:8080" + location));
+        assertThat(cancelled.get("status").textValue(), is("cancelled"));
+    }
+
+    private static HttpURLConnection postAction(String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:8080/things/simplething/testaction").openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("content-type", MediaType.APPLICATION_JSON.mediaType);
+        connection.getOutputStream().write(body.getBytes());
+        return connection;
+    }
+
+    @Test
+    public void busyActionIsRejected() throws Exception {
+        Thing limited = new Thing("LimitedThing");
+        limited.addAction(Action.getBuilder("slow").setMaxConcurrency(1).setQueueLength(0).build());
+        ThingInterface limitedThing = server.addThing(limited);
+
+        CompletableFuture<Object> pending = new CompletableFuture<>();
+        limitedThing.onInvokeAsync("slow", param -> pending);
+
+        CompletionStage<Object> first = limitedThing.invokeActionAsync("slow", null);
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:8080/things/limitedthing/slow").openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("content-type", MediaType.APPLICATION_JSON.mediaType);
+        connection.getOutputStream().write("{ \"value\" : 1 }".getBytes());
+
+        assertThat(connection.getResponseCode(), is(503));
+        assertThat(((ServedThing) limitedThing).getBulkhead("slow").getRejectedCount(), is(1L));
+
+        pending.complete("done");
+        assertThat(first.toCompletableFuture().get(), is((Object) "done"));
+    }
+
+    @Test
+    public void timedOutWaiterLeavesTheQueue() throws Exception {
+        Thing limited = new Thing("QueuedThing");
+        limited.addAction(Action.getBuilder("slow").setMaxConcurrency(1).setQueueLength(1).setTimeout(100).build());
+        ThingInterface limitedThing = server.addThing(limited);
+        Bulkhead bulkhead = ((ServedThing) limitedThing).getBulkhead("slow");
+
+        CompletableFuture<Object> pending = new CompletableFuture<>();
+        limitedThing.onInvokeAsync("slow", param -> pending);
+
+        limitedThing.invokeActionAsync("slow", null);
+        CompletionStage<Object> waiter = limitedThing.invokeActionAsync("slow", null);
+        try {
+            waiter.toCompletableFuture().get();
+            fail("expected a timeout");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(TimeoutException.class));
+        }
+        assertThat(bulkhead.getQueuedCount(), is(0));
+
+        // the freed place in the queue takes the next invocation
+        CompletionStage<Object> next = limitedThing.invokeActionAsync("slow", null);
+        assertThat(bulkhead.getRejectedCount(), is(0L));
+        assertThat(next.toCompletableFuture().isDone(), is(false));
+        pending.complete("done");
+    }
+
+    @Test
+    public void readHistoryHttp() throws Exception {
+        ((MultiBindingThingServer) server).setHistoryCapacity(16);
+        Thing recorded = new Thing("RecordedThing");
+        recorded.addProperty(Property.getBuilder("level").build());
+        ThingInterface recordedThing = server.addThing(recorded);
+
+        recordedThing.setProperty("level", 1);
+        recordedThing.setProperty("level", 2);
+        recordedThing.setProperty("level", 3);
+
+        String json = fromUrl("http://localhost:8080/things/recordedthing/level/history?since=0&limit=2");
+        JsonNode samples = ContentHelper.readJSON(json.getBytes()).get("samples");
+
+        assertThat(samples.size(), is(2));
+        assertThat(samples.get(0).get("value").asDouble(), is(1.0));
+        assertThat(samples.get(1).get("value").asDouble(), is(2.0));
+    }
+
+    @Test
+    public void readAllPropertiesHttp() throws Exception {
+        Thing lamp = new Thing("Lamp");
+        lamp.addProperty(Property.getBuilder("red").build());
+        lamp.addProperty(Property.getBuilder("green").build());
+        lamp.addProperty(Property.getBuilder("blue").build());
+        ThingInterface lampThing = server.addThing(lamp);
+        lampThing.setProperty("red", 1);
+        lampThing.setProperty("green", 2);
+        lampThing.setProperty("blue", 3);
+
+        JsonNode all = ContentHelper.readJSON(fromUrl("http://localhost:8080/things/lamp/properties").getBytes());
+        assertThat(all.size(), is(3));
+        assertThat(all.get("green").asInt(), is(2));
+
+        JsonNode some = ContentHelper.readJSON(
+                fromUrl("http://localhost:8080/things/lamp/properties?names=blue,red").getBytes());
+        assertThat(some.size(), is(2));
+        assertThat(some.get("blue").asInt(), is(3));
+        assertThat(some.has("green"), is(false));
+    }
+
+    @Test
+    public void writePropertiesAtomicallyHttp() throws Exception {
+        Thing lamp = new Thing("ColourLamp");
+        lamp.addProperty(Property.getBuilder("red").setWriteable(true).build());
+        lamp.addProperty(Property.getBuilder("green").setWriteable(true).build());
+        lamp.addProperty(Property.getBuilder("blue").setWriteable(true).build());
+        ServedThing lampThing = (ServedThing) server.addThing(lamp);
+
+        List<Collection<String>> commits = new CopyOnWriteArrayList<>();
+        lampThing.addChangeListener(commits::add);
+
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:8080/things/colourlamp/properties").openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("PUT");
+        connection.setRequestProperty("content-type", MediaType.APPLICATION_JSON.mediaType);
+        connection.getOutputStream().write("{ \"red\" : 10, \"green\" : 20, \"blue\" : 30 }".getBytes());
+
+        assertThat(connection.getResponseCode(), is(200));
+        assertThat(lampThing.getProperties(null), is((Object) rgb(10, 20, 30)));
+        assertThat(commits.size(), is(1));
+        assertThat(commits.get(0), containsInAnyOrder("red", "green", "blue"));
+    }
+
+    @Test
+    public void writePropertiesRejectsNonObjects() throws Exception {
+        assertThat(putProperties(MediaType.APPLICATION_JSON.mediaType, "[ 1, 2 ]"), is(400));
+        assertThat(putProperties(MediaType.TEXT_PLAIN.mediaType, "red=1"), is(400));
+    }
+
+    private static int putProperties(String contentType, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:8080/things/simplething/properties").openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("PUT");
+        connection.setRequestProperty("content-type", contentType);
+        connection.getOutputStream().write(body.getBytes());
+        return connection.getResponseCode();
+    }
+
+    private static Map<String, Object> rgb(Object red, Object green, Object blue) {
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("red", red);
+        expected.put("green", green);
+        expected.put("blue", blue);
+        return expected;
+    }
+
     @Test
     public void readTD() throws Exception {
         String fromSrv = TestTools.fromUrl("http://localhost:8080/things/SimpleThing/.td");
@@ -142,6 +400,108 @@ public class ServientTestHttp {
         assertThat(ContentHelper.getJsonMapper().valueToTree(td),equalTo(ContentHelper.getJsonMapper().valueToTree(reference)));
     }
 
+    @Test
+    public void tdIsServedPrecompressedAndConditionally() throws Exception {
+        URL url = new URL("http://localhost:8080/things/SimpleThing/.td");
+        HttpURLConnection gzip = (HttpURLConnection) url.openConnection();
+        gzip.setRequestProperty("Accept-Encoding", "gzip");
+        assertThat(gzip.getResponseCode(), is(200));
+        assertThat(gzip.getHeaderField("Content-Encoding"), is("gzip"));
+        try (InputStream in = new GZIPInputStream(gzip.getInputStream())) {
+            JsonNode td = ContentHelper.readJSON(new Scanner(in, "UTF-8").useDelimiter("\\A").next());
+            assertThat(td.get("@context"), is(notNullValue()));
+        }
+
+        HttpURLConnection plain = (HttpURLConnection) url.openConnection();
+        plain.setRequestProperty("Accept-Encoding", "identity");
+        assertThat(plain.getResponseCode(), is(200));
+        assertThat(plain.getHeaderField("Content-Encoding"), nullValue());
+        String etag = plain.getHeaderField("ETag");
+        assertThat(etag, not(equalTo(gzip.getHeaderField("ETag"))));
+        assertThat(plain.getHeaderField("Last-Modified"), is(notNullValue()));
+
+        HttpURLConnection conditional = (HttpURLConnection) url.openConnection();
+        conditional.setRequestProperty("Accept-Encoding", "identity");
+        conditional.setRequestProperty("If-None-Match", etag);
+        assertThat(conditional.getResponseCode(), is(304));
+
+        CoapClient coap = new CoapClient("coap://localhost:5683/things/SimpleThing/.td");
+        CoapResponse full = coap.get();
+        assertThat(full.getCode(), is(CoAP.ResponseCode.CONTENT));
+        byte[] coapETag = full.getOptions().getETags().get(0);
+        Request validate = Request.newGet();
+        validate.getOptions().addETag(coapETag);
+        assertThat(coap.advanced(validate).getCode(), is(CoAP.ResponseCode.VALID));
+    }
+
+    @Test
+    public void thingIndexIsCachedUntilChanged() throws Exception {
+        URL url = new URL("http://localhost:8080/things/");
+        HttpURLConnection first = (HttpURLConnection) url.openConnection();
+        first.setRequestProperty("Accept-Encoding", "identity");
+        assertThat(first.getResponseCode(), is(200));
+        String etag = first.getHeaderField("ETag");
+        assertThat(etag, is(notNullValue()));
+        assertThat(first.getHeaderField("Last-Modified"), is(notNullValue()));
+
+        HttpURLConnection conditional = (HttpURLConnection) url.openConnection();
+        conditional.setRequestProperty("Accept-Encoding", "identity");
+        conditional.setRequestProperty("If-None-Match", etag);
+        assertThat(conditional.getResponseCode(), is(304));
+
+        server.addThing(new Thing("OtherThing"));
+        HttpURLConnection changed = (HttpURLConnection) url.openConnection();
+        changed.setRequestProperty("Accept-Encoding", "identity");
+        changed.setRequestProperty("If-None-Match", etag);
+        assertThat(changed.getResponseCode(), is(200));
+        assertThat(changed.getHeaderField("ETag"), not(equalTo(etag)));
+    }
+
+    @Test
+    public void unchangedPropertyIsNotModified() throws Exception {
+        thing.setProperty("number", 42);
+        URL url = new URL("http://localhost:8080/things/SimpleThing/number");
+
+        HttpURLConnection first = (HttpURLConnection) url.openConnection();
+        assertThat(first.getResponseCode(), is(200));
+        String etag = first.getHeaderField("ETag");
+        assertThat(etag, is(notNullValue()));
+
+        HttpURLConnection unchanged = (HttpURLConnection) url.openConnection();
+        unchanged.setRequestProperty("If-None-Match", etag);
+        assertThat(unchanged.getResponseCode(), is(304));
+
+        CoapClient coap = new CoapClient("coap://localhost:5683/things/SimpleThing/number");
+        byte[] coapETag = coap.get().getOptions().getETags().get(0);
+        Request validate = Request.newGet();
+        validate.getOptions().addETag(coapETag);
+        assertThat(coap.advanced(validate).getCode(), is(CoAP.ResponseCode.VALID));
+
+        thing.setProperty("number", 43);
+        HttpURLConnection changed = (HttpURLConnection) url.openConnection();
+        changed.setRequestProperty("If-None-Match", etag);
+        assertThat(changed.getResponseCode(), is(200));
+        assertThat(changed.getHeaderField("ETag"), not(equalTo(etag)));
+        Request stale = Request.newGet();
+        stale.getOptions().addETag(coapETag);
+        assertThat(coap.advanced(stale).getCode(), is(CoAP.ResponseCode.CONTENT));
+    }
+
+    @Test
+    public void eventStreamDeliversChanges() throws Exception {
+        thing.setProperty("number", 42);
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8080/things/SimpleThing/number").openConnection();
+        connection.setRequestProperty("Accept", "text/event-stream");
+        connection.setReadTimeout(5000);
+        assertThat(connection.getContentType(), is("text/event-stream"));
+
+        try (BufferedReader events = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            assertThat(TestTools.nextEvent(events), containsString("42"));
+            thing.setProperty("number", 43);
+            assertThat(TestTools.nextEvent(events), containsString("43"));
+        }
+    }
+
     @After
     public void tearDown() throws IOException {
         ServientBuilder.stop();
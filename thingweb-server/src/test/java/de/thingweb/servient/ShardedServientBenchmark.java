@@ -0,0 +1,112 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP load test for {@link ShardedServient}.
+ * <p>
+ * Serves 1000 things from 1 up to the given number of shards on one port
+ * and prints the property reads per second that a fixed number of client
+ * threads achieve, opening one connection per read.
+ * Usage: <code>ShardedServientBenchmark [maxShards [clients [seconds]]]</code>
+ */
+public class ShardedServientBenchmark {
+
+    private static final int THINGS = 1000;
+    private static final int PORT = 8391;
+
+    public static void main(String[] args) throws Exception {
+        int maxShards = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int clients = (args.length > 1) ? Integer.parseInt(args[1]) : 4 * maxShards;
+        int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+
+        System.out.println("  shards  clients     reads/s");
+        for (int shards = 1; shards <= maxShards; shards *= 2) {
+            System.out.printf("%8d %8d %11d%n", shards, clients, run(shards, clients, seconds));
+        }
+    }
+
+    private static long run(int shards, int clients, int seconds) throws Exception {
+        try (ShardedServient servient = ShardedServient.getBuilder()
+                .setShards(shards)
+                .setHttpPort(PORT)
+                .setCoapPort(5691)
+                .build()) {
+            List<Thing> things = new ArrayList<>(THINGS);
+            for (int i = 0; i < THINGS; i++) {
+                Thing thing = new Thing("thing" + i);
+                thing.addProperty(Property.getBuilder("temperature").build());
+                things.add(thing);
+            }
+            servient.addThings(things).forEach(thing -> thing.setProperty("temperature", 21.5));
+            servient.start();
+
+            LongAdder reads = new LongAdder();
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            List<Thread> threads = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                final int client = c;
+                Thread thread = new Thread(() -> {
+                    byte[] buffer = new byte[1024];
+                    int i = client;
+                    while (System.nanoTime() < deadline) {
+                        try {
+                            URL url = new URL("http://127.0.0.1:" + PORT + "/things/thing" + (i++ % THINGS) + "/temperature");
+                            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                            // a new connection per read, so the kernel spreads them across the shards
+                            connection.setRequestProperty("Connection", "close");
+                            try (InputStream in = connection.getInputStream()) {
+                                while (in.read(buffer) >= 0) {
+                                    // drain
+                                }
+                            }
+                            reads.increment();
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            return reads.sum() / seconds;
+        }
+    }
+}
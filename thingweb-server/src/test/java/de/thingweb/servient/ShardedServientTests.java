@@ -0,0 +1,102 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.thingweb.binding.ReusePort;
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+import org.eclipse.californium.core.CoapClient;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ShardedServientTests {
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private ShardedServient servient;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(ReusePort.isSupported());
+        servient = ShardedServient.getBuilder().setShards(3).setHttpPort(8281).setCoapPort(5881).build();
+    }
+
+    @Test
+    public void anyShardServesAnyThing() throws Exception {
+        List<Thing> things = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            Thing thing = new Thing("sensor" + i);
+            thing.addProperty(Property.getBuilder("value").setWriteable(true).build());
+            things.add(thing);
+        }
+        List<ThingInterface> added = servient.addThings(things);
+        for (int i = 0; i < added.size(); i++) {
+            added.get(i).setProperty("value", i);
+        }
+        servient.start();
+
+        // new connections get spread across the shards by the kernel
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < things.size(); i++) {
+                URL url = new URL("http://localhost:8281/things/sensor" + i + "/value");
+                assertThat(jsonMapper.readTree(url).get("value").asInt(), is(i));
+            }
+            assertThat(jsonMapper.readTree(new URL("http://localhost:8281/things/")).size(), is(things.size()));
+        }
+        assertThat(new CoapClient("coap://localhost:5881/things/sensor7/value").get().getResponseText(), containsString("7"));
+
+        assertThat(servient.removeThing("sensor3"), is(true));
+        assertThat(servient.getThing("sensor3"), nullValue());
+        for (int round = 0; round < 5; round++) {
+            assertThat(status("http://localhost:8281/things/sensor3/value"), is(404));
+        }
+    }
+
+    private static int status(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("Connection", "close");
+        return connection.getResponseCode();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (servient != null) {
+            servient.close();
+        }
+    }
+}
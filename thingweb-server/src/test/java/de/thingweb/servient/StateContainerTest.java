@@ -0,0 +1,166 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import de.thingweb.servient.impl.StateContainer;
+import de.thingweb.servient.impl.UpdateDispatcher;
+import de.thingweb.servient.impl.UpdateDispatcher.OverflowPolicy;
+import de.thingweb.servient.impl.VersionedValue;
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class StateContainerTest {
+
+    private static final int WRITERS = 4;
+    private static final int WRITES = 20000;
+
+    private UpdateDispatcher dispatcher;
+    private StateContainer state;
+    private Property a;
+    private Property b;
+
+    @Before
+    public void setUp() {
+        Thing thing = new Thing("state");
+        thing.addProperty(Property.getBuilder("a").setWriteable(true).build());
+        thing.addProperty(Property.getBuilder("b").setWriteable(true).build());
+        a = thing.getProperty("a");
+        b = thing.getProperty("b");
+        dispatcher = new UpdateDispatcher(1, 16, OverflowPolicy.DROP_OLDEST);
+        state = new StateContainer(thing, dispatcher);
+    }
+
+    @Test
+    public void concurrentWritesAreNotLost() throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        Thread reader = new Thread(() -> {
+            long lastVersion = -1;
+            while (writing.get()) {
+                VersionedValue value = state.getVersionedProperty(a);
+                if (value.getVersion() < lastVersion) {
+                    failure.set(new AssertionError("version went back from " + lastVersion + " to " + value.getVersion()));
+                    return;
+                }
+                lastVersion = value.getVersion();
+            }
+        });
+        reader.start();
+
+        run(writer -> {
+            for (int i = 0; i < WRITES; i++) {
+                state.setProperty(a, writer * WRITES + i);
+            }
+        });
+        writing.set(false);
+        reader.join();
+
+        assertThat(failure.get(), nullValue());
+        // every write got a version of its own
+        assertThat(state.getVersionedProperty(a).getVersion(), is((long) WRITERS * WRITES));
+        int last = (Integer) state.getProperty(a);
+        assertThat(last % WRITES, is(WRITES - 1));
+    }
+
+    @Test
+    public void snapshotsSeeBatchesWhole() throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        int[] ids = {state.getIndex().indexOf(a), state.getIndex().indexOf(b)};
+        state.setProperties(ids, new Object[]{0, 0});
+
+        Thread reader = new Thread(() -> {
+            while (writing.get()) {
+                VersionedValue[] values = state.snapshot(ids);
+                if (!values[0].getValue().equals(values[1].getValue())) {
+                    failure.set(new AssertionError("torn snapshot: " + values[0].getValue()
+                            + " and " + values[1].getValue()));
+                    return;
+                }
+            }
+        });
+        reader.start();
+
+        run(writer -> {
+            for (int i = 0; i < WRITES; i++) {
+                Integer value = writer * WRITES + i;
+                state.setProperties(ids, new Object[]{value, value});
+            }
+        });
+        writing.set(false);
+        reader.join();
+
+        assertThat(failure.get(), nullValue());
+        assertThat(state.getProperty(a), is(state.getProperty(b)));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        dispatcher.shutdown();
+        dispatcher.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private interface Writer {
+        void write(int writer);
+    }
+
+    private static void run(Writer writer) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            final int id = w;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                writer.write(id);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
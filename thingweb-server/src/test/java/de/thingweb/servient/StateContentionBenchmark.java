@@ -0,0 +1,118 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import de.thingweb.servient.impl.StateContainer;
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Contention benchmark for {@link StateContainer}.
+ * <p>
+ * Runs a mix of reader and writer threads against the properties of one thing,
+ * once through the lock-free state container and once serialized behind a
+ * single monitor (the previous ServedThing behaviour), and prints the
+ * throughput of both. Usage: <code>StateContentionBenchmark [properties]
+ * [seconds]</code>
+ */
+public class StateContentionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int nprops = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        Thing thing = new Thing("bench");
+        for (int i = 0; i < nprops; i++) {
+            thing.addProperty(Property.getBuilder("p" + i).setWriteable(true).build());
+        }
+        Property[] props = thing.getProperties().toArray(new Property[nprops]);
+
+        StateContainer state = new StateContainer(thing);
+        Object monitor = new Object();
+
+        System.out.println("readers writers      lock-free ops/s        monitor ops/s");
+        int[][] mixes = {{1, 1}, {4, 1}, {8, 2}, {16, 4}, {32, 8}};
+        for (int[] mix : mixes) {
+            double lockFree = run(mix[0], mix[1], seconds, props,
+                    state::getProperty,
+                    state::setProperty);
+            double locked = run(mix[0], mix[1], seconds, props,
+                    p -> { synchronized (monitor) { state.getProperty(p); } },
+                    (p, v) -> { synchronized (monitor) { state.setProperty(p, v); } });
+            System.out.printf("%7d %7d %20.0f %20.0f%n", mix[0], mix[1], lockFree, locked);
+        }
+    }
+
+    private static double run(int readers, int writers, int seconds, Property[] props,
+                              Consumer<Property> read, BiConsumer<Property, Object> write)
+            throws InterruptedException {
+        final LongAdder ops = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] deadline = new long[1];
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < readers + writers; i++) {
+            final boolean writer = i < writers;
+            Thread t = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long n = 0;
+                while (System.nanoTime() < deadline[0]) {
+                    Property p = props[rnd.nextInt(props.length)];
+                    if (writer) {
+                        write.accept(p, n);
+                    } else {
+                        read.accept(p);
+                    }
+                    n++;
+                }
+                ops.add(n);
+            });
+            threads.add(t);
+            t.start();
+        }
+
+        deadline[0] = System.nanoTime() + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        return ops.sum() / (double) seconds;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import de.thingweb.servient.impl.StateStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Recovery benchmark for {@link StateStore}.
+ * <p>
+ * Appends one value for each of the given number of properties, then measures
+ * recovery twice: once by replaying the log of a store that was never closed,
+ * as after a crash, and once from the snapshot a clean shutdown leaves behind.
+ * Usage: <code>StateRecoveryBenchmark [values] [properties per thing]</code>
+ */
+public class StateRecoveryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int nvalues = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int perThing = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int logSize = 256 * 1024 * 1024;
+        Path dir = Files.createTempDirectory("state-recovery");
+
+        try {
+            StateStore store = new StateStore(dir, logSize, Long.MAX_VALUE / 2);
+            long start = System.nanoTime();
+            for (int i = 0; i < nvalues; i++) {
+                store.append("thing" + i / perThing, "p" + i % perThing, (double) i);
+            }
+            store.flush();
+            long appendNanos = System.nanoTime() - start;
+            System.out.printf("append %d values: %.0f values/s, %.1f values per forced batch%n",
+                    nvalues, nvalues / (appendNanos / 1e9),
+                    store.getAppendedCount() / (double) store.getBatchCount());
+
+            start = System.nanoTime();
+            StateStore fromLog = new StateStore(dir, logSize, Long.MAX_VALUE / 2);
+            long logNanos = System.nanoTime() - start;
+            System.out.printf("recover %d values from log: %d ms%n",
+                    fromLog.getRecoveredCount(), logNanos / 1_000_000);
+            fromLog.close();
+
+            start = System.nanoTime();
+            StateStore fromSnapshot = new StateStore(dir, logSize, Long.MAX_VALUE / 2);
+            long snapshotNanos = System.nanoTime() - start;
+            System.out.printf("recover %d values from snapshot: %d ms%n",
+                    fromSnapshot.getRecoveredCount(), snapshotNanos / 1_000_000);
+            fromSnapshot.close();
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
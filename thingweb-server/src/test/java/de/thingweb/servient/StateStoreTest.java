@@ -0,0 +1,162 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import de.thingweb.servient.impl.ServedThing;
+import de.thingweb.servient.impl.StateStore;
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class StateStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoresValuesFromLog() throws Exception {
+        Path dir = folder.getRoot().toPath();
+
+        StateStore store = new StateStore(dir);
+        ServedThing thing = new ServedThing(newThing());
+        store.attach(thing);
+        thing.setProperty("number", 1);
+        thing.setProperty("number", 42);
+        thing.setProperty("text", "hello");
+        store.flush();
+
+        // reopen without closing, as after a crash
+        StateStore recovered = new StateStore(dir);
+        ServedThing restarted = new ServedThing(newThing());
+        recovered.attach(restarted);
+
+        assertThat(recovered.getRecoveredCount(), is(2));
+        assertThat(restarted.getProperty("number"), is((Object) 42));
+        assertThat(restarted.getProperty("text"), is((Object) "hello"));
+        recovered.close();
+    }
+
+    @Test
+    public void compactsWhenLogIsFull() throws Exception {
+        Path dir = folder.getRoot().toPath();
+
+        StateStore store = new StateStore(dir, 256, StateStore.DEFAULT_SNAPSHOT_INTERVAL);
+        ServedThing thing = new ServedThing(newThing());
+        store.attach(thing);
+        for (int i = 0; i <= 100; i++) {
+            thing.setProperty("number", i);
+        }
+        store.flush();
+        assertThat(store.getSnapshotCount(), greaterThan(0L));
+        store.close();
+
+        StateStore recovered = new StateStore(dir);
+        ServedThing restarted = new ServedThing(newThing());
+        recovered.attach(restarted);
+
+        assertThat(restarted.getProperty("number"), is((Object) 100));
+        recovered.close();
+    }
+
+    @Test
+    public void logEndsOnLastCommittedValue() throws Exception {
+        Path dir = folder.getRoot().toPath();
+
+        StateStore store = new StateStore(dir);
+        ServedThing thing = new ServedThing(newThing());
+        store.attach(thing);
+        Thread[] writers = new Thread[4];
+        for (int w = 0; w < writers.length; w++) {
+            final int writer = w;
+            writers[w] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    thing.setProperty("number", writer * 10000 + i);
+                }
+            });
+            writers[w].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        store.flush();
+        Object last = thing.getProperty("number");
+
+        // reopen without closing, the log alone decides the recovered value
+        StateStore recovered = new StateStore(dir);
+        ServedThing restarted = new ServedThing(newThing());
+        recovered.attach(restarted);
+
+        assertThat(restarted.getProperty("number"), is(last));
+        recovered.close();
+    }
+
+    @Test
+    public void flushDoesNotOutliveClose() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            StateStore store = new StateStore(folder.newFolder().toPath());
+            ServedThing thing = new ServedThing(newThing());
+            store.attach(thing);
+
+            Thread[] flushers = new Thread[4];
+            for (int f = 0; f < flushers.length; f++) {
+                flushers[f] = new Thread(() -> {
+                    try {
+                        while (true) {
+                            thing.setProperty("number", 1);
+                            store.flush();
+                        }
+                    } catch (IllegalStateException closed) {
+                        // expected once the store is closed
+                    }
+                });
+                flushers[f].setDaemon(true);
+                flushers[f].start();
+            }
+            Thread.sleep(10);
+            store.close();
+
+            for (Thread flusher : flushers) {
+                flusher.join(5000);
+                assertThat(flusher.isAlive(), is(false));
+            }
+        }
+    }
+
+    private static Thing newThing() {
+        Thing thing = new Thing("persisted");
+        thing.addProperty(Property.getBuilder("number").setWriteable(true).build());
+        thing.addProperty(Property.getBuilder("text").setWriteable(true).build());
+        return thing;
+    }
+}
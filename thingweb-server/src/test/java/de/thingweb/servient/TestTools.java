@@ -31,6 +31,8 @@ import de.thingweb.desc.pojo.ThingDescription;
 import de.thingweb.thing.MediaType;
 import de.thingweb.thing.Thing;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
@@ -69,6 +71,19 @@ public class TestTools {
         return props;
     }
 
+    /**
+     * @return the data of the next Server-Sent Event
+     */
+    public static String nextEvent(BufferedReader events) throws IOException {
+        String line;
+        while ((line = events.readLine()) != null) {
+            if (line.startsWith("data: ")) {
+                return line.substring("data: ".length());
+            }
+        }
+        throw new EOFException("event stream ended");
+    }
+
     public static String fromUrl(String url) throws Exception {
         Scanner scanner = new Scanner(new URL(url).openStream(), "UTF-8").useDelimiter("\\A");
         String res = scanner.hasNext() ? scanner.next() : "";
@@ -0,0 +1,119 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import de.thingweb.binding.RESTListener;
+import de.thingweb.binding.ResourceBuilder;
+import de.thingweb.servient.impl.MultiBindingThingServer;
+import de.thingweb.thing.Action;
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Startup benchmark for {@link MultiBindingThingServer}.
+ * <p>
+ * Registers batches of things with a few interactions each against an
+ * in-memory binding, once one by one through addThing and once through
+ * addThings, and prints the time taken and the time to render the
+ * <code>/things/</code> index afterwards.
+ * Usage: <code>ThingRegistrationBenchmark [count...]</code>
+ */
+public class ThingRegistrationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int[] counts = {10_000, 50_000, 100_000};
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println("  things   addThing ms  addThings ms   index ms");
+        for (int count : counts) {
+            long single = run(count, false)[0];
+            long[] batch = run(count, true);
+            System.out.printf("%8d %13d %13d %10d%n", count, single, batch[0], batch[1]);
+        }
+    }
+
+    private static long[] run(int count, boolean batch) {
+        List<Thing> models = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Thing thing = new Thing("thing" + i);
+            thing.addProperty(Property.getBuilder("temperature").build());
+            thing.addProperty(Property.getBuilder("humidity").build());
+            thing.addProperty(Property.getBuilder("on").setWriteable(true).build());
+            thing.addAction(Action.getBuilder("toggle").build());
+            models.add(thing);
+        }
+
+        InMemoryBinding binding = new InMemoryBinding();
+        MultiBindingThingServer server = new MultiBindingThingServer(binding);
+
+        long start = System.nanoTime();
+        if (batch) {
+            server.addThings(models);
+        } else {
+            models.forEach(server::addThing);
+        }
+        long registered = System.nanoTime();
+        binding.resources.get(Defines.BASE_THING_URL).onGet();
+        long rendered = System.nanoTime();
+
+        return new long[]{(registered - start) / 1_000_000, (rendered - registered) / 1_000_000};
+    }
+
+    private static class InMemoryBinding implements ResourceBuilder {
+        final Map<String, RESTListener> resources = new HashMap<>();
+
+        @Override
+        public void newResource(String url, RESTListener restListener) {
+            resources.put(url, restListener);
+        }
+
+        @Override
+        public void removeResource(String url) {
+            resources.remove(url);
+        }
+
+        @Override
+        public String getBase() {
+            return "mem://localhost";
+        }
+
+        @Override
+        public String getIdentifier() {
+            return "memory";
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import de.thingweb.servient.impl.UpdateDispatcher;
+import de.thingweb.servient.impl.UpdateDispatcher.OverflowPolicy;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class UpdateDispatcherTest {
+
+    private UpdateDispatcher dispatcher;
+
+    @Test
+    public void keepsOrderPerProperty() throws Exception {
+        dispatcher = new UpdateDispatcher(4, 16, OverflowPolicy.BLOCK);
+        int n = 1000;
+        CountDownLatch done = new CountDownLatch(n);
+        List<Object> seen = Collections.synchronizedList(new ArrayList<>());
+        UpdateDispatcher.PropertyQueue queue = dispatcher.newQueue(handlers(v -> {
+            seen.add(v);
+            done.countDown();
+        }));
+
+        List<Object> expected = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            queue.offer(i);
+            expected.add(i);
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+        awaitDrained();
+        assertThat(seen, equalTo(expected));
+        assertThat(dispatcher.getDispatchedCount(), is((long) n));
+    }
+
+    @Test
+    public void dropsOldestWhenFull() throws Exception {
+        dispatcher = new UpdateDispatcher(1, 2, OverflowPolicy.DROP_OLDEST);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Object> seen = new CopyOnWriteArrayList<>();
+        UpdateDispatcher.PropertyQueue queue = dispatcher.newQueue(handlers(v -> {
+            if (v.equals(0)) {
+                blocked.countDown();
+                await(release);
+            }
+            seen.add(v);
+        }));
+
+        queue.offer(0);
+        blocked.await();
+        for (int i = 1; i <= 4; i++) {
+            queue.offer(i);
+        }
+        assertThat(queue.size(), is(2));
+        release.countDown();
+
+        awaitDrained();
+        assertThat(seen, contains((Object) 0, 3, 4));
+        assertThat(dispatcher.getDroppedCount(), is(2L));
+    }
+
+    @Test
+    public void coalescesToLatestWhenFull() throws Exception {
+        dispatcher = new UpdateDispatcher(1, 2, OverflowPolicy.COALESCE);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Object> seen = new CopyOnWriteArrayList<>();
+        UpdateDispatcher.PropertyQueue queue = dispatcher.newQueue(handlers(v -> {
+            if (v.equals(0)) {
+                blocked.countDown();
+                await(release);
+            }
+            seen.add(v);
+        }));
+
+        queue.offer(0);
+        blocked.await();
+        for (int i = 1; i <= 4; i++) {
+            queue.offer(i);
+        }
+        release.countDown();
+
+        awaitDrained();
+        assertThat(seen, contains((Object) 0, 1, 4));
+        assertThat(dispatcher.getCoalescedCount(), is(2L));
+    }
+
+    @Test
+    public void skipsValuesOlderThanQueued() throws Exception {
+        dispatcher = new UpdateDispatcher(1, 16, OverflowPolicy.BLOCK);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Object> seen = new CopyOnWriteArrayList<>();
+        UpdateDispatcher.PropertyQueue queue = dispatcher.newQueue(handlers(v -> {
+            if (v.equals("a")) {
+                blocked.countDown();
+                await(release);
+            }
+            seen.add(v);
+        }));
+
+        queue.offer("a", 1);
+        blocked.await();
+        // writers of versions 2 and 3 queue in the opposite order
+        queue.offer("c", 3);
+        queue.offer("b", 2);
+        release.countDown();
+
+        awaitDrained();
+        assertThat(seen, contains((Object) "a", "c"));
+    }
+
+    @Test(timeout = 10000)
+    public void handlerWritingAnotherFullQueueDoesNotDeadlock() throws Exception {
+        dispatcher = new UpdateDispatcher(1, 2, OverflowPolicy.BLOCK);
+        int n = 100;
+        CountDownLatch done = new CountDownLatch(1);
+        List<Object> seen = new CopyOnWriteArrayList<>();
+        UpdateDispatcher.PropertyQueue other = dispatcher.newQueue(handlers(seen::add));
+        UpdateDispatcher.PropertyQueue queue = dispatcher.newQueue(handlers(v -> {
+            // the only thread is busy here, so the other queue cannot drain
+            for (int i = 0; i < n; i++) {
+                other.offer(i);
+            }
+            done.countDown();
+        }));
+
+        queue.offer("write");
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        awaitDrained();
+        assertThat(seen, hasItem((Object) (n - 1)));
+        assertThat(dispatcher.getDroppedCount(), greaterThan(0L));
+    }
+
+    @Test
+    public void valuesOfferedAfterShutdownAreDropped() throws Exception {
+        dispatcher = new UpdateDispatcher(1, 64, OverflowPolicy.BLOCK);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Object> seen = new CopyOnWriteArrayList<>();
+        UpdateDispatcher.PropertyQueue queue = dispatcher.newQueue(handlers(v -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            seen.add(v);
+        }));
+
+        // more than one batch is still queued when the dispatcher stops
+        int n = 3 * 16;
+        for (int i = 0; i < n; i++) {
+            queue.offer(i);
+        }
+        dispatcher.shutdown();
+        queue.offer("late");
+        // an idle queue would need a thread of the stopped pool
+        dispatcher.newQueue(handlers(seen::add)).offer("late");
+        release.countDown();
+
+        assertThat(dispatcher.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        assertThat(seen.size(), is(n));
+        assertThat(seen, not(hasItem((Object) "late")));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        dispatcher.shutdown();
+        dispatcher.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void awaitDrained() throws InterruptedException {
+        dispatcher.shutdown();
+        assertThat(dispatcher.awaitTermination(5, TimeUnit.SECONDS), is(true));
+    }
+
+    private static List<Consumer<Object>> handlers(Consumer<Object> handler) {
+        List<Consumer<Object>> handlers = new CopyOnWriteArrayList<>();
+        handlers.add(handler);
+        return handlers;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *
+ *  * The MIT License (MIT)
+ *  *
+ *  * Copyright (c) 2016 Siemens AG and the thingweb community
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in
+ *  * all copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  * THE SOFTWARE.
+ *
+ */
+
+package de.thingweb.servient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.thingweb.thing.Property;
+import de.thingweb.thing.Thing;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class WebSocketBindingTests {
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private Servient servient;
+    private ThingInterface thing;
+
+    @Before
+    public void setUp() throws Exception {
+        servient = Servient.getBuilder()
+                .setHttpPort(8581)
+                .setCoapPort(5881)
+                .setWebSocketPort(8582)
+                .build();
+        Thing model = new Thing("lamp");
+        model.addProperty(Property.getBuilder("brightness").setWriteable(true).build());
+        model.addProperty(Property.getBuilder("color").build());
+        thing = servient.getThingServer().addThing(model);
+        thing.setProperty("brightness", 10);
+        thing.setProperty("color", "red");
+        servient.start();
+    }
+
+    @Test
+    public void requestsShareOneConnection() throws Exception {
+        try (Client client = new Client(8582)) {
+            client.send("{\"id\": 1, \"op\": \"get\", \"href\": \"/things/lamp/brightness\"}");
+            client.send("{\"id\": \"two\", \"op\": \"put\", \"href\": \"/things/lamp/brightness\", \"value\": {\"value\": 42}}");
+            client.send("{\"id\": 3, \"op\": \"get\", \"href\": \"/things/lamp/missing\"}");
+
+            JsonNode get = jsonMapper.readTree(client.receive());
+            assertThat(get.get("id").asInt(), is(1));
+            assertThat(get.get("status").asInt(), is(200));
+            assertThat(get.get("value").get("value").asInt(), is(10));
+
+            // answers may overtake each other, the ids tell them apart
+            JsonNode put = jsonMapper.readTree(client.receive());
+            JsonNode missing = jsonMapper.readTree(client.receive());
+            if (put.get("id").isInt()) {
+                JsonNode swap = put;
+                put = missing;
+                missing = swap;
+            }
+            assertThat(put.get("id").asText(), is("two"));
+            assertThat(put.get("status").asInt(), is(200));
+            assertThat(missing.get("status").asInt(), is(404));
+            assertThat(thing.getProperty("brightness"), is((Object) 42));
+        }
+    }
+
+    @Test
+    public void changesAreBatchedPerTick() throws Exception {
+        servient.getWebSocketServer().setTick(200);
+        try (Client client = new Client(8582)) {
+            client.send("{\"id\": 1, \"op\": \"subscribe\", \"href\": \"/things/lamp/brightness\"}");
+            client.send("{\"id\": 2, \"op\": \"subscribe\", \"href\": \"/things/lamp/color\"}");
+
+            Set<String> initial = new HashSet<>();
+            while (initial.size() < 2) {
+                JsonNode message = jsonMapper.readTree(client.receive());
+                for (JsonNode event : message.path("events")) {
+                    initial.add(event.get("href").asText());
+                }
+            }
+
+            thing.setProperty("brightness", 11);
+            thing.setProperty("brightness", 12);
+            thing.setProperty("brightness", 13);
+
+            List<JsonNode> messages = new ArrayList<>();
+            int latest = 0;
+            while (latest != 13) {
+                JsonNode message = jsonMapper.readTree(client.receive());
+                if (message.has("events")) {
+                    messages.add(message);
+                    assertThat(message.get("events").size(), is(1));
+                    latest = message.get("events").get(0).get("value").get("value").asInt();
+                }
+            }
+            assertThat(messages.size(), lessThanOrEqualTo(2));
+
+            client.send("{\"id\": 3, \"op\": \"unsubscribe\", \"href\": \"/things/lamp/brightness\"}");
+            assertThat(jsonMapper.readTree(client.receive()).get("id").asInt(), is(3));
+            thing.setProperty("brightness", 14);
+            client.send("{\"id\": 4, \"op\": \"get\", \"href\": \"/things/lamp/color\"}");
+            Thread.sleep(400);
+            assertThat(jsonMapper.readTree(client.receive()).get("id").asInt(), is(4));
+        }
+    }
+
+    @Test
+    public void clientThatDoesNotReadIsNotBuffered() throws Exception {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            large.append('x');
+        }
+        thing.setProperty("color", large.toString());
+        int requests = 10000;
+
+        try (Client client = new Client(8582, 16 * 1024)) {
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < requests; i++) {
+                        client.send("{\"id\": " + i + ", \"op\": \"get\", \"href\": \"/things/lamp/color\"}");
+                    }
+                } catch (IOException e) {
+                    // closed by the test
+                }
+            });
+            writer.start();
+            Thread.sleep(2000);
+            // far less than the 20MB all answers would take
+            assertThat(servient.getWebSocketServer().getPendingOutput(), lessThan(1024 * 1024L));
+
+            for (int i = 0; i < requests; i++) {
+                client.receive();
+            }
+            writer.join();
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        servient.close();
+    }
+
+    /**
+     * Just enough of a WebSocket client to exchange text messages.
+     */
+    private static final class Client implements Closeable {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final OutputStream out;
+
+        Client(int port) throws IOException {
+            this(port, 0);
+        }
+
+        /**
+         * @param receiveBuffer the size of the socket receive buffer, 0 for
+         *                      the default
+         */
+        Client(int port, int receiveBuffer) throws IOException {
+            socket = new Socket();
+            if (receiveBuffer > 0) {
+                socket.setReceiveBufferSize(receiveBuffer);
+            }
+            socket.connect(new InetSocketAddress("localhost", port));
+            socket.setSoTimeout(5000);
+            in = new DataInputStream(socket.getInputStream());
+            out = socket.getOutputStream();
+            out.write(("GET / HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+
+            StringBuilder header = new StringBuilder();
+            while (!header.toString().endsWith("\r\n\r\n")) {
+                header.append((char) in.readUnsignedByte());
+            }
+            assertThat(header.toString(), startsWith("HTTP/1.1 101"));
+            assertThat(header.toString(), containsString("Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo="));
+        }
+
+        void send(String text) throws IOException {
+            byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+            byte[] mask = {1, 2, 3, 4};
+            ByteBuffer frame = ByteBuffer.allocate(payload.length + 8);
+            frame.put((byte) 0x81);
+            if (payload.length < 126) {
+                frame.put((byte) (0x80 | payload.length));
+            } else {
+                frame.put((byte) (0x80 | 126)).putShort((short) payload.length);
+            }
+            frame.put(mask);
+            for (int i = 0; i < payload.length; i++) {
+                frame.put((byte) (payload[i] ^ mask[i & 3]));
+            }
+            out.write(frame.array(), 0, frame.position());
+        }
+
+        String receive() throws IOException {
+            int opcode = in.readUnsignedByte() & 0x0f;
+            int length = in.readUnsignedByte();
+            if (length == 126) {
+                length = in.readUnsignedShort();
+            } else if (length == 127) {
+                length = (int) in.readLong();
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            assertThat(opcode, is(1));
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}